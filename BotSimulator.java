@@ -0,0 +1,267 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/*
+ * Plays lots of games with a SyntheticPlayer, as fast as the machine allows, using GameEngine with a virtual clock.
+ * Sessions are split across all cores with a fork/join pool. Every session gets its own seed worked out from
+ * the base seed and the session number, so the results are the same for the same seed no matter how many
+ * threads are used.
+ *
+ * Run with, for example:
+ *   java BotSimulator sessions=1000000 difficulty=all player=lognormal:320:0.25:0.08 seed=42
+ *
+ * With telemetry=FILE every attempt is also written to a telemetry file (see TelemetryWriter), which makes it easy
+ * to get millions of rows to try TelemetryAnalyzer on. Session i is given the wall clock time TELEMETRY_EPOCH plus
+ * i minutes, so the times in the file are the same on every run too (the order of the rows is not).
+ */
+public class BotSimulator {
+    private static final long SECOND = 1_000_000_000L;
+    private static final int SESSIONS_PER_TASK = 4096; // sessions one fork/join task plays before it stops splitting
+    private static final int MAX_SCORE = 512; // scores above this are counted as MAX_SCORE in the histogram
+    private static final long TELEMETRY_EPOCH = 1_704_067_200_000L; // 2024-01-01 00:00 UTC, in milliseconds
+
+    // What the simulation found, for one difficulty. Results from different tasks are added together.
+    public static class Result {
+        long sessions;
+        long totalScore;
+        long totalMisses;
+        long totalAccuracy;
+        final long[] scoreCounts = new long[MAX_SCORE + 1];
+
+        void add(GameEngine engine) {
+            sessions++;
+            totalScore += engine.getScore();
+            totalMisses += engine.getMisses();
+            totalAccuracy += engine.getAccuracy();
+            scoreCounts[Math.min(MAX_SCORE, engine.getScore())]++;
+        }
+
+        void merge(Result other) {
+            sessions += other.sessions;
+            totalScore += other.totalScore;
+            totalMisses += other.totalMisses;
+            totalAccuracy += other.totalAccuracy;
+            for (int i = 0; i <= MAX_SCORE; i++) {
+                scoreCounts[i] += other.scoreCounts[i];
+            }
+        }
+
+        // The score that the given percentage of sessions were at or below
+        int scorePercentile(double percentile) {
+            long needed = (long) Math.ceil(percentile / 100.0 * sessions);
+            long seen = 0;
+            for (int i = 0; i <= MAX_SCORE; i++) {
+                seen += scoreCounts[i];
+                if (seen >= Math.max(1, needed)) {
+                    return i;
+                }
+            }
+            return MAX_SCORE;
+        }
+
+        public String toString() {
+            return String.format("sessions %d | mean score %.2f | score p10/p50/p90 %d/%d/%d | mean misses %.2f | mean accuracy %.1f%%",
+                    sessions, (double) totalScore / sessions,
+                    scorePercentile(10), scorePercentile(50), scorePercentile(90),
+                    (double) totalMisses / sessions, (double) totalAccuracy / sessions);
+        }
+    }
+
+    private final SyntheticPlayer player;
+    private final int difficulty;
+    private final int numCircles;
+    private final long seed;
+    private TelemetryWriter telemetry; // null unless setTelemetry was called
+
+    public BotSimulator(SyntheticPlayer player, int difficulty, int numCircles, long seed) {
+        this.player = player;
+        this.difficulty = difficulty;
+        this.numCircles = numCircles;
+        this.seed = seed;
+    }
+
+    // Writes every attempt to the given writer, which can be shared with other simulators
+    public void setTelemetry(TelemetryWriter telemetry) {
+        this.telemetry = telemetry;
+    }
+
+    // Passes one task's attempts on to the shared writer, giving them times from the session's virtual clock
+    private class TelemetryListener implements GameEngine.Listener {
+        long sessionStartMillis;
+        long nowNanos;
+
+        public void attemptMade(int kind, int x, int y, int targetX, int targetY, long elapsedNanos) {
+            synchronized (telemetry) {
+                try {
+                    telemetry.record(sessionStartMillis + nowNanos / 1_000_000, difficulty, kind, x, y, targetX, targetY,
+                            elapsedNanos / 1000);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+    }
+
+    // Plays the given number of sessions on the pool and returns the combined results
+    public Result run(long sessions, ForkJoinPool pool) {
+        return pool.invoke(new SessionTask(0, sessions));
+    }
+
+    // Plays sessions [from, to), splitting the range in half until it is small enough
+    private class SessionTask extends RecursiveTask<Result> {
+        private final long from;
+        private final long to;
+
+        SessionTask(long from, long to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        protected Result compute() {
+            if (to - from <= SESSIONS_PER_TASK) {
+                Result result = new Result();
+                GameEngine engine = new GameEngine(0, numCircles);
+                TelemetryListener listener = null;
+                if (telemetry != null) {
+                    listener = new TelemetryListener();
+                    engine.setListener(listener);
+                }
+                for (long i = from; i < to; i++) {
+                    if (listener != null) {
+                        listener.sessionStartMillis = TELEMETRY_EPOCH + i * 60_000;
+                    }
+                    playSession(engine, mix(seed + i), listener);
+                    result.add(engine);
+                }
+                return result;
+            }
+            long middle = (from + to) >>> 1;
+            SessionTask left = new SessionTask(from, middle);
+            left.fork();
+            Result result = new SessionTask(middle, to).compute();
+            result.merge(left.join());
+            return result;
+        }
+    }
+
+    /*
+     * Plays one whole game on a virtual clock starting at 0.
+     * Three kinds of event can happen: the round timer, the one-second countdown timer and the player's next click.
+     * We keep jumping to whichever comes first. When timers and a click land on the same instant the round timer
+     * goes first, then the countdown, then the click, which is the same order GameLoop uses.
+     */
+    void playSession(GameEngine engine, long sessionSeed, TelemetryListener listener) {
+        SplittableRandom rand = new SplittableRandom(sessionSeed);
+        engine.setSeed(sessionSeed);
+        engine.start(difficulty, 0);
+
+        long roundPeriod = GameEngine.roundDelayMillis(difficulty) * 1_000_000L;
+        long nextRound = roundPeriod;
+        long nextSecond = SECOND;
+        long nextClick = player.reactionNanos(rand);
+
+        while (engine.isRunning()) {
+            if (nextRound <= nextSecond && nextRound <= nextClick) {
+                long now = nextRound;
+                if (listener != null) {
+                    listener.nowNanos = now;
+                }
+                long roundBefore = engine.getRoundStartNanos();
+                engine.roundElapsed(now);
+                if (engine.getRoundStartNanos() != roundBefore) {
+                    // new circles appeared, so the player starts reacting to those instead
+                    nextClick = now + player.reactionNanos(rand);
+                }
+                nextRound += roundPeriod;
+            } else if (nextSecond <= nextClick) {
+                engine.secondElapsed();
+                nextSecond += SECOND;
+            } else {
+                long now = nextClick;
+                if (listener != null) {
+                    listener.nowNanos = now;
+                }
+                int x;
+                int y;
+                int target = engine.getCircles().targetIndex();
+                if (target < 0 || player.misclicks(rand)) {
+                    x = rand.nextInt(GameEngine.WIDTH);
+                    y = rand.nextInt(GameEngine.HEIGHT);
+                } else {
+                    CircleStore circles = engine.getCircles();
+                    x = circles.getX(target) + circles.getSize(target) / 2;
+                    y = circles.getY(target) + circles.getSize(target) / 2;
+                }
+                engine.click(x, y, now, now);
+                nextClick = now + player.reactionNanos(rand);
+            }
+        }
+    }
+
+    // Spreads the bits of a seed around (the SplitMix64 finalizer), so that seeds 1, 2, 3... give unrelated games
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    public static void main(String[] args) throws IOException {
+        long sessions = 1_000_000;
+        String difficultyName = "all";
+        String playerSpec = "lognormal:320:0.25:0.08";
+        long seed = 42;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int numCircles = GameConfig.NUM_CIRCLES;
+        String telemetryFile = null;
+
+        // arguments look like name=value
+        for (String arg : args) {
+            String[] kv = arg.split("=", 2);
+            if (kv.length != 2) {
+                throw new IllegalArgumentException("Arguments should look like name=value, got " + arg);
+            }
+            if (kv[0].equals("sessions")) {
+                sessions = Long.parseLong(kv[1]);
+            } else if (kv[0].equals("difficulty")) {
+                difficultyName = kv[1];
+            } else if (kv[0].equals("player")) {
+                playerSpec = kv[1];
+            } else if (kv[0].equals("seed")) {
+                seed = Long.parseLong(kv[1]);
+            } else if (kv[0].equals("threads")) {
+                threads = Integer.parseInt(kv[1]);
+            } else if (kv[0].equals("circles")) {
+                numCircles = Integer.parseInt(kv[1]);
+            } else if (kv[0].equals("telemetry")) {
+                telemetryFile = kv[1];
+            } else {
+                throw new IllegalArgumentException("Unknown argument: " + kv[0]);
+            }
+        }
+
+        SyntheticPlayer player = SyntheticPlayer.parse(playerSpec);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        TelemetryWriter telemetry = telemetryFile != null ? new TelemetryWriter(Paths.get(telemetryFile)) : null;
+        System.out.println("player " + playerSpec + ", seed " + seed + ", " + threads + " threads, " + numCircles + " circles");
+
+        for (int d = GameEngine.EASY; d <= GameEngine.HARD; d++) {
+            if (!difficultyName.equals("all") && GameEngine.difficultyIndex(difficultyName) != d) {
+                continue;
+            }
+            long start = System.nanoTime();
+            BotSimulator simulator = new BotSimulator(player, d, numCircles, seed);
+            simulator.setTelemetry(telemetry);
+            Result result = simulator.run(sessions, pool);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%-6s %s | %.0f sessions/s%n", GameEngine.DIFFICULTY_NAMES[d], result, sessions / seconds);
+        }
+        pool.shutdown();
+        if (telemetry != null) {
+            telemetry.close();
+        }
+    }
+}
@@ -29,14 +29,27 @@ public class Circle {
         }
     }
 
-    // Draws circle
+    // Draws circle, from the sprite cache unless sprites are turned off
     public void draw(Graphics g) {
-        g.setColor(color);
-        g.fillOval(x, y, size, size);
+        CircleSprites sprites = CircleSprites.shared();
+        if (sprites != null && g instanceof Graphics2D) {
+            synchronized (sprites) {
+                sprites.beginFrame((Graphics2D) g);
+                sprites.draw((Graphics2D) g, x, y, size, color);
+            }
+        } else {
+            g.setColor(color);
+            g.fillOval(x, y, size, size);
+        }
     }
 
     // px and py are the coords taken from where user clicks in circle
     public boolean containsPoint(int px, int py) {
+        return containsPoint(x, y, size, px, py);
+    }
+
+    // The same check for a circle given by its top left corner and diameter, so it can be used without a Circle object
+    public static boolean containsPoint(int x, int y, int size, int px, int py) {
 
         // gets center of circle, given that the x and y coords are located
         // at the top left of the circle
@@ -60,4 +73,16 @@ public class Circle {
     public boolean isTarget() {
         return isTarget;
     }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public int getSize() {
+        return size;
+    }
 }
@@ -0,0 +1,105 @@
+import java.util.Arrays;
+
+/*
+ * A uniform grid over the game panel, used to find which circle was clicked without checking every circle.
+ * Each cell is one circle wide, so a circle touches at most 4 cells, and a click only has to test
+ * the circles listed in the one cell it falls in.
+ *
+ * The grid is rebuilt once per round. The cell lists are stored in two flat int arrays
+ * (cellStart / cellItems, like a compressed sparse row matrix) which are reused every round.
+ */
+public class CircleGrid {
+    private final int cellSize;
+    private final int columns;
+    private final int rows;
+
+    // circles in cell c are cellItems[cellStart[c]] ... cellItems[cellStart[c + 1] - 1], in the order they are drawn
+    private final int[] cellStart;
+    private final int[] cellCursor; // used while filling in cellItems
+    private int[] cellItems = new int[0];
+
+    public CircleGrid(int width, int height, int cellSize) {
+        this.cellSize = cellSize;
+        this.columns = (width + cellSize - 1) / cellSize;
+        this.rows = (height + cellSize - 1) / cellSize;
+        this.cellStart = new int[columns * rows + 1];
+        this.cellCursor = new int[columns * rows];
+    }
+
+    // Rebuilds the grid for a new set of circles
+    public void build(CircleStore circles) {
+        Arrays.fill(cellStart, 0);
+
+        // First pass: count how many circles touch each cell (counted in the slot after the cell)
+        int total = 0;
+        for (int i = 0; i < circles.count(); i++) {
+            int firstCol = column(circles.getX(i));
+            int lastCol = column(circles.getX(i) + circles.getSize(i));
+            int firstRow = row(circles.getY(i));
+            int lastRow = row(circles.getY(i) + circles.getSize(i));
+            for (int r = firstRow; r <= lastRow; r++) {
+                for (int col = firstCol; col <= lastCol; col++) {
+                    cellStart[r * columns + col + 1]++;
+                    total++;
+                }
+            }
+        }
+
+        // Turn the counts into start positions
+        for (int cell = 1; cell < cellStart.length; cell++) {
+            cellStart[cell] += cellStart[cell - 1];
+        }
+
+        // Only allocate when there are more entries than ever before
+        if (cellItems.length < total) {
+            cellItems = new int[Math.max(total, cellItems.length * 2)];
+        }
+
+        // Second pass: write each circle's index into the cells it touches
+        System.arraycopy(cellStart, 0, cellCursor, 0, cellCursor.length);
+        for (int i = 0; i < circles.count(); i++) {
+            int firstCol = column(circles.getX(i));
+            int lastCol = column(circles.getX(i) + circles.getSize(i));
+            int firstRow = row(circles.getY(i));
+            int lastRow = row(circles.getY(i) + circles.getSize(i));
+            for (int r = firstRow; r <= lastRow; r++) {
+                for (int col = firstCol; col <= lastCol; col++) {
+                    cellItems[cellCursor[r * columns + col]++] = i;
+                }
+            }
+        }
+    }
+
+    // Empties the grid, e.g. once the game has ended
+    public void clear() {
+        Arrays.fill(cellStart, 0);
+    }
+
+    /*
+     * Returns the index of the top-most circle containing the point, or -1 if there isn't one.
+     * Circles later in the list are drawn over earlier ones, so the cell is searched from the end,
+     * and the first circle that contains the point is the one the user can see.
+     */
+    public int findTopmost(CircleStore circles, int px, int py) {
+        if (px < 0 || py < 0 || px >= columns * cellSize || py >= rows * cellSize) {
+            return -1;
+        }
+        int cell = (py / cellSize) * columns + px / cellSize;
+        for (int i = cellStart[cell + 1] - 1; i >= cellStart[cell]; i--) {
+            int index = cellItems[i];
+            if (circles.containsPoint(index, px, py)) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    // Cell column/row of a coordinate, kept inside the grid
+    private int column(int x) {
+        return Math.max(0, Math.min(columns - 1, x / cellSize));
+    }
+
+    private int row(int y) {
+        return Math.max(0, Math.min(rows - 1, y / cellSize));
+    }
+}
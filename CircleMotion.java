@@ -0,0 +1,187 @@
+import java.util.SplittableRandom;
+
+/*
+ * Moves the circles of a round for the moving-target mode. Every circle gets a random direction at the round's
+ * start and bounces off the edges of the game area.
+ *
+ * Positions are kept as floats in parallel arrays (x[i], y[i] and the velocities vx[i], vy[i] in pixels per
+ * second), and are moved in fixed steps of STEP_NANOS from the start of the round. So where the circles are only
+ * depends on how long ago the round started, not on how often frames were drawn: a replay, which moves them only
+ * when clicks come in, sees them in the same places as the game did.
+ *
+ * The loops over the arrays (moving, bouncing, and finding the circle under a click) are done by a Kernel.
+ * VectorMotionKernel does them with the Vector API, several circles per instruction, when the JVM was started with
+ * --add-modules jdk.incubator.vector; otherwise ScalarKernel does them one circle at a time.
+ */
+public class CircleMotion {
+    public static final long STEP_NANOS = 1_000_000_000L / 240; // 240 steps a second
+    private static final float STEP_SECONDS = STEP_NANOS / 1e9f;
+
+    // The loops that do the work, over the first count entries of the arrays
+    public interface Kernel {
+        /*
+         * Moves every circle by its velocity times dt, and bounces the ones that went past 0 or their max back in,
+         * turning their velocity around. A circle never moves further than its max in one step.
+         */
+        void step(float[] x, float[] y, float[] vx, float[] vy, float[] maxX, float[] maxY, int count, float dt);
+
+        /*
+         * Index of the top-most (last) circle containing the point, or -1. Circle i contains it when it is within
+         * half[i] of the circle's centre (x[i] + half[i], y[i] + half[i]), the same check as Circle.containsPoint.
+         */
+        int findTopmost(float[] x, float[] y, float[] half, int count, float px, float py);
+
+        String name();
+    }
+
+    /*
+     * One circle at a time. The loops are also used by VectorMotionKernel for the circles that don't fill a whole
+     * vector, and both kernels do the same float operations in the same order, so they move circles identically.
+     */
+    public static class ScalarKernel implements Kernel {
+        public void step(float[] x, float[] y, float[] vx, float[] vy, float[] maxX, float[] maxY, int count, float dt) {
+            step(x, y, vx, vy, maxX, maxY, 0, count, dt);
+        }
+
+        public int findTopmost(float[] x, float[] y, float[] half, int count, float px, float py) {
+            return findTopmost(x, y, half, 0, count, px, py);
+        }
+
+        public String name() {
+            return "scalar";
+        }
+
+        // step() for circles [from, to)
+        static void step(float[] x, float[] y, float[] vx, float[] vy, float[] maxX, float[] maxY, int from, int to,
+                float dt) {
+            for (int i = from; i < to; i++) {
+                float nx = x[i] + vx[i] * dt;
+                if (nx < 0) {
+                    nx = -nx;
+                    vx[i] = -vx[i];
+                } else if (nx > maxX[i]) {
+                    nx = 2 * maxX[i] - nx;
+                    vx[i] = -vx[i];
+                }
+                x[i] = nx;
+
+                float ny = y[i] + vy[i] * dt;
+                if (ny < 0) {
+                    ny = -ny;
+                    vy[i] = -vy[i];
+                } else if (ny > maxY[i]) {
+                    ny = 2 * maxY[i] - ny;
+                    vy[i] = -vy[i];
+                }
+                y[i] = ny;
+            }
+        }
+
+        // findTopmost() among circles [from, to)
+        static int findTopmost(float[] x, float[] y, float[] half, int from, int to, float px, float py) {
+            for (int i = to - 1; i >= from; i--) {
+                float dx = px - (x[i] + half[i]);
+                float dy = py - (y[i] + half[i]);
+                if (dx * dx + dy * dy <= half[i] * half[i]) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    private final Kernel kernel;
+    private final int width;
+    private final int height;
+    private final float speed; // pixels per second
+    private SplittableRandom rand = new SplittableRandom(0);
+
+    private float[] x = new float[0];
+    private float[] y = new float[0];
+    private float[] vx = new float[0];
+    private float[] vy = new float[0];
+    private float[] maxX = new float[0]; // how far right each circle can go before it bounces
+    private float[] maxY = new float[0];
+    private float[] half = new float[0]; // half of each circle's size, which is its radius
+    private int count = 0;
+    private long stepsDone = 0; // steps since the round started
+
+    public CircleMotion(Kernel kernel, int width, int height, float speed) {
+        this.kernel = kernel;
+        this.width = width;
+        this.height = height;
+        this.speed = speed;
+    }
+
+    // The vector kernel if the Vector API can be used (and vector is true), the scalar one otherwise
+    public static Kernel kernel(boolean vector) {
+        if (vector && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                return new VectorMotionKernel();
+            } catch (LinkageError e) {
+                // fall through to the scalar kernel
+            }
+        }
+        return new ScalarKernel();
+    }
+
+    public Kernel getKernel() {
+        return kernel;
+    }
+
+    // Resets the random generator for the directions, so a game can be replayed exactly
+    public void setSeed(long seed) {
+        rand = new SplittableRandom(seed);
+    }
+
+    // Starts a round: takes the circles' positions from the store, and gives each one a random direction
+    public void reset(CircleStore circles) {
+        count = circles.count();
+        if (x.length < count) {
+            int capacity = Math.max(count, x.length * 2);
+            x = new float[capacity];
+            y = new float[capacity];
+            vx = new float[capacity];
+            vy = new float[capacity];
+            maxX = new float[capacity];
+            maxY = new float[capacity];
+            half = new float[capacity];
+        }
+        for (int i = 0; i < count; i++) {
+            int size = circles.getSize(i);
+            x[i] = circles.getX(i);
+            y[i] = circles.getY(i);
+            maxX[i] = Math.max(0, width - size);
+            maxY[i] = Math.max(0, height - size);
+            half[i] = size / 2;
+            double angle = rand.nextDouble() * 2 * Math.PI;
+            vx[i] = (float) (Math.cos(angle) * speed);
+            vy[i] = (float) (Math.sin(angle) * speed);
+        }
+        stepsDone = 0;
+    }
+
+    /*
+     * Moves the circles to where they are elapsedNanos after the round started, and writes their positions
+     * (rounded down) back into the store. Returns false when they were already there.
+     * They can't move back in time, so an earlier time than before does nothing.
+     */
+    public boolean advanceTo(long elapsedNanos, CircleStore circles) {
+        long steps = elapsedNanos / STEP_NANOS;
+        if (steps <= stepsDone) {
+            return false;
+        }
+        for (; stepsDone < steps; stepsDone++) {
+            kernel.step(x, y, vx, vy, maxX, maxY, count, STEP_SECONDS);
+        }
+        for (int i = 0; i < count; i++) {
+            circles.setPosition(i, (int) x[i], (int) y[i]);
+        }
+        return true;
+    }
+
+    // Index of the top-most circle containing the point, at the positions of the last advanceTo, or -1
+    public int findTopmost(int px, int py) {
+        return kernel.findTopmost(x, y, half, count, px, py);
+    }
+}
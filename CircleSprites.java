@@ -0,0 +1,186 @@
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+
+/*
+ * A cache of circles that have already been drawn, so drawing a circle is copying an image instead of
+ * filling an oval, which is slow to rasterize in software (and slower still with antialiasing).
+ *
+ * There is one sprite per (size, color, scale, antialiasing). Each sprite is drawn once into a BufferedImage,
+ * and copied from there into a VolatileImage, which can live in video memory and is the fastest to draw from.
+ * VolatileImages can lose their contents at any time (e.g. when the display mode changes), so every frame
+ * each sprite is checked with validate() before its first use and restored from the BufferedImage if needed.
+ * If a VolatileImage can't be made at all, the BufferedImage is drawn instead.
+ *
+ * Not thread-safe: callers hold the lock on the instance for the whole frame (see CircleStore.drawAll).
+ */
+public class CircleSprites {
+    private static final CircleSprites SHARED = new CircleSprites();
+
+    // The cache shared by everything that draws circles, or null when sprites are turned off in GameConfig
+    public static CircleSprites shared() {
+        return GameConfig.SPRITES ? SHARED : null;
+    }
+
+    private static class Sprite {
+        final long key;
+        final int size; // in the circle's own units
+        final BufferedImage image; // always there: the fallback, and where the VolatileImage is restored from
+        VolatileImage volatileImage; // null until made, and for good if it couldn't be
+        GraphicsConfiguration config; // what the VolatileImage was made for
+        boolean volatileFailed = false;
+        long checkedFrame = -1; // the last frame the VolatileImage was validated in
+
+        Sprite(long key, int size, Color color, int scalePercent, boolean antialias) {
+            this.key = key;
+            this.size = size;
+            int pixels = pixelSize(size, scalePercent);
+            image = antialias ? new BufferedImage(pixels, pixels, BufferedImage.TYPE_INT_ARGB_PRE) : bitmaskImage(pixels);
+            Graphics2D g = image.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                    antialias ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF);
+            g.setColor(color);
+            if (antialias) {
+                // with fractional coordinates, so the edge falls where fillOval would put it at this scale
+                g.fill(new java.awt.geom.Ellipse2D.Double(0, 0, pixels, pixels));
+            } else {
+                g.fillOval(0, 0, pixels, pixels);
+            }
+            g.dispose();
+        }
+    }
+
+    private Sprite[] sprites = new Sprite[8]; // there are only ever a few, so a linear search is fine
+    private int spriteCount = 0;
+    private Sprite last; // the sprite used last, which is usually the one wanted next
+
+    // Settings of the frame being drawn, read once by beginFrame()
+    private long frame = 0;
+    private GraphicsConfiguration config;
+    private int scalePercent;
+    private boolean antialias;
+    private boolean usable; // false if the Graphics is rotated or sheared, which sprites can't do
+
+    // Reads the target's scale, antialiasing and device once for a whole frame of draw() calls
+    public void beginFrame(Graphics2D g) {
+        frame++;
+        config = g.getDeviceConfiguration();
+        AffineTransform t = g.getTransform();
+        usable = t.getShearX() == 0 && t.getShearY() == 0 && t.getScaleX() > 0 && t.getScaleX() == t.getScaleY();
+        scalePercent = (int) Math.round(t.getScaleX() * 100);
+        antialias = g.getRenderingHint(RenderingHints.KEY_ANTIALIASING) == RenderingHints.VALUE_ANTIALIAS_ON;
+    }
+
+    // Draws a circle with its top left corner at (x, y). beginFrame() has to be called first.
+    public void draw(Graphics2D g, int x, int y, int size, Color color) {
+        if (!usable || size <= 0 || size > 0xFFFF) {
+            g.setColor(color);
+            g.fillOval(x, y, size, size);
+            return;
+        }
+        Sprite sprite = find(size, color);
+        VolatileImage volatileImage = check(sprite);
+        if (volatileImage != null) {
+            drawImage(g, volatileImage, x, y, size);
+            if (!volatileImage.contentsLost()) {
+                return;
+            }
+            // the contents went while we were drawing; validate() restores them next frame
+        }
+        drawImage(g, sprite.image, x, y, size);
+    }
+
+    private void drawImage(Graphics2D g, Image image, int x, int y, int size) {
+        if (scalePercent == 100) {
+            g.drawImage(image, x, y, null);
+        } else {
+            // the image already has the scaled number of pixels, so this maps it 1:1 onto the device
+            g.drawImage(image, x, y, size, size, null);
+        }
+    }
+
+    // Finds the sprite for this size and color at the frame's scale and antialiasing, drawing it if it is new
+    private Sprite find(int size, Color color) {
+        long key = ((color.getRGB() & 0xFFFFFFFFL) << 32) | ((long) scalePercent << 17) | ((long) size << 1)
+                | (antialias ? 1 : 0);
+        if (last != null && last.key == key) {
+            return last;
+        }
+        for (int i = 0; i < spriteCount; i++) {
+            if (sprites[i].key == key) {
+                last = sprites[i];
+                return last;
+            }
+        }
+        if (spriteCount == sprites.length) {
+            sprites = java.util.Arrays.copyOf(sprites, spriteCount * 2);
+        }
+        last = new Sprite(key, size, color, scalePercent, antialias);
+        sprites[spriteCount++] = last;
+        return last;
+    }
+
+    /*
+     * Makes sure the sprite's VolatileImage is ready to draw on this frame's device: made for it, and with its
+     * contents intact. Returns null if there isn't one, so the BufferedImage has to be used.
+     */
+    private VolatileImage check(Sprite sprite) {
+        if (sprite.volatileFailed || config == null) {
+            return null;
+        }
+        if (sprite.checkedFrame == frame) {
+            return sprite.volatileImage;
+        }
+        sprite.checkedFrame = frame;
+        try {
+            if (sprite.volatileImage == null || sprite.config != config) {
+                createVolatile(sprite);
+            } else {
+                int status = sprite.volatileImage.validate(config);
+                if (status == VolatileImage.IMAGE_INCOMPATIBLE) {
+                    createVolatile(sprite); // e.g. the window moved to another screen
+                } else if (status == VolatileImage.IMAGE_RESTORED) {
+                    restore(sprite); // e.g. the display mode changed and video memory was cleared
+                }
+            }
+        } catch (RuntimeException e) {
+            // some pipelines (and headless setups) can't make VolatileImages at all
+            sprite.volatileFailed = true;
+            sprite.volatileImage = null;
+        }
+        return sprite.volatileImage;
+    }
+
+    private void createVolatile(Sprite sprite) {
+        if (sprite.volatileImage != null) {
+            sprite.volatileImage.flush();
+        }
+        int pixels = sprite.image.getWidth();
+        sprite.volatileImage = config.createCompatibleVolatileImage(pixels, pixels, sprite.image.getTransparency());
+        sprite.config = config;
+        restore(sprite);
+    }
+
+    // Copies the BufferedImage into the VolatileImage, replacing whatever was there
+    private static void restore(Sprite sprite) {
+        Graphics2D g = sprite.volatileImage.createGraphics();
+        g.setComposite(AlphaComposite.Src);
+        g.drawImage(sprite.image, 0, 0, null);
+        g.dispose();
+    }
+
+    /*
+     * Without antialiasing every pixel is either fully drawn or not drawn at all, so a 1-bit alpha image is enough,
+     * and copying it skips the blending a full alpha channel needs. This is the same kind of image
+     * GraphicsConfiguration.createCompatibleImage(w, h, Transparency.BITMASK) makes, but works headless too.
+     */
+    private static BufferedImage bitmaskImage(int pixels) {
+        java.awt.image.DirectColorModel model = new java.awt.image.DirectColorModel(25, 0xFF0000, 0xFF00, 0xFF, 0x1000000);
+        return new BufferedImage(model, model.createCompatibleWritableRaster(pixels, pixels), false, null);
+    }
+
+    private static int pixelSize(int size, int scalePercent) {
+        return Math.max(1, (int) Math.round(size * scalePercent / 100.0));
+    }
+}
@@ -0,0 +1,143 @@
+import java.awt.*;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/*
+ * Holds every circle of the current round in parallel primitive arrays (x[i], y[i], size[i]),
+ * with a bitset saying which ones are targets, instead of one Circle object per circle.
+ * The arrays are reused every round and only grow when more circles are needed,
+ * so spawning a round does not allocate anything.
+ */
+public class CircleStore {
+    private int[] x = new int[0];
+    private int[] y = new int[0];
+    private int[] size = new int[0];
+    private final BitSet targets = new BitSet();
+    private int count = 0;
+
+    // Empties the store and makes sure it can hold at least capacity circles
+    public void reset(int capacity) {
+        if (x.length < capacity) {
+            x = new int[capacity];
+            y = new int[capacity];
+            size = new int[capacity];
+        }
+        targets.clear();
+        count = 0;
+    }
+
+    public void clear() {
+        targets.clear();
+        count = 0;
+    }
+
+    // Adds a circle and returns its index
+    public int add(int cx, int cy, int diameter, boolean isTarget) {
+        if (count == x.length) {
+            grow();
+        }
+        x[count] = cx;
+        y[count] = cy;
+        size[count] = diameter;
+        if (isTarget) {
+            targets.set(count);
+        }
+        return count++;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    // Moves circle i, e.g. in the moving-target mode (see CircleMotion)
+    public void setPosition(int i, int cx, int cy) {
+        x[i] = cx;
+        y[i] = cy;
+    }
+
+    public int getX(int i) {
+        return x[i];
+    }
+
+    public int getY(int i) {
+        return y[i];
+    }
+
+    public int getSize(int i) {
+        return size[i];
+    }
+
+    public boolean isTarget(int i) {
+        return targets.get(i);
+    }
+
+    // Index of the first target circle, or -1 if there isn't one
+    public int targetIndex() {
+        int i = targets.nextSetBit(0);
+        return i < count ? i : -1;
+    }
+
+    // Same check as Circle.containsPoint, for circle i
+    public boolean containsPoint(int i, int px, int py) {
+        return Circle.containsPoint(x[i], y[i], size[i], px, py);
+    }
+
+    // Index of the top-most (last drawn) circle containing the point, or -1. Checks every circle, so only use it
+    // for small numbers of circles; GameEngine uses a CircleGrid instead.
+    public int findTopmost(int px, int py) {
+        for (int i = count - 1; i >= 0; i--) {
+            if (containsPoint(i, px, py)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Draws every circle, in order, so later circles are drawn over earlier ones
+    public void drawAll(Graphics g) {
+        drawAll(g, 0, 0, Integer.MAX_VALUE, Integer.MAX_VALUE, CircleSprites.shared());
+    }
+
+    // Draws only the circles that overlap the given rectangle (usually the clip), skipping the rest
+    public void drawAll(Graphics g, int clipX, int clipY, int clipWidth, int clipHeight) {
+        drawAll(g, clipX, clipY, clipWidth, clipHeight, CircleSprites.shared());
+    }
+
+    // The same, drawing with the given sprite cache, or with fillOval when it is null
+    public void drawAll(Graphics g, int clipX, int clipY, int clipWidth, int clipHeight, CircleSprites sprites) {
+        long clipRight = (long) clipX + clipWidth;
+        long clipBottom = (long) clipY + clipHeight;
+        if (sprites == null || !(g instanceof Graphics2D)) {
+            for (int i = 0; i < count; i++) {
+                if (x[i] >= clipRight || y[i] >= clipBottom || x[i] + size[i] <= clipX || y[i] + size[i] <= clipY) {
+                    continue;
+                }
+                g.setColor(targets.get(i) ? Color.RED : Color.GRAY);
+                g.fillOval(x[i], y[i], size[i], size[i]);
+            }
+            return;
+        }
+        Graphics2D g2 = (Graphics2D) g;
+        synchronized (sprites) {
+            sprites.beginFrame(g2);
+            for (int i = 0; i < count; i++) {
+                if (x[i] >= clipRight || y[i] >= clipBottom || x[i] + size[i] <= clipX || y[i] + size[i] <= clipY) {
+                    continue;
+                }
+                sprites.draw(g2, x[i], y[i], size[i], targets.get(i) ? Color.RED : Color.GRAY);
+            }
+        }
+    }
+
+    // Returns circle i as a Circle object, for code that still works with Circles. This allocates.
+    public Circle get(int i) {
+        return new Circle(x[i], y[i], size[i], targets.get(i));
+    }
+
+    private void grow() {
+        int capacity = Math.max(8, x.length * 2);
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        size = Arrays.copyOf(size, capacity);
+    }
+}
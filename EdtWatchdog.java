@@ -0,0 +1,88 @@
+import javax.swing.SwingUtilities;
+
+/*
+ * Measures how quickly the EDT gets to new events, by posting a probe with invokeLater() every so often and timing
+ * how long it takes to run. If a probe is still waiting after the threshold, we take the EDT's stack trace right
+ * then (so it shows what is blocking it), and once the probe does run a GameEvents.EdtStall event is recorded with
+ * the latency and that stack trace.
+ *
+ * Probes are only posted while a Flight Recorder recording has EdtStall events turned on, so outside of a
+ * recording the watchdog thread just wakes up now and then and goes back to sleep. (While probes are being posted
+ * AWT never sees the event queue go idle, so it won't shut itself down. The game exits when its window is closed,
+ * so this doesn't matter there.)
+ */
+public class EdtWatchdog implements Runnable {
+    private static final long PROBE_INTERVAL_MILLIS = 100;
+
+    private final long thresholdNanos;
+    private volatile Thread edt; // found by the first probe
+    private volatile long probePostedNanos;
+    private volatile long probeRanNanos; // 0 while the probe is waiting
+
+    private final Runnable probe = new Runnable() {
+        public void run() {
+            edt = Thread.currentThread();
+            probeRanNanos = System.nanoTime();
+        }
+    };
+
+    public EdtWatchdog(long thresholdMillis) {
+        this.thresholdNanos = thresholdMillis * 1_000_000L;
+    }
+
+    // Starts the watchdog on a daemon thread
+    public static void start(long thresholdMillis) {
+        Thread thread = new Thread(new EdtWatchdog(thresholdMillis), "edt-watchdog");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void run() {
+        GameEvents.EdtStall check = new GameEvents.EdtStall(); // only used to ask whether the event is enabled
+        try {
+            while (true) {
+                Thread.sleep(PROBE_INTERVAL_MILLIS);
+                if (!check.isEnabled()) {
+                    continue;
+                }
+                probeOnce();
+            }
+        } catch (InterruptedException e) {
+            // asked to stop
+        }
+    }
+
+    // Posts one probe and waits for it, taking the EDT's stack trace if it runs late
+    private void probeOnce() throws InterruptedException {
+        probeRanNanos = 0;
+        probePostedNanos = System.nanoTime();
+        SwingUtilities.invokeLater(probe);
+
+        String stack = null;
+        long waitMillis = Math.max(1, thresholdNanos / 1_000_000);
+        while (probeRanNanos == 0) {
+            Thread.sleep(waitMillis);
+            waitMillis = Math.max(1, Math.min(waitMillis, 10)); // after the first check, look again often
+            Thread thread = edt;
+            if (stack == null && probeRanNanos == 0 && thread != null) {
+                stack = format(thread.getStackTrace());
+            }
+        }
+
+        long latency = probeRanNanos - probePostedNanos;
+        if (latency >= thresholdNanos) {
+            GameEvents.EdtStall event = new GameEvents.EdtStall();
+            event.latency = latency;
+            event.edtStack = stack != null ? stack : "(the EDT had already moved on)";
+            event.commit();
+        }
+    }
+
+    private static String format(StackTraceElement[] frames) {
+        StringBuilder text = new StringBuilder();
+        for (StackTraceElement frame : frames) {
+            text.append("at ").append(frame).append('\n');
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,430 @@
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/*
+ * Benchmarks for the game's hot paths: hit-testing, spawning circles, handling a click and painting.
+ * Painting is done into an offscreen BufferedImage with java.awt.headless=true, so no display is needed.
+ * Each benchmark runs in a fresh JVM and reports throughput, average time and allocation (see MicroBenchmark).
+ *
+ * Run with:  java GameBenchmarks [filter=text] [fork=false] [warmup=3] [iterations=5] [time=1000]
+ * (filter only runs benchmarks whose name contains the text)
+ */
+public class GameBenchmarks {
+    private static final int[] CIRCLE_COUNTS = { 5, 500, 50_000 };
+    private static final int POINTS = 1024; // how many different points the hit-test benchmarks cycle through
+    private static final int[] MOVING_COUNTS = { 1000, 20_000, 100_000 };
+
+    // Every benchmark, by name. The supplier sets up the state, so it only happens in the JVM that runs it.
+    static Map<String, Supplier<MicroBenchmark.Body>> benchmarks() {
+        Map<String, Supplier<MicroBenchmark.Body>> all = new LinkedHashMap<>();
+        all.put("containsPoint.hit", () -> containsPoint(0));
+        all.put("containsPoint.miss", () -> containsPoint(1));
+        all.put("containsPoint.edge", () -> containsPoint(2));
+        for (int n : CIRCLE_COUNTS) {
+            all.put("spawnCircles[circles=" + n + "]", () -> spawnCircles(n));
+        }
+        for (int n : CIRCLE_COUNTS) {
+            all.put("click[circles=" + n + "]", () -> click(n));
+            all.put("clickHud[circles=" + n + "]", () -> clickHud(n));
+        }
+        all.put("circleDraw", GameBenchmarks::circleDraw);
+        for (int n : CIRCLE_COUNTS) {
+            for (boolean aa : new boolean[] {false, true}) {
+                all.put("paint[circles=" + n + ",aa=" + aa + ",sprites=false]", () -> paint(n, aa, false));
+                all.put("paint[circles=" + n + ",aa=" + aa + ",sprites=true]", () -> paint(n, aa, true));
+            }
+        }
+        all.put("paintDirty[circles=5]", () -> paintDirty(5));
+        for (int n : MOVING_COUNTS) {
+            for (String kernel : new String[] {"scalar", "vector"}) {
+                all.put("moveStep[circles=" + n + ",kernel=" + kernel + "]", () -> moveStep(n, kernel));
+                all.put("moveHitTest[circles=" + n + ",kernel=" + kernel + "]", () -> moveHitTest(n, kernel));
+            }
+        }
+        return all;
+    }
+
+    /*
+     * Circle.containsPoint on points that are inside the circle (kind 0), outside it but inside
+     * its bounding box (kind 1), or exactly on its edge (kind 2).
+     */
+    static MicroBenchmark.Body containsPoint(int kind) {
+        final Circle circle = new Circle(100, 100, GameEngine.CIRCLE_SIZE, true);
+        final int[] xs = new int[POINTS];
+        final int[] ys = new int[POINTS];
+        Random rand = new Random(1);
+        int cx = 125;
+        int cy = 125;
+        int r = 25;
+        for (int i = 0; i < POINTS; i++) {
+            double angle = rand.nextDouble() * 2 * Math.PI;
+            double distance;
+            if (kind == 0) {
+                distance = rand.nextDouble() * (r - 1);
+            } else if (kind == 1) {
+                // the corners of the bounding box are outside the circle
+                angle = (Math.PI / 4) + (Math.PI / 2) * rand.nextInt(4);
+                distance = r + 3 + rand.nextDouble() * 5;
+            } else {
+                distance = r;
+            }
+            xs[i] = cx + (int) Math.round(Math.cos(angle) * distance);
+            ys[i] = cy + (int) Math.round(Math.sin(angle) * distance);
+        }
+        return ops -> {
+            long hits = 0;
+            for (int i = 0; i < ops; i++) {
+                int p = i & (POINTS - 1);
+                if (circle.containsPoint(xs[p], ys[p])) {
+                    hits++;
+                }
+            }
+            return hits;
+        };
+    }
+
+    // Spawning a whole round: placing the circles and rebuilding the grid
+    static MicroBenchmark.Body spawnCircles(int n) {
+        final GameEngine engine = new GameEngine(1, n);
+        return ops -> {
+            for (int i = 0; i < ops; i++) {
+                engine.spawnCircles(i);
+            }
+            return engine.getCircles().getX(0);
+        };
+    }
+
+    /*
+     * A click going through the engine and on to the labels, the way GamePanel handles it
+     * (minus the Swing event dispatch). Every other click is on the target, so half of them spawn a new round.
+     */
+    static MicroBenchmark.Body click(int n) {
+        final GameEngine engine = new GameEngine(1, n);
+        final JLabel scoreLabel = new JLabel();
+        final JLabel missLabel = new JLabel();
+        final JLabel accuracyLabel = new JLabel();
+        engine.setListener(new GameEngine.Listener() {
+            public void scoreChanged() {
+                scoreLabel.setText("Score: " + engine.getScore());
+            }
+
+            public void statsChanged() {
+                missLabel.setText("Misses: " + engine.getMisses());
+                accuracyLabel.setText("Accuracy: " + engine.getAccuracy() + "%");
+            }
+        });
+        engine.start(GameEngine.MEDIUM, 0);
+        return ops -> {
+            long sum = 0;
+            for (int i = 0; i < ops; i++) {
+                // start a new game every so often, so the score doesn't grow forever
+                if (engine.getTotalAttempts() > 1_000_000) {
+                    engine.start(GameEngine.MEDIUM, i);
+                }
+                CircleStore circles = engine.getCircles();
+                int x;
+                int y;
+                if ((i & 1) == 0) {
+                    int target = circles.targetIndex();
+                    x = circles.getX(target) + circles.getSize(target) / 2;
+                    y = circles.getY(target) + circles.getSize(target) / 2;
+                } else {
+                    x = GameEngine.WIDTH - 1;
+                    y = GameEngine.HEIGHT - 1;
+                }
+                sum += engine.click(x, y, i, i);
+            }
+            return sum;
+        };
+    }
+
+    /*
+     * The same clicks as click(), going through SessionStats and the fixed-width HudLabels the way GamePanel
+     * does now. GamePanel only refreshes the labels once per frame; here they are set on every click, so this
+     * is the worst case.
+     */
+    static MicroBenchmark.Body clickHud(int n) {
+        final GameEngine engine = new GameEngine(1, n);
+        final SessionStats stats = new SessionStats();
+        final HudLabel scoreLabel = new HudLabel("Score: ", "", 999, 0);
+        final HudLabel missLabel = new HudLabel("Misses: ", "", 999, 0);
+        final HudLabel accuracyLabel = new HudLabel("Accuracy: ", "%", 100, 100);
+        final HudLabel streakLabel = new HudLabel("Streak: ", "", 999, 0);
+        final HudLabel reactionLabel = new HudLabel("Reaction: ", " ms", 9999, 0);
+        engine.setListener(new GameEngine.Listener() {
+            public void attemptMade(int kind, int x, int y, int targetX, int targetY, long elapsedNanos) {
+                stats.record(kind, elapsedNanos);
+            }
+
+            public void statsChanged() {
+                scoreLabel.setValue(stats.getScore());
+                missLabel.setValue(stats.getMisses());
+                accuracyLabel.setValue(stats.getAccuracy());
+                streakLabel.setValue(stats.getStreak());
+                reactionLabel.setValue(stats.getReactionEwmaMillis());
+            }
+        });
+        engine.start(GameEngine.MEDIUM, 0);
+        return ops -> {
+            long sum = 0;
+            for (int i = 0; i < ops; i++) {
+                if (engine.getTotalAttempts() > 1_000_000) {
+                    stats.reset();
+                    engine.start(GameEngine.MEDIUM, i);
+                }
+                CircleStore circles = engine.getCircles();
+                int x;
+                int y;
+                if ((i & 1) == 0) {
+                    int target = circles.targetIndex();
+                    x = circles.getX(target) + circles.getSize(target) / 2;
+                    y = circles.getY(target) + circles.getSize(target) / 2;
+                } else {
+                    x = GameEngine.WIDTH - 1;
+                    y = GameEngine.HEIGHT - 1;
+                }
+                sum += engine.click(x, y, i, i);
+            }
+            return sum;
+        };
+    }
+
+    // Circle.draw for a single circle
+    static MicroBenchmark.Body circleDraw() {
+        final BufferedImage image = new BufferedImage(GameEngine.WIDTH, GameEngine.HEIGHT, BufferedImage.TYPE_INT_RGB);
+        final Graphics2D g = image.createGraphics();
+        final Circle circle = new Circle(100, 100, GameEngine.CIRCLE_SIZE, true);
+        return ops -> {
+            for (int i = 0; i < ops; i++) {
+                circle.draw(g);
+            }
+            return image.getRGB(125, 125);
+        };
+    }
+
+    /*
+     * A whole frame: clearing the background and drawing every circle, with or without antialiasing,
+     * with fillOval or from the sprite cache.
+     */
+    static MicroBenchmark.Body paint(int n, boolean antialias, boolean sprites) {
+        final BufferedImage image = new BufferedImage(GameEngine.WIDTH, GameEngine.HEIGHT, BufferedImage.TYPE_INT_RGB);
+        final Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                antialias ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF);
+        final CircleSprites cache = sprites ? new CircleSprites() : null;
+        final GameEngine engine = new GameEngine(1, n);
+        engine.spawnCircles(0);
+        return ops -> {
+            for (int i = 0; i < ops; i++) {
+                g.setColor(Color.WHITE);
+                g.fillRect(0, 0, GameEngine.WIDTH, GameEngine.HEIGHT);
+                engine.getCircles().drawAll(g, 0, 0, GameEngine.WIDTH, GameEngine.HEIGHT, cache);
+            }
+            return image.getRGB(0, 0);
+        };
+    }
+
+    /*
+     * What GamePanel paints on a round change in timer mode: just the rectangles of the old and the new circles,
+     * each cleared and drawn with only the circles that overlap it. Compare with paint[circles=5,aa=false,sprites=true].
+     */
+    static MicroBenchmark.Body paintDirty(int n) {
+        final BufferedImage image = new BufferedImage(GameEngine.WIDTH, GameEngine.HEIGHT, BufferedImage.TYPE_INT_RGB);
+        final Graphics2D g = image.createGraphics();
+        final GameEngine engine = new GameEngine(1, n);
+        engine.spawnCircles(0);
+        final int[] oldX = new int[n];
+        final int[] oldY = new int[n];
+        for (int i = 0; i < n; i++) {
+            oldX[i] = engine.getCircles().getX(i);
+            oldY[i] = engine.getCircles().getY(i);
+        }
+        engine.spawnCircles(0);
+        final CircleStore circles = engine.getCircles();
+        final int size = GameEngine.CIRCLE_SIZE;
+        return ops -> {
+            for (int op = 0; op < ops; op++) {
+                for (int i = 0; i < 2 * n; i++) {
+                    int x = i < n ? oldX[i] : circles.getX(i - n);
+                    int y = i < n ? oldY[i] : circles.getY(i - n);
+                    g.setClip(x, y, size, size);
+                    g.setColor(Color.WHITE);
+                    g.fillRect(x, y, size, size);
+                    circles.drawAll(g, x, y, size, size);
+                }
+            }
+            return image.getRGB(0, 0);
+        };
+    }
+
+    // The vector kernel is created directly, so it fails rather than quietly measuring the scalar one instead
+    private static CircleMotion.Kernel motionKernel(String name) {
+        return name.equals("vector") ? new VectorMotionKernel() : new CircleMotion.ScalarKernel();
+    }
+
+    /*
+     * One step of moving n circles and bouncing the ones that hit an edge, straight through the kernel.
+     * The game does 4 steps per 60 fps frame, then copies the positions into the CircleStore.
+     */
+    static MicroBenchmark.Body moveStep(int n, String kernel) {
+        final CircleMotion.Kernel k = motionKernel(kernel);
+        final float[] x = new float[n];
+        final float[] y = new float[n];
+        final float[] vx = new float[n];
+        final float[] vy = new float[n];
+        final float[] maxX = new float[n];
+        final float[] maxY = new float[n];
+        Random rand = new Random(1);
+        for (int i = 0; i < n; i++) {
+            maxX[i] = GameEngine.WIDTH - GameEngine.CIRCLE_SIZE;
+            maxY[i] = GameEngine.HEIGHT - GameEngine.CIRCLE_SIZE;
+            x[i] = rand.nextFloat() * maxX[i];
+            y[i] = rand.nextFloat() * maxY[i];
+            vx[i] = (rand.nextFloat() - 0.5f) * 600;
+            vy[i] = (rand.nextFloat() - 0.5f) * 600;
+        }
+        final float dt = CircleMotion.STEP_NANOS / 1e9f;
+        return ops -> {
+            for (int i = 0; i < ops; i++) {
+                k.step(x, y, vx, vy, maxX, maxY, n, dt);
+            }
+            return (long) x[0];
+        };
+    }
+
+    /*
+     * Finding which of n circles is under a point, checking every circle. The circles are all in the top left
+     * quarter and the points in the bottom right one, so nothing is ever hit and every circle has to be checked,
+     * which is the worst case.
+     */
+    static MicroBenchmark.Body moveHitTest(int n, String kernel) {
+        final CircleMotion.Kernel k = motionKernel(kernel);
+        final float[] x = new float[n];
+        final float[] y = new float[n];
+        final float[] half = new float[n];
+        Random rand = new Random(1);
+        int size = GameEngine.CIRCLE_SIZE;
+        for (int i = 0; i < n; i++) {
+            x[i] = rand.nextFloat() * (GameEngine.WIDTH / 2 - size);
+            y[i] = rand.nextFloat() * (GameEngine.HEIGHT / 2 - size);
+            half[i] = size / 2;
+        }
+        final float[] px = new float[POINTS];
+        final float[] py = new float[POINTS];
+        for (int i = 0; i < POINTS; i++) {
+            px[i] = GameEngine.WIDTH / 2 + rand.nextInt(GameEngine.WIDTH / 2);
+            py[i] = GameEngine.HEIGHT / 2 + rand.nextInt(GameEngine.HEIGHT / 2);
+        }
+        return ops -> {
+            long sum = 0;
+            for (int i = 0; i < ops; i++) {
+                int p = i & (POINTS - 1);
+                sum += k.findTopmost(x, y, half, n, px[p], py[p]);
+            }
+            return sum;
+        };
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+
+        String filter = "";
+        String run = null;
+        boolean fork = true;
+        int warmup = 3;
+        int iterations = 5;
+        long time = 1000;
+        for (String arg : args) {
+            String[] kv = arg.split("=", 2);
+            if (kv.length != 2) {
+                throw new IllegalArgumentException("Arguments should look like name=value, got " + arg);
+            }
+            if (kv[0].equals("filter")) {
+                filter = kv[1];
+            } else if (kv[0].equals("run")) {
+                run = kv[1];
+            } else if (kv[0].equals("fork")) {
+                fork = Boolean.parseBoolean(kv[1]);
+            } else if (kv[0].equals("warmup")) {
+                warmup = Integer.parseInt(kv[1]);
+            } else if (kv[0].equals("iterations")) {
+                iterations = Integer.parseInt(kv[1]);
+            } else if (kv[0].equals("time")) {
+                time = Long.parseLong(kv[1]);
+            } else {
+                throw new IllegalArgumentException("Unknown argument: " + kv[0]);
+            }
+        }
+
+        Map<String, Supplier<MicroBenchmark.Body>> all = benchmarks();
+        MicroBenchmark harness = new MicroBenchmark(warmup, iterations, time);
+
+        // Inside a forked JVM: run one benchmark and print its result line
+        if (run != null) {
+            Supplier<MicroBenchmark.Body> setup = all.get(run);
+            if (setup == null) {
+                throw new IllegalArgumentException("Unknown benchmark: " + run);
+            }
+            System.out.println(harness.measure(run, setup.get()));
+            return;
+        }
+
+        System.out.println(MicroBenchmark.Result.header());
+        for (Map.Entry<String, Supplier<MicroBenchmark.Body>> entry : all.entrySet()) {
+            String name = entry.getKey();
+            if (!name.contains(filter)) {
+                continue;
+            }
+            if (fork) {
+                System.out.println(runForked(name, warmup, iterations, time));
+            } else {
+                System.out.println(harness.measure(name, entry.getValue().get()));
+            }
+        }
+    }
+
+    // Runs one benchmark in a new JVM with the same classpath, and returns what it printed
+    private static String runForked(String name, int warmup, int iterations, long time) throws Exception {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        ArrayList<String> command = new ArrayList<>();
+        command.add(java);
+        command.add("-Djava.awt.headless=true");
+        command.add("--add-modules");
+        command.add("jdk.incubator.vector");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("GameBenchmarks");
+        command.add("run=" + name);
+        command.add("warmup=" + warmup);
+        command.add("iterations=" + iterations);
+        command.add("time=" + time);
+
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        StringBuilder output = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("WARNING: Using incubator modules")) {
+                    continue;
+                }
+                if (output.length() > 0) {
+                    output.append('\n');
+                }
+                output.append(line);
+            }
+        }
+        if (process.waitFor() != 0) {
+            return name + " failed:\n" + output;
+        }
+        return output.toString();
+    }
+}
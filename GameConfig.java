@@ -0,0 +1,69 @@
+/*
+ * Settings that can be changed when launching the game, using -D system properties.
+ * For example: java -Dreflex.gameLoop=true RunGame
+ */
+public class GameConfig {
+
+    // When true, GamePanel is driven by a GameLoop thread that draws onto a page-flipped canvas,
+    // instead of two javax.swing.Timers and repaint().
+    public static final boolean GAME_LOOP = Boolean.getBoolean("reflex.gameLoop");
+
+    // When true, the panel shows how many pixels the last frame painted and how long it took
+    public static final boolean PAINT_STATS = Boolean.getBoolean("reflex.paintStats");
+
+    // Circles are drawn by copying pre-drawn images (see CircleSprites). Set to false to draw them with fillOval.
+    public static final boolean SPRITES = !"false".equals(System.getProperty("reflex.sprites"));
+
+    // How long the EDT can take to get to a new event before EdtWatchdog records it as a stall (only while
+    // a Flight Recorder recording is running, see GameEvents)
+    public static final int STALL_MILLIS = Math.max(1, Integer.getInteger("reflex.stallMillis", 50));
+
+    // When true (the default) a hit counts as soon as the mouse button is pressed. Set -Dreflex.input=click to count
+    // it on mouseClicked instead, after the button is released.
+    public static final boolean INPUT_ON_PRESS = !"click".equals(System.getProperty("reflex.input", "press"));
+
+    // Number of circles spawned each round (one of them is the target)
+    public static final int NUM_CIRCLES = Math.max(1, Integer.getInteger("reflex.circles", 5));
+
+    // Moving-target mode: every circle moves at this many pixels a second and bounces off the edges. 0 (the default)
+    // keeps them still. The circles are moved with the Vector API when the JVM was started with
+    // --add-modules jdk.incubator.vector, unless -Dreflex.vector=false (see CircleMotion).
+    public static final int MOVING_SPEED = Math.max(0, Integer.getInteger("reflex.moving", 0));
+    public static final boolean VECTOR = !"false".equals(System.getProperty("reflex.vector"));
+
+    // Seed for placing circles. Set it to play the same layouts again, otherwise every run is different.
+    public static final long SEED = Long.getLong("reflex.seed", System.nanoTime());
+
+    // File to record every game into (added to, not overwritten), so it can be replayed with SessionReplayer.
+    // Not recorded when unset.
+    public static final String RECORD_FILE = System.getProperty("reflex.record");
+
+    // File to add every attempt to, for TelemetryAnalyzer (see TelemetryWriter). Nothing is written when unset.
+    public static final String TELEMETRY_FILE = System.getProperty("reflex.telemetry");
+
+    // Port for the live stats endpoint (see LiveStatsServer), which spectators, overlays and metrics scrapers read.
+    // No live stats are published when unset.
+    public static final Integer LIVE_PORT = Integer.getInteger("reflex.livePort");
+
+    // Where finished games are saved (see ScoreStore), and the name they are saved under
+    public static final String SCORE_DIR = System.getProperty("reflex.scores",
+            System.getProperty("user.home") + java.io.File.separator + ".reflex-rush");
+    public static final String PLAYER = System.getProperty("reflex.player", System.getProperty("user.name", "player"));
+
+    // Leaderboard server that finished games are sent to (see LeaderboardServer). Not sent anywhere when unset.
+    public static final String LEADERBOARD_HOST = System.getProperty("reflex.leaderboard.host");
+    public static final int LEADERBOARD_PORT = Integer.getInteger("reflex.leaderboard.port", LeaderboardServer.DEFAULT_PORT);
+
+    // Match server for head-to-head play (see MatchServer). The "Head to Head" button only shows up when this is set.
+    // Everyone who joins the same match id plays each other, and the match starts once MATCH_PLAYERS have joined.
+    public static final String MATCH_HOST = System.getProperty("reflex.match.host");
+    public static final int MATCH_PORT = Integer.getInteger("reflex.match.port", MatchServer.DEFAULT_PORT);
+    public static final int MATCH_ID = Integer.getInteger("reflex.match.id", 1);
+    public static final int MATCH_PLAYERS = Math.max(2, Integer.getInteger("reflex.match.players", 2));
+
+    // Used by StartupBenchmark: prints when the first frame was painted and when the window became interactive, then exits
+    public static final boolean STARTUP_PROBE = Boolean.getBoolean("reflex.startupProbe");
+
+    private GameConfig() {
+    }
+}
@@ -0,0 +1,354 @@
+/*
+ * The rules of the game, with no Swing in it.
+ * GameEngine knows about rounds, clicks, score, misses and the countdown, but it never reads the clock itself:
+ * whoever drives it passes in the time, and tells it when a round or a second has gone by.
+ * GamePanel drives it with real timers and real clicks. BotSimulator drives it with a virtual clock,
+ * which lets a game be played much faster than real time. With the same seed and the same inputs,
+ * the engine always does exactly the same thing.
+ */
+public class GameEngine {
+    // Size of the play area, and of each circle (diameter)
+    public static final int WIDTH = 600;
+    public static final int HEIGHT = 400;
+    public static final int CIRCLE_SIZE = 50;
+
+    public static final int GAME_SECONDS = 20; // how long a game lasts
+
+    // Difficulty levels
+    public static final int EASY = 0;
+    public static final int MEDIUM = 1;
+    public static final int HARD = 2;
+    public static final String[] DIFFICULTY_NAMES = { "Easy", "Medium", "Hard" };
+
+    // What a click did
+    public static final int IGNORED = 0; // the game was not running
+    public static final int HIT = 1; // the target was clicked
+    public static final int MISS = 2; // a grey circle or empty space was clicked
+
+    // The other kinds of attempt passed to Listener.attemptMade, besides HIT and MISS
+    public static final int EXPIRED = 3; // a round ran out without its target being hit
+    public static final int LATE_HIT = 4; // a round that had run out was hit after all (see click()), undoing its EXPIRED
+
+    /*
+     * Told about every change, so a UI can update itself.
+     * All methods do nothing by default, so a listener only needs the ones it cares about.
+     */
+    public interface Listener {
+        default void circlesChanged() {}
+        default void scoreChanged() {}
+        default void statsChanged() {}
+        default void timeChanged() {}
+        default void gameEnded() {}
+
+        /*
+         * Every attempt: a click (HIT or MISS), a round running out (EXPIRED, with no click position), or a late
+         * hit (LATE_HIT). The target is given by its centre, and elapsedNanos is the time from the round's start
+         * to the click, or to running out.
+         */
+        default void attemptMade(int kind, int x, int y, int targetX, int targetY, long elapsedNanos) {}
+    }
+
+    private static final Listener NO_LISTENER = new Listener() {};
+
+    private final RoundLayouts layouts; // decides where circles go and which one is the target
+    private CircleStore circles = new CircleStore();
+    private CircleGrid circleGrid = new CircleGrid(WIDTH, HEIGHT, CIRCLE_SIZE);
+
+    /*
+     * The round before the current one. A click can reach us after the circles it was aimed at have already been
+     * replaced (it waited in the event queue while a timer switched rounds), so clicks are judged against the
+     * layout that was on screen when they happened. Each spawn swaps these with the current ones, so nothing is copied.
+     */
+    private CircleStore previousCircles = new CircleStore();
+    private CircleGrid previousGrid = new CircleGrid(WIDTH, HEIGHT, CIRCLE_SIZE);
+    private long previousRoundStartNanos;
+    private boolean previousRoundExpired = false; // the previous round ran out without a hit, and was counted as a miss
+    private Listener listener = NO_LISTENER;
+    private CircleMotion motion; // moves the circles in the moving-target mode, null when they stay still
+
+    private int difficulty = MEDIUM;
+    private boolean gameRunning = false;
+    private boolean recentlyClicked = false; // prevents a round counting as missed when its target was already hit
+    private int timeLeft = GAME_SECONDS;
+    private int score = 0;
+    private int misses = 0;
+    private int totalAttempts = 0;
+
+    private long roundStartNanos; // when the current set of circles was spawned
+    private long lastReactionNanos; // reaction time of the most recent hit
+
+    public GameEngine(long seed, int numCircles) {
+        this.layouts = new RoundLayouts(seed, numCircles, WIDTH, HEIGHT, CIRCLE_SIZE);
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener != null ? listener : NO_LISTENER;
+    }
+
+    // Resets the random generator, so the next game can be replayed exactly
+    public void setSeed(long seed) {
+        layouts.setSeed(seed);
+        if (motion != null) {
+            motion.setSeed(seed);
+        }
+    }
+
+    /*
+     * Turns on the moving-target mode, where the circles move around and bounce off the edges (null turns it off).
+     * Someone has to call advance() every frame to move them; clicks move them on to when they are handled before
+     * checking what was hit. Set this before setSeed().
+     */
+    public void setMotion(CircleMotion motion) {
+        this.motion = motion;
+    }
+
+    public CircleMotion getMotion() {
+        return motion;
+    }
+
+    /*
+     * Moves the circles to where they should be now, in the moving-target mode. Returns true if they moved,
+     * in which case the circles need drawing again.
+     */
+    public boolean advance(long nowNanos) {
+        if (motion == null || !gameRunning) {
+            return false;
+        }
+        return motion.advanceTo(nowNanos - roundStartNanos, circles);
+    }
+
+    // Makes each next round's layout on a background thread, so starting a round only copies it (see RoundLayouts)
+    public void setPrefetch(boolean prefetch) {
+        layouts.setPrefetch(prefetch);
+    }
+
+    // How often the circles change for a difficulty, in milliseconds
+    public static int roundDelayMillis(int difficulty) {
+        if (difficulty == EASY) {
+            return 2500;
+        } else if (difficulty == HARD) {
+            return 1000;
+        }
+        return 1500; // Medium or default
+    }
+
+    // Turns a difficulty name ("Easy", "Medium", "Hard") into EASY, MEDIUM or HARD
+    public static int difficultyIndex(String name) {
+        if (name.equals("Easy")) {
+            return EASY;
+        } else if (name.equals("Hard")) {
+            return HARD;
+        }
+        return MEDIUM;
+    }
+
+    // Starts a new game, resetting all the stats and spawning the first set of circles
+    public void start(int difficulty, long nowNanos) {
+        this.difficulty = difficulty;
+        gameRunning = true;
+        recentlyClicked = false;
+        timeLeft = GAME_SECONDS;
+        score = 0;
+        misses = 0;
+        totalAttempts = 0;
+        previousCircles.clear();
+        previousGrid.clear();
+        previousRoundExpired = false;
+        spawnCircles(nowNanos);
+        listener.scoreChanged();
+        listener.statsChanged();
+        listener.timeChanged();
+    }
+
+    /*
+     * Called every time a round's delay has gone by. If the user didn't hit the target during the round,
+     * it counts as a miss and new circles are spawned.
+     * If they did, the hit has already spawned new circles, so they are left alone.
+     */
+    public void roundElapsed(long nowNanos) {
+        if (!recentlyClicked && gameRunning) {
+            advance(nowNanos);
+            misses++;
+            totalAttempts++;
+            reportAttempt(EXPIRED, -1, -1, circles, nowNanos - roundStartNanos);
+            listener.statsChanged();
+            spawnCircles(nowNanos);
+            previousRoundExpired = true;
+        }
+        recentlyClicked = false;
+    }
+
+    // Called every second while the game is running. Ends the game once the time runs out.
+    public void secondElapsed() {
+        if (!gameRunning) {
+            return;
+        }
+        timeLeft--;
+        listener.timeChanged();
+        if (timeLeft <= 0) {
+            endGame();
+        }
+    }
+
+    /*
+     * Handles a click at (x, y). clickNanos is when the click happened and nowNanos is when it is being handled,
+     * which is also when any new circles appear. Returns HIT, MISS or IGNORED.
+     * The top-most circle under the click is the one that counts.
+     *
+     * If the click happened before the current circles appeared, while the previous round was still on screen and
+     * that round then ran out, it is judged against the previous round instead. A hit there takes back the miss the
+     * round was given when it ran out, and the current round carries on.
+     */
+    public int click(int x, int y, long clickNanos, long nowNanos) {
+        if (!gameRunning) {
+            return IGNORED;
+        }
+        if (previousRoundExpired && clickNanos < roundStartNanos && clickNanos >= previousRoundStartNanos) {
+            return lateClick(x, y, clickNanos);
+        }
+
+        int index;
+        if (motion != null) {
+            advance(nowNanos);
+            index = motion.findTopmost(x, y);
+        } else {
+            index = circleGrid.findTopmost(circles, x, y);
+        }
+        totalAttempts++;
+        int result;
+        if (index >= 0 && circles.isTarget(index)) {
+            lastReactionNanos = Math.max(0, clickNanos - roundStartNanos);
+            score++;
+            recentlyClicked = true;
+            reportAttempt(HIT, x, y, circles, lastReactionNanos);
+            listener.scoreChanged();
+            spawnCircles(nowNanos);
+            result = HIT;
+        } else {
+            misses++;
+            reportAttempt(MISS, x, y, circles, clickNanos - roundStartNanos);
+            result = MISS;
+        }
+        listener.statsChanged();
+        return result;
+    }
+
+    // A click aimed at the previous round, which ran out before the click was handled
+    private int lateClick(int x, int y, long clickNanos) {
+        // moving circles stopped where they were when the round ended, which the grid doesn't know about
+        int index = motion != null ? previousCircles.findTopmost(x, y) : previousGrid.findTopmost(previousCircles, x, y);
+        int result;
+        if (index >= 0 && previousCircles.isTarget(index)) {
+            // the round did get hit in time: it is no longer a miss, and it can't be hit twice
+            lastReactionNanos = Math.max(0, clickNanos - previousRoundStartNanos);
+            score++;
+            misses--;
+            previousRoundExpired = false;
+            reportAttempt(LATE_HIT, x, y, previousCircles, lastReactionNanos);
+            listener.scoreChanged();
+            result = HIT;
+        } else {
+            misses++;
+            totalAttempts++;
+            reportAttempt(MISS, x, y, previousCircles, clickNanos - previousRoundStartNanos);
+            result = MISS;
+        }
+        listener.statsChanged();
+        return result;
+    }
+
+    private void reportAttempt(int kind, int x, int y, CircleStore layout, long elapsedNanos) {
+        int target = layout.targetIndex();
+        int targetX = target >= 0 ? layout.getX(target) + layout.getSize(target) / 2 : -1;
+        int targetY = target >= 0 ? layout.getY(target) + layout.getSize(target) / 2 : -1;
+        listener.attemptMade(kind, x, y, targetX, targetY, Math.max(0, elapsedNanos));
+    }
+
+    // Stops the game and clears the circles
+    private void endGame() {
+        gameRunning = false;
+        circles.clear();
+        circleGrid.clear();
+        listener.circlesChanged();
+        listener.gameEnded();
+    }
+
+    // Package-private so GameBenchmarks can measure it on its own
+    void spawnCircles(long nowNanos) {
+        GameEvents.RoundSpawn event = new GameEvents.RoundSpawn();
+        event.begin();
+
+        // the current round becomes the previous one, and its store and grid are reused for the new round
+        CircleStore oldCircles = circles;
+        circles = previousCircles;
+        previousCircles = oldCircles;
+        CircleGrid oldGrid = circleGrid;
+        circleGrid = previousGrid;
+        previousGrid = oldGrid;
+        previousRoundStartNanos = roundStartNanos;
+        previousRoundExpired = false; // roundElapsed() sets it again if that's why we are here
+
+        // The layout is already worked out: no two circles closer than RoundLayouts.GAP, and the target never covered
+        layouts.next(circles);
+        if (motion != null) {
+            motion.reset(circles);
+        } else {
+            circleGrid.build(circles);
+        }
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.circles = circles.count();
+            event.target = circles.targetIndex();
+            event.commit();
+        }
+
+        // Remember when this round started, so we can work out the reaction time once the target is clicked
+        roundStartNanos = nowNanos;
+        listener.circlesChanged();
+    }
+
+    // Percentage of attempts that hit the target (100 before any attempts)
+    public int getAccuracy() {
+        if (totalAttempts > 0) {
+            return (int) ((score * 100.0f) / totalAttempts);
+        }
+        return 100;
+    }
+
+    public CircleStore getCircles() {
+        return circles;
+    }
+
+    public boolean isRunning() {
+        return gameRunning;
+    }
+
+    public int getDifficulty() {
+        return difficulty;
+    }
+
+    public int getTimeLeft() {
+        return timeLeft;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public int getMisses() {
+        return misses;
+    }
+
+    public int getTotalAttempts() {
+        return totalAttempts;
+    }
+
+    public long getRoundStartNanos() {
+        return roundStartNanos;
+    }
+
+    public long getLastReactionNanos() {
+        return lastReactionNanos;
+    }
+}
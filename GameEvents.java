@@ -0,0 +1,140 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/*
+ * JDK Flight Recorder events for the game's hot paths, so a report like "the click didn't count" can be checked
+ * against what actually happened: how late the click reached us, what it hit, whether a timer fired late,
+ * or whether painting or the EDT held things up.
+ *
+ * Record a game with:  java -XX:StartFlightRecording:filename=game.jfr RunGame
+ * and look at the "Reflex Rush" category in JDK Mission Control, or with  jfr print --categories "Reflex Rush" game.jfr
+ *
+ * Events are used the usual JFR way: create, begin(), do the work, then fill in the fields only if shouldCommit().
+ * When no recording is running those calls do nothing and the JIT removes the event object, so this costs
+ * nothing in a normal game.
+ */
+final class GameEvents {
+    private GameEvents() {
+    }
+
+    @Name("reflexrush.RoundSpawn")
+    @Label("Round Spawn")
+    @Category("Reflex Rush")
+    @Description("A new set of circles was put in place")
+    @StackTrace(false)
+    static class RoundSpawn extends Event {
+        @Label("Circles")
+        int circles;
+
+        @Label("Target Index")
+        int target;
+    }
+
+    @Name("reflexrush.Click")
+    @Label("Click")
+    @Category("Reflex Rush")
+    @Description("A click on the play area, and what it did")
+    @StackTrace(false)
+    static class Click extends Event {
+        @Label("X")
+        int x;
+
+        @Label("Y")
+        int y;
+
+        @Label("Outcome")
+        @Description("HIT, MISS, or IGNORED when no game was running")
+        String outcome;
+
+        @Label("Queue Delay")
+        @Description("How long the click waited between happening (MouseEvent.getWhen()) and reaching the listener")
+        @Timespan(Timespan.MILLISECONDS)
+        long queueDelay;
+
+        @Label("Reaction Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long reaction;
+    }
+
+    @Name("reflexrush.TimerFired")
+    @Label("Timer Fired")
+    @Category("Reflex Rush")
+    @Description("A round or countdown tick, and how late it ran")
+    @StackTrace(false)
+    static class TimerFired extends Event {
+        @Label("Timer")
+        String timer;
+
+        @Label("Drift")
+        @Timespan(Timespan.NANOSECONDS)
+        long drift;
+    }
+
+    @Name("reflexrush.LabelUpdate")
+    @Label("Label Update")
+    @Category("Reflex Rush")
+    @Description("The stats labels were refreshed on the EDT")
+    @StackTrace(false)
+    static class LabelUpdate extends Event {
+        @Label("Text")
+        String text;
+
+        @Label("Changes")
+        @Description("How many stats changes this one refresh shows")
+        int changes;
+
+        @Label("Handoff Delay")
+        @Description("How long the first of those changes waited to be shown")
+        @Timespan(Timespan.NANOSECONDS)
+        long handoffDelay;
+    }
+
+    @Name("reflexrush.Paint")
+    @Label("Paint")
+    @Category("Reflex Rush")
+    @Description("One paintComponent call, or one game loop frame")
+    @StackTrace(false)
+    static class Paint extends Event {
+        @Label("Pixels")
+        long pixels;
+
+        @Label("Game Loop")
+        boolean gameLoop;
+    }
+
+    @Name("reflexrush.EndGame")
+    @Label("End Game")
+    @Category("Reflex Rush")
+    @Description("Ending a game: saving it and showing the results")
+    @StackTrace(false)
+    static class EndGame extends Event {
+        @Label("Score")
+        int score;
+
+        @Label("Misses")
+        int misses;
+
+        @Label("Accuracy")
+        int accuracy;
+    }
+
+    @Name("reflexrush.EdtStall")
+    @Label("EDT Stall")
+    @Category("Reflex Rush")
+    @Description("A probe posted to the EDT took longer than the threshold to run (see EdtWatchdog)")
+    @StackTrace(false)
+    static class EdtStall extends Event {
+        @Label("Dispatch Latency")
+        @Timespan(Timespan.NANOSECONDS)
+        long latency;
+
+        @Label("EDT Stack Trace")
+        @Description("Where the EDT was while the probe was waiting")
+        String edtStack;
+    }
+}
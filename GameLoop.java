@@ -0,0 +1,159 @@
+import java.awt.*;
+import java.awt.image.BufferStrategy;
+
+/*
+ * A fixed-step game loop with active rendering.
+ * The loop runs on its own thread. Every tick it runs one step of game logic and then draws a frame
+ * straight onto a Canvas through a page-flipped BufferStrategy, so anything that changes on a tick
+ * (such as a new round of circles) is on screen in that same frame.
+ * It does not depend on the Swing Timer thread or on repaint() requests being coalesced by the EDT.
+ */
+public class GameLoop implements Runnable {
+    public static final int TICKS_PER_SECOND = 60; // logic steps (and frames) per second
+
+    // The most ticks we will run to catch up before giving up and starting the schedule again
+    private static final int MAX_CATCH_UP_TICKS = TICKS_PER_SECOND;
+
+    // Sleeping is not accurate, so for the last part of the wait we spin instead
+    private static final long SPIN_NANOS = 2_000_000;
+
+    // What the loop calls into every tick
+    public interface Game {
+        // Runs one fixed step of game logic
+        void update();
+
+        // Draws the current state of the game onto g
+        void render(Graphics2D g, int width, int height);
+    }
+
+    private final Canvas canvas;
+    private final Game game;
+    private final TimingStats stats;
+
+    private volatile Thread thread; // the loop thread, null when stopped. A loop thread that isn't this one stops.
+
+    public GameLoop(Canvas canvas, Game game, TimingStats stats) {
+        this.canvas = canvas;
+        this.game = game;
+        this.stats = stats;
+    }
+
+    // Converts a time in milliseconds to a whole number of ticks
+    public static int millisToTicks(int millis) {
+        return (int) Math.round(millis * TICKS_PER_SECOND / 1000.0);
+    }
+
+    // Starts the loop thread, if it is not already running
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        Thread loop = new Thread(this, "game-loop");
+        loop.setDaemon(true);
+        thread = loop;
+        loop.start();
+    }
+
+    /*
+     * Stops the loop thread. Called from the loop itself (e.g. when a tick ends the game) it finishes the frame it is
+     * on, so the last state gets drawn, and isn't interrupted, so whatever the tick is doing can still do I/O.
+     * A loop started again straight away gets a new thread, and the old one still stops.
+     */
+    public synchronized void stop() {
+        Thread loop = thread;
+        thread = null;
+        if (loop != null && loop != Thread.currentThread()) {
+            loop.interrupt();
+        }
+    }
+
+    public void run() {
+        BufferStrategy strategy = null;
+        long startNanos = System.nanoTime();
+        long tick = 0;
+        long lastFrameNanos = 0;
+
+        while (thread == Thread.currentThread()) {
+            // Wait for the next tick. The deadline is always worked out from the start time,
+            // so small errors never add up over a long game.
+            long deadline = tickTime(startNanos, tick + 1);
+            if (!waitUntil(deadline)) {
+                return;
+            }
+            long now = System.nanoTime();
+            stats.recordDrift(now - deadline);
+
+            // Run every tick that is due. Normally that is exactly one.
+            int steps = 0;
+            while (tickTime(startNanos, tick + 1) <= now && steps < MAX_CATCH_UP_TICKS) {
+                game.update();
+                tick++;
+                steps++;
+            }
+            if (steps > 1) {
+                stats.recordDroppedFrames(steps - 1);
+            }
+            if (steps == MAX_CATCH_UP_TICKS) {
+                // We fell far behind (e.g. the machine was suspended), so start the schedule again from now
+                startNanos = now;
+                tick = 0;
+            }
+
+            // The buffer strategy can only be created once the canvas is on screen
+            if (strategy == null) {
+                if (!canvas.isDisplayable()) {
+                    continue;
+                }
+                canvas.createBufferStrategy(2);
+                strategy = canvas.getBufferStrategy();
+            }
+
+            render(strategy);
+
+            long shown = System.nanoTime();
+            if (lastFrameNanos != 0) {
+                stats.recordFrameTime(shown - lastFrameNanos);
+            }
+            lastFrameNanos = shown;
+        }
+    }
+
+    // Draws one frame and flips it onto the screen, redrawing if the buffer contents were lost
+    private void render(BufferStrategy strategy) {
+        do {
+            do {
+                Graphics2D g = (Graphics2D) strategy.getDrawGraphics();
+                try {
+                    game.render(g, canvas.getWidth(), canvas.getHeight());
+                } finally {
+                    g.dispose();
+                }
+            } while (strategy.contentsRestored());
+            strategy.show();
+        } while (strategy.contentsLost());
+        Toolkit.getDefaultToolkit().sync();
+    }
+
+    private static long tickTime(long startNanos, long tick) {
+        return startNanos + tick * 1_000_000_000L / TICKS_PER_SECOND;
+    }
+
+    // Sleeps most of the way to the deadline, then spins. Returns false if the thread was interrupted.
+    private static boolean waitUntil(long deadline) {
+        while (true) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return true;
+            }
+            if (remaining > SPIN_NANOS) {
+                try {
+                    Thread.sleep((remaining - SPIN_NANOS) / 1_000_000);
+                } catch (InterruptedException e) {
+                    return false;
+                }
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+    }
+}
@@ -1,49 +1,200 @@
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
-import java.util.ArrayList;
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 class GamePanel extends JPanel {
     // Dimension of game panel
-    private final int WIDTH = 600;
-    private final int HEIGHT = 400;
+    private final int WIDTH = GameEngine.WIDTH;
+    private final int HEIGHT = GameEngine.HEIGHT;
+
+    // Runs the two timers below. On the desktop they are Swing timers, so they run on the EDT.
+    private final GameScheduler scheduler = new SwingScheduler();
+    private GameScheduler.Task gameTimer; // timer that tracks how long game will run for
+    private GameScheduler.Task circleTimer; // timer for how long circles on screen appear for
+    private GameScheduler.Task frameTimer; // moves the circles every frame in the moving-target mode, otherwise null
+    private static final int FRAME_MILLIS = 16; // about 60 frames a second
+
+    private HudLabel timerLabel;  // label to display time
+    private HudLabel missLabel;   // to display misses
+    private HudLabel accuracyLabel;   // to display stastics of ratio between hits/total hits
+    private HudLabel recentAccuracyLabel; // accuracy over the last few attempts
+    private HudLabel streakLabel; // hits in a row
+    private HudLabel reactionLabel; // moving average of the reaction time
 
-    private final int CIRCLE_SIZE = 50; // size of circle (diameter)
-
-    private Timer gameTimer; // timer that tracks how long game will run for
-    private Timer circleTimer; // timer for how long circles on screen appear for
-
-    private int timeLeft = 20;  // to track time left
-    private int misses = 0; // to track num of misses
-    private int totalAttempts = 0;  // to track total attempts (misses and hits together)
-
-    private JLabel timerLabel;  // label to display time
-    private JLabel missLabel;   // to display misses
-    private JLabel accuracyLabel;   // to display stastics of ratio between hits/total hits
-
-    private Random rand = new Random(); // used to randomize placement of circles onto the panel, as well as deciding which circle is the "target"
+    /*
+     * The stats are kept up to date on every attempt (see SessionStats), but the labels are only refreshed once
+     * per frame at most: the first change after a refresh queues hudRefresh, and every change until it runs is
+     * shown by that same refresh. hudPending says whether a refresh is queued; it is cleared by the refresh
+     * before it reads the stats, so a change made while it runs queues the next one.
+     */
+    private final SessionStats sessionStats = new SessionStats();
+    private final AtomicBoolean hudPending = new AtomicBoolean();
+    private final AtomicInteger hudChanges = new AtomicInteger(); // changes since the last refresh, for GameEvents
+    private volatile long hudRequestedNanos; // when the queued refresh was asked for
+    private volatile long lastHudRefreshNanos;
+    private final Runnable hudRefresh = new HudRefresh();
 
     private GameWindow parent; // used to reference to the parent class, so that we can update statistics from the gamepanel
 
-    // An arraylist of circles used for game, as well as the number of circles per round
-    private ArrayList<Circle> circles = new ArrayList<>();
-    private int numCircles = 5;
+    // The game itself: rounds, clicks, score and misses. This panel only shows it and feeds it timer ticks and clicks.
+    private final GameEngine engine;
+    private final Random seedSource = new Random(GameConfig.SEED); // gives every game its own seed, so it can be replayed
+
+    private InputRecorder recorder; // records every game when GameConfig.RECORD_FILE is set, otherwise null
+    private TelemetryWriter telemetry; // writes every attempt when GameConfig.TELEMETRY_FILE is set, otherwise null
+    private ScoreStore scoreStore; // saves every finished game, null if it could not be opened
+    // Saving a game syncs it to disk, which can take a while on a slow disk, so it is done on this thread and not
+    // on the EDT or the game loop thread. One thread, so games are saved in the order they were played.
+    private final ExecutorService scoreWriter = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "score-writer");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private LiveStats liveStats; // publishes a snapshot after every change when GameConfig.LIVE_PORT is set, otherwise null
+    private LiveStatsServer liveServer; // serves liveStats over HTTP, null when liveStats is
+    private long lastLiveLayoutNanos; // when moving circles were last copied into liveStats
+
+    // Reaction time tracking. Each difficulty has its own stats, indexed by GameEngine.EASY, MEDIUM and HARD.
+    private final ReactionTimeStats[] reactionStats = {
+        new ReactionTimeStats("Easy"), new ReactionTimeStats("Medium"), new ReactionTimeStats("Hard")
+    };
+    private final ReactionTimeStats gameReactions = new ReactionTimeStats("This game"); // just the current game
+    private boolean roundShown = true; // whether the current set of circles has been drawn yet
+
+    // Game loop mode (see GameConfig.GAME_LOOP). The loop thread draws onto the canvas instead of paintComponent.
+    private GameLoop gameLoop;
+    private int roundTicks; // how many ticks each round of circles lasts
+    private int roundTicksLeft; // ticks left in the current round
+    private int secondTicksLeft; // ticks left until timeLeft goes down by 1
+
+    // Used by the timer mode to work out how late each timer fired
+    private long timersStartNanos;
+    private int circleTimerFires;
+    private int gameTimerFires;
+    private int circleDelay;
+
+    private final TimingStats timingStats = new TimingStats();
 
-    private boolean recentlyClicked = false; // boolean to prevent score being counted if clicked multiple times before switching
-    private boolean gameRunning = false; // boolean to keep track is game is still running
+    /*
+     * Dirty rectangles, used in timer mode. When the circles change we only repaint where the old circles were
+     * and where the new ones are, instead of the whole panel. Each rectangle is painted with paintImmediately(),
+     * because repaint(x, y, w, h) would have the RepaintManager merge them all into one rectangle covering
+     * everything in between. These are only used on the EDT.
+     */
+    private static final int MAX_DIRTY_RECTS = 64; // with more changes than this the whole panel is repainted
+    private final int[] dirtyX = new int[MAX_DIRTY_RECTS];
+    private final int[] dirtyY = new int[MAX_DIRTY_RECTS];
+    private final int[] dirtyWidth = new int[MAX_DIRTY_RECTS];
+    private final int[] dirtyHeight = new int[MAX_DIRTY_RECTS];
+    private int dirtyCount = 0;
+    private boolean dirtyOverflow = false; // too many rectangles, so repaint everything
+    private boolean flushPending = false; // whether flushDirty() is already queued on the EDT
+    private boolean flushing = false; // true while flushDirty() paints, so the paints count as one frame
+
+    // Where the circles on the screen are, so they can be erased when the next round replaces them
+    private int[] shownX = new int[0];
+    private int[] shownY = new int[0];
+    private int[] shownSize = new int[0];
+    private int shownCount = 0;
+
+    // Pixels painted and time spent painting in the current frame, and in the last finished one (for the overlay)
+    private long framePixels = 0;
+    private long framePaintNanos = 0;
+    private long lastFramePixels = 0;
+    private long lastFramePaintNanos = 0;
+    private static final int OVERLAY_WIDTH = 240;
+    private static final int OVERLAY_HEIGHT = 18;
+
+    // In game loop mode the game state is changed from both the loop thread and the EDT, so both hold this lock.
+    // In timer mode everything happens on the EDT and the lock is never contended.
+    private final Object stateLock = new Object();
 
     // Constructor
-    public GamePanel(GameWindow parent, JLabel timerLabel, JLabel missLabel, JLabel accuracyLabel) {
+    public GamePanel(GameWindow parent, HudLabel timerLabel, HudLabel missLabel, HudLabel accuracyLabel,
+                     HudLabel recentAccuracyLabel, HudLabel streakLabel, HudLabel reactionLabel) {
         this.parent = parent;
         this.timerLabel = timerLabel;
         this.missLabel = missLabel;
         this.accuracyLabel = accuracyLabel;
+        this.recentAccuracyLabel = recentAccuracyLabel;
+        this.streakLabel = streakLabel;
+        this.reactionLabel = reactionLabel;
+
+        this.engine = new GameEngine(GameConfig.SEED, GameConfig.NUM_CIRCLES);
+        this.engine.setListener(new EngineListener());
+        this.engine.setPrefetch(true); // round switches then happen on the EDT without any placement work
+        if (GameConfig.MOVING_SPEED > 0) {
+            CircleMotion motion = new CircleMotion(CircleMotion.kernel(GameConfig.VECTOR), WIDTH, HEIGHT,
+                    GameConfig.MOVING_SPEED);
+            this.engine.setMotion(motion);
+            System.out.println("Moving targets at " + GameConfig.MOVING_SPEED + " px/s, moved by the "
+                    + motion.getKernel().name() + " kernel");
+        }
+
+        if (GameConfig.RECORD_FILE != null) {
+            try {
+                recorder = new InputRecorder(Paths.get(GameConfig.RECORD_FILE));
+            } catch (IOException e) {
+                System.err.println("Could not open " + GameConfig.RECORD_FILE + " for recording: " + e.getMessage());
+            }
+        }
+
+        if (GameConfig.TELEMETRY_FILE != null) {
+            try {
+                telemetry = new TelemetryWriter(Paths.get(GameConfig.TELEMETRY_FILE));
+            } catch (IOException e) {
+                System.err.println("Could not open " + GameConfig.TELEMETRY_FILE + " for telemetry: " + e.getMessage());
+            }
+        }
+
+        if (GameConfig.LIVE_PORT != null) {
+            liveStats = new LiveStats();
+            try {
+                liveServer = new LiveStatsServer(GameConfig.LIVE_PORT, liveStats);
+                System.out.println("Live stats on http://127.0.0.1:" + liveServer.getPort() + "/snapshot");
+            } catch (IOException e) {
+                System.err.println("Could not start the live stats endpoint: " + e.getMessage());
+                liveStats = null;
+            }
+        }
+
+        try {
+            scoreStore = ScoreStore.open(Paths.get(GameConfig.SCORE_DIR));
+        } catch (IOException e) {
+            System.err.println("Could not open the score store in " + GameConfig.SCORE_DIR + ": " + e.getMessage());
+        }
+
+        EdtWatchdog.start(GameConfig.STALL_MILLIS);
 
         this.setPreferredSize(new Dimension(WIDTH, HEIGHT));
         this.setBackground(Color.WHITE);
 
-        this.addMouseListener(new ClickListener()); // adding mouselistener
+        if (GameConfig.GAME_LOOP) {
+            // The canvas covers the whole panel, so it gets the mouse clicks instead of the panel
+            Canvas canvas = new Canvas();
+            canvas.setBackground(Color.WHITE);
+            canvas.setIgnoreRepaint(true);
+            canvas.addMouseListener(new ClickListener());
+            this.setLayout(new BorderLayout());
+            this.add(canvas, BorderLayout.CENTER);
+            gameLoop = new GameLoop(canvas, new LoopListener(), timingStats);
+        } else {
+            this.addMouseListener(new ClickListener()); // adding mouselistener
+        }
     }
     
 
@@ -51,21 +202,20 @@ class GamePanel extends JPanel {
     public void startGame() {
         // if game is starting/restarting, (by pressing the start game button), any existing timers will stop.
         if (circleTimer != null){
-            circleTimer.stop();
+            circleTimer.cancel();
         }
 
         if (gameTimer != null){
-            gameTimer.stop();
+            gameTimer.cancel();
+        }
+
+        if (frameTimer != null) {
+            frameTimer.cancel();
+            frameTimer = null;
         }
 
-        // all below resets all stats for when a new game is started:
-        gameRunning = true;
-        timeLeft = 20;
-        misses = 0;
-        totalAttempts = 0;
-        timerLabel.setText("Time: " + timeLeft);
-        missLabel.setText("Misses: 0");
-        accuracyLabel.setText("Accuracy: 100%");
+        timingStats.reset();
+        gameReactions.reset();
 
         /*
          * The circle Timer runs based on the selected difficulty time, and essentially checks if user clicks outside the red circle, and increases miss count if so.
@@ -74,22 +224,39 @@ class GamePanel extends JPanel {
          */
         
         // Get difficulty from GameWindow
-        String difficulty = parent.getSelectedDifficulty();
-        int delay;
+        int difficulty = GameEngine.difficultyIndex(parent.getSelectedDifficulty());
+        int delay = GameEngine.roundDelayMillis(difficulty);
+
+        // resets all stats and spawns the first circles
+        synchronized (stateLock) {
+            long now = System.nanoTime();
+            long seed = seedSource.nextLong();
+            engine.setSeed(seed);
+            sessionStats.reset();
+            if (recorder != null) {
+                recorder.sessionStarted(difficulty, GameConfig.NUM_CIRCLES, seed, now);
+            }
+            engine.start(difficulty, now);
+        }
 
-        if (difficulty.equals("Easy")) {
-            delay = 2500;
-        } else if (difficulty.equals("Hard")) {
-            delay = 1000;
-        } else {
-            delay = 1500; // Medium or default
+        // In game loop mode the loop thread counts ticks instead of using the two timers below
+        if (gameLoop != null) {
+            synchronized (stateLock) {
+                roundTicks = GameLoop.millisToTicks(delay);
+                roundTicksLeft = roundTicks;
+                secondTicksLeft = GameLoop.TICKS_PER_SECOND;
+            }
+            gameLoop.start();
+            return;
         }
 
-        
-        // The Circle Timer will run its actionPerformed method repeatedly based on the level of difficulty chosen (explained later into the code)
-        circleTimer = new Timer(delay, new CircleTimerListener());
-        circleTimer.setRepeats(true);
-        circleTimer.start();
+        circleDelay = delay;
+        circleTimerFires = 0;
+        gameTimerFires = 0;
+        timersStartNanos = System.nanoTime();
+
+        // The Circle Timer will run its run method repeatedly based on the level of difficulty chosen (explained later into the code)
+        circleTimer = scheduler.scheduleAtFixedRate(new CircleTimerListener(), delay);
 
         /*
          * The gameTimer on the otherhand continuously decreases the time that is left, by continuously decreasing the
@@ -97,28 +264,157 @@ class GamePanel extends JPanel {
          * This timer as well ends the game once the timer reaches 0.
          */
 
-        gameTimer = new Timer(1000, new GameTimerListener());
-        gameTimer.setRepeats(true);
-        gameTimer.start();
+        gameTimer = scheduler.scheduleAtFixedRate(new GameTimerListener(), 1000);
 
-        GamePanel.this.spawnCircles();
-        GamePanel.this.repaint();
+        // Moving circles have to be moved and drawn again every frame, not just when a round changes
+        if (engine.getMotion() != null) {
+            frameTimer = scheduler.scheduleAtFixedRate(new FrameTimerListener(), FRAME_MILLIS);
+        }
     }
     
     /*
-     * This method essentially updates the misses and accuracy labels.
-     * This method is called every time a user clicks, a circle is missed, or a new attempt is registered
+     * Asks for the stats labels to be refreshed. This is called every time the score, misses or time change,
+     * from the EDT or the game loop thread, but the labels are refreshed at most once every FRAME_MILLIS:
+     * if the last refresh was longer ago than that, on the EDT's next turn (so every change made by the
+     * current event is shown together), otherwise when the frame is up.
      */
-    private void updateStats() {
-        missLabel.setText("Misses: " + misses);
-        int score = parent.getScore();
-        int accuracy;
-        if (totalAttempts > 0) {
-            accuracy = (int) ((score * 100.0f) / totalAttempts);
+    private void requestHudUpdate() {
+        hudChanges.incrementAndGet();
+        if (!hudPending.compareAndSet(false, true)) {
+            return; // a refresh is already queued, and will show this change too
+        }
+        long now = System.nanoTime();
+        hudRequestedNanos = now;
+        long waitMillis = FRAME_MILLIS - (now - lastHudRefreshNanos) / 1_000_000;
+        if (waitMillis <= 0) {
+            SwingUtilities.invokeLater(hudRefresh);
         } else {
-            accuracy = 100;
+            scheduler.schedule(hudRefresh, waitMillis);
         }
-        accuracyLabel.setText("Accuracy: " + accuracy + "%");
+    }
+
+    // Lets spectators see the change (see LiveStats). Called with stateLock held, and only stores one reference.
+    private void publishLiveStats() {
+        if (liveStats != null) {
+            liveStats.publish(engine, sessionStats);
+        }
+    }
+
+    /*
+     * Moving circles change the layout every frame, or every tick in game loop mode. Spectators get a copy at most
+     * once per FRAME_MILLIS, so a game with many circles doesn't spend its ticks copying them. Called with stateLock held.
+     */
+    private void movedLiveStats() {
+        if (liveStats == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (now - lastLiveLayoutNanos >= FRAME_MILLIS * 1_000_000L) {
+            lastLiveLayoutNanos = now;
+            liveStats.layoutChanged(engine.getCircles(), engine.getRoundStartNanos());
+            liveStats.publish(engine, sessionStats);
+        }
+    }
+
+    private void runOnEdt(Runnable r) {
+        if (SwingUtilities.isEventDispatchThread()) {
+            r.run();
+        } else {
+            SwingUtilities.invokeLater(r);
+        }
+    }
+
+    /*
+     * Marks where the old circles were and where the new ones are as dirty, and queues flushDirty() to paint them.
+     * Several changes in one event (e.g. a hit that ends the game) are painted together.
+     */
+    private void markCirclesDirty() {
+        for (int i = 0; i < shownCount; i++) {
+            addDirty(shownX[i], shownY[i], shownSize[i], shownSize[i]);
+        }
+
+        CircleStore circles = engine.getCircles();
+        shownCount = circles.count();
+        if (shownX.length < shownCount) {
+            shownX = new int[shownCount];
+            shownY = new int[shownCount];
+            shownSize = new int[shownCount];
+        }
+        for (int i = 0; i < shownCount; i++) {
+            shownX[i] = circles.getX(i);
+            shownY[i] = circles.getY(i);
+            shownSize[i] = circles.getSize(i);
+            addDirty(shownX[i], shownY[i], shownSize[i], shownSize[i]);
+        }
+
+        if (GameConfig.PAINT_STATS) {
+            addDirty(0, 0, OVERLAY_WIDTH, OVERLAY_HEIGHT);
+        }
+
+        if (!flushPending) {
+            flushPending = true;
+            SwingUtilities.invokeLater(new Runnable() {
+                public void run() {
+                    flushDirty();
+                }
+            });
+        }
+    }
+
+    // Adds a rectangle to the dirty list, merging it into one it overlaps with
+    private void addDirty(int x, int y, int width, int height) {
+        if (dirtyOverflow) {
+            return;
+        }
+        for (int i = 0; i < dirtyCount; i++) {
+            if (x < dirtyX[i] + dirtyWidth[i] && dirtyX[i] < x + width && y < dirtyY[i] + dirtyHeight[i] && dirtyY[i] < y + height) {
+                int right = Math.max(x + width, dirtyX[i] + dirtyWidth[i]);
+                int bottom = Math.max(y + height, dirtyY[i] + dirtyHeight[i]);
+                dirtyX[i] = Math.min(x, dirtyX[i]);
+                dirtyY[i] = Math.min(y, dirtyY[i]);
+                dirtyWidth[i] = right - dirtyX[i];
+                dirtyHeight[i] = bottom - dirtyY[i];
+                return;
+            }
+        }
+        if (dirtyCount == MAX_DIRTY_RECTS) {
+            dirtyOverflow = true;
+            return;
+        }
+        dirtyX[dirtyCount] = x;
+        dirtyY[dirtyCount] = y;
+        dirtyWidth[dirtyCount] = width;
+        dirtyHeight[dirtyCount] = height;
+        dirtyCount++;
+    }
+
+    // Paints every dirty rectangle straight away, as one frame
+    private void flushDirty() {
+        flushPending = false;
+        if (dirtyOverflow) {
+            repaint(); // Swing paints the whole panel, and paintComponent counts it as a frame
+        } else if (dirtyCount > 0) {
+            flushing = true;
+            for (int i = 0; i < dirtyCount; i++) {
+                paintImmediately(dirtyX[i], dirtyY[i], dirtyWidth[i], dirtyHeight[i]);
+            }
+            flushing = false;
+            finishFrame();
+        }
+        dirtyCount = 0;
+        dirtyOverflow = false;
+    }
+
+    // Called once everything in a frame has been painted
+    private void finishFrame() {
+        synchronized (stateLock) {
+            roundPresented();
+        }
+        timingStats.recordPaint(framePixels, framePaintNanos);
+        lastFramePixels = framePixels;
+        lastFramePaintNanos = framePaintNanos;
+        framePixels = 0;
+        framePaintNanos = 0;
     }
     
     /*
@@ -126,49 +422,290 @@ class GamePanel extends JPanel {
      * stops the game, and shows final statistics/score.
      */
     private void endGame() {
-        gameRunning = false;
+        GameEvents.EndGame event = new GameEvents.EndGame();
+        event.begin();
+
         if (circleTimer != null) {
-            circleTimer.stop();
+            circleTimer.cancel();
         }
 
         if (gameTimer != null){
-            gameTimer.stop();
+            gameTimer.cancel();
         }
 
-        circles.clear();
-        repaint();
+        if (frameTimer != null) {
+            frameTimer.cancel();
+            frameTimer = null;
+        }
 
+        // The loop only has work to do while a game is on. startGame() starts it again.
+        if (gameLoop != null) {
+            gameLoop.stop();
+        }
 
-        JOptionPane.showMessageDialog(this, "Time's up! Final Score: " + parent.getScore() +
-                " | Misses: " + misses +
-                " | Accuracy: " + accuracyLabel.getText().replace("Accuracy: ", ""));
+        if (recorder != null) {
+            recorder.sessionEnded(engine.getScore(), engine.getMisses(), engine.getAccuracy(), System.nanoTime());
+            recorder.flush();
+        }
 
-    }
+        // Each game ends its own block, so nothing is lost if the window is closed before the next one
+        if (telemetry != null) {
+            try {
+                telemetry.flush();
+            } catch (IOException e) {
+                System.err.println("Could not write telemetry: " + e.getMessage());
+                telemetry = null;
+            }
+        }
 
-    
-    //Method for spawning in new circles
-    private void spawnCircles() {
-        circles.clear(); // clears arraylist
+        System.out.println(timingStats.summary((gameLoop != null ? "game loop" : "swing timer")
+                + (GameConfig.INPUT_ON_PRESS ? ", press" : ", click")));
+
+        ReactionTimeStats stats = reactionStats[engine.getDifficulty()];
+        String message = "Time's up! Final Score: " + engine.getScore() +
+                " | Misses: " + engine.getMisses() +
+                " | Accuracy: " + engine.getAccuracy() + "%" +
+                " | Best streak: " + sessionStats.getBestStreak() +
+                "\nReaction time (" + stats.getName() + "): " + stats.summary();
+
+        // Save the game on the score writer thread. The high score line in the dialog is filled in once it's saved.
+        final SessionResult result = SessionResult.of(GameConfig.PLAYER, engine, gameReactions.getHistogram(), System.currentTimeMillis());
+        final CompletableFuture<String> highScore;
+        if (scoreStore != null) {
+            final ScoreStore store = scoreStore;
+            final String difficultyName = stats.getName();
+            highScore = CompletableFuture.supplyAsync(new Supplier<String>() {
+                public String get() {
+                    try {
+                        store.append(result);
+                        SessionResult best = store.topScores(result.difficulty, 1).get(0);
+                        return "High score (" + difficultyName + "): " + best.score + " by " + best.player;
+                    } catch (IOException | RuntimeException e) {
+                        System.err.println("Could not save the game: " + e);
+                        return "Could not save the game";
+                    }
+                }
+            }, scoreWriter);
+        } else {
+            highScore = null;
+        }
 
-        // Randomly chooses an index value, from 0 to numCircles-1 to be chosen to be the target circle
-        int targetIndex = rand.nextInt(numCircles);
+        // Send it to the leaderboard server too, if there is one. This is done on its own thread so a slow
+        // or missing server can't hold up the game.
+        if (GameConfig.LEADERBOARD_HOST != null) {
+            Thread submitter = new Thread(new Runnable() {
+                public void run() {
+                    try (LeaderboardClient client = new LeaderboardClient(GameConfig.LEADERBOARD_HOST, GameConfig.LEADERBOARD_PORT)) {
+                        client.submit(result);
+                    } catch (IOException e) {
+                        System.err.println("Could not send the game to the leaderboard server: " + e.getMessage());
+                    }
+                }
+            }, "leaderboard-submit");
+            submitter.setDaemon(true);
+            submitter.start();
+        }
 
-        // Loops through each circle and chooses random coordinates to plot onto panel.
-        // We substract the size of the circle to ensure that circle is plotted within the boundaries of the frame
-        for (int i = 0; i < numCircles; i++) {
-            int x = rand.nextInt(WIDTH - CIRCLE_SIZE);
-            int y = rand.nextInt(HEIGHT - CIRCLE_SIZE);
+        event.end(); // the dialog below waits for the player, so it isn't counted
+        if (event.shouldCommit()) {
+            event.score = engine.getScore();
+            event.misses = engine.getMisses();
+            event.accuracy = engine.getAccuracy();
+            event.commit();
+        }
 
-            boolean isTarget = (i == targetIndex); // Selects a circle at random index 
-            circles.add(new Circle(x, y, CIRCLE_SIZE, isTarget)); // adds circle to arraylist
+        final String finalMessage = message;
+        runOnEdt(new Runnable() {
+            public void run() {
+                if (highScore == null) {
+                    JOptionPane.showMessageDialog(GamePanel.this, finalMessage);
+                    return;
+                }
+                final JLabel highScoreLabel = new JLabel("Saving the game...");
+                // whenComplete rather than thenAccept, so the label doesn't keep saying "Saving" if the save failed
+                highScore.whenComplete(new BiConsumer<String, Throwable>() {
+                    public void accept(String text, Throwable error) {
+                        final String shown = error != null ? "Could not save the game" : text;
+                        SwingUtilities.invokeLater(new Runnable() {
+                            public void run() {
+                                highScoreLabel.setText(shown);
+                            }
+                        });
+                    }
+                });
+                JOptionPane.showMessageDialog(GamePanel.this, new Object[] { finalMessage, highScoreLabel });
+            }
+        });
+    }
+
+    /*
+     * Shuts down what the panel started outside Swing: the game loop, the live stats endpoint and its subscribers,
+     * and the score writer, which gets a moment to finish saving the last game. Called when the window closes.
+     */
+    public void close() {
+        if (gameLoop != null) {
+            gameLoop.stop();
+        }
+        if (liveServer != null) {
+            liveServer.close();
+            liveServer = null;
+        }
+        if (liveStats != null) {
+            liveStats.close();
+        }
+        scoreWriter.shutdown();
+        try {
+            scoreWriter.awaitTermination(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
-    // Draws every circle in arraylist
+    /*
+     * Clears and draws only the clip, which is one dirty rectangle when called from flushDirty(),
+     * skipping every circle outside it.
+     */
     protected void paintComponent(Graphics g) {
+        GameEvents.Paint event = new GameEvents.Paint();
+        event.begin();
+        long start = System.nanoTime();
         super.paintComponent(g);
-        for (Circle c : circles) {
-            c.draw(g);
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        }
+        synchronized (stateLock) {
+            engine.getCircles().drawAll(g, clip.x, clip.y, clip.width, clip.height);
+        }
+        if (GameConfig.PAINT_STATS && clip.intersects(0, 0, OVERLAY_WIDTH, OVERLAY_HEIGHT)) {
+            drawPaintStats(g, lastFramePixels, lastFramePaintNanos);
+        }
+        framePixels += (long) clip.width * clip.height;
+        framePaintNanos += System.nanoTime() - start;
+        event.end();
+        if (event.shouldCommit()) {
+            event.pixels = (long) clip.width * clip.height;
+            event.commit();
+        }
+        if (!flushing) {
+            finishFrame(); // a paint Swing asked for itself, e.g. when the window was uncovered
+        }
+    }
+
+    // Shows the pixels painted and the paint time of the last frame in the top left corner
+    private void drawPaintStats(Graphics g, long pixels, long nanos) {
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, OVERLAY_WIDTH, OVERLAY_HEIGHT);
+        g.setColor(Color.BLUE);
+        g.drawString("last frame: " + pixels + " px, " + (nanos / 1000) + " us", 4, OVERLAY_HEIGHT - 5);
+    }
+
+    // Records how long a new round's circles took to reach the screen, once they have been drawn
+    private void roundPresented() {
+        if (!roundShown) {
+            timingStats.recordPresentLatency(System.nanoTime() - engine.getRoundStartNanos());
+            roundShown = true;
+        }
+    }
+
+    /*
+     * The engine tells us about every change through this listener, and we update the labels
+     * and the screen to match.
+     */
+    private class EngineListener implements GameEngine.Listener {
+        public void circlesChanged() {
+            if (recorder != null && engine.isRunning()) {
+                recorder.spawned(engine.getCircles(), engine.getRoundStartNanos());
+            }
+            roundShown = false;
+            if (gameLoop == null) {
+                markCirclesDirty();
+            }
+            if (liveStats != null) {
+                liveStats.layoutChanged(engine.getCircles(), engine.getRoundStartNanos());
+                liveStats.publish(engine, sessionStats);
+            }
+        }
+
+        public void scoreChanged() {
+            requestHudUpdate();
+            publishLiveStats();
+        }
+
+        public void statsChanged() {
+            requestHudUpdate();
+            publishLiveStats();
+        }
+
+        public void timeChanged() {
+            requestHudUpdate();
+            publishLiveStats();
+        }
+
+        public void gameEnded() {
+            publishLiveStats();
+            endGame();
+        }
+
+        public void attemptMade(int kind, int x, int y, int targetX, int targetY, long elapsedNanos) {
+            sessionStats.record(kind, elapsedNanos);
+            if (telemetry != null) {
+                try {
+                    telemetry.record(System.currentTimeMillis(), engine.getDifficulty(), kind, x, y, targetX, targetY,
+                            elapsedNanos / 1000);
+                } catch (IOException e) {
+                    System.err.println("Could not write telemetry: " + e.getMessage());
+                    telemetry = null;
+                }
+            }
+        }
+    }
+
+    /*
+     * Copies the stats under the lock and shows them. The labels only repaint themselves if their number changed,
+     * and never change size, so nothing has to be laid out again. Runs on the EDT.
+     */
+    private class HudRefresh implements Runnable {
+        public void run() {
+            GameEvents.LabelUpdate event = new GameEvents.LabelUpdate();
+            event.begin();
+            hudPending.set(false);
+            int changes = hudChanges.getAndSet(0);
+            long requested = hudRequestedNanos;
+            int score;
+            int timeLeft;
+            int misses;
+            int accuracy;
+            int recentAccuracy;
+            int streak;
+            int reaction;
+            synchronized (stateLock) {
+                score = sessionStats.getScore();
+                timeLeft = engine.getTimeLeft();
+                misses = sessionStats.getMisses();
+                accuracy = sessionStats.getAccuracy();
+                recentAccuracy = sessionStats.getRollingAccuracy();
+                streak = sessionStats.getStreak();
+                reaction = sessionStats.getReactionEwmaMillis();
+            }
+            lastHudRefreshNanos = System.nanoTime();
+
+            parent.setScore(score); // GameWindow shows the score, so it is kept in step with the engine's
+            timerLabel.setValue(timeLeft);
+            missLabel.setValue(misses);
+            accuracyLabel.setValue(accuracy);
+            recentAccuracyLabel.setValue(recentAccuracy);
+            streakLabel.setValue(streak);
+            reactionLabel.setValue(reaction);
+
+            event.end();
+            if (event.shouldCommit()) {
+                event.text = "Score: " + score + " | Time: " + timeLeft + " | Misses: " + misses
+                        + " | Accuracy: " + accuracy + "%";
+                event.changes = changes;
+                event.handoffDelay = System.nanoTime() - requested;
+                event.commit();
+            }
         }
     }
 
@@ -177,75 +714,190 @@ class GamePanel extends JPanel {
      * check if the user had clicked during the round of the spawned circles. If user hadn't clicked during that round and
      * while the game was running,it will update stats accordingly, as well as repaint the screen.
      */
-    private class CircleTimerListener implements ActionListener{
-        public void actionPerformed(ActionEvent e){
-            if (!recentlyClicked && gameRunning) {
-                misses++;
-                totalAttempts++;
-                updateStats();
-                spawnCircles();
+    private class CircleTimerListener implements Runnable {
+        public void run() {
+            long now = System.nanoTime();
+            circleTimerFires++;
+            long drift = now - (timersStartNanos + circleTimerFires * circleDelay * 1_000_000L);
+            timingStats.recordDrift(drift);
+            recordTimerFired("round", drift);
+            synchronized (stateLock) {
+                if (recorder != null) {
+                    recorder.roundTimer(now);
+                }
+                engine.roundElapsed(now);
+            }
+        }
+    }
+
+    // Moves the circles in the moving-target mode, and repaints the whole panel if they moved
+    private class FrameTimerListener implements Runnable {
+        public void run() {
+            boolean moved;
+            synchronized (stateLock) {
+                moved = engine.advance(System.nanoTime());
+                if (moved) {
+                    movedLiveStats();
+                }
+            }
+            if (moved) {
                 repaint();
             }
-            recentlyClicked = false;
         }
     }
 
     // GameTimer that was explained above
     // This timer is soley responsible for ending the game once the timer hits 0.
-    private class GameTimerListener implements ActionListener{
-        public void actionPerformed(ActionEvent e){
-            timeLeft--;
-            timerLabel.setText("Time: " + timeLeft);
-            if (timeLeft <= 0) {
-                endGame();
+    private class GameTimerListener implements Runnable {
+        public void run() {
+            long now = System.nanoTime();
+            gameTimerFires++;
+            long drift = now - (timersStartNanos + gameTimerFires * 1_000_000_000L);
+            timingStats.recordDrift(drift);
+            recordTimerFired("countdown", drift);
+            synchronized (stateLock) {
+                if (recorder != null) {
+                    recorder.secondTimer(now);
+                }
+                engine.secondElapsed();
+            }
+        }
+    }
+
+    private static void recordTimerFired(String timer, long drift) {
+        GameEvents.TimerFired event = new GameEvents.TimerFired();
+        if (event.shouldCommit()) {
+            event.timer = timer;
+            event.drift = drift;
+            event.commit();
+        }
+    }
+
+    /*
+     * Used in game loop mode. Instead of the two timers, the loop calls update() 60 times a second
+     * and we count ticks down to the end of each round and each second.
+     * render() draws a whole frame, since the canvas is not painted by Swing.
+     */
+    private class LoopListener implements GameLoop.Game {
+        public void update() {
+            synchronized (stateLock) {
+                if (!engine.isRunning()) {
+                    return;
+                }
+                if (engine.advance(System.nanoTime())) { // moving circles move every tick; render() draws every circle anyway
+                    movedLiveStats();
+                }
+                roundTicksLeft--;
+                if (roundTicksLeft <= 0) {
+                    roundTicksLeft = roundTicks;
+                    long now = System.nanoTime();
+                    if (recorder != null) {
+                        recorder.roundTimer(now);
+                    }
+                    engine.roundElapsed(now);
+                }
+                secondTicksLeft--;
+                if (secondTicksLeft <= 0) {
+                    secondTicksLeft = GameLoop.TICKS_PER_SECOND;
+                    if (recorder != null) {
+                        recorder.secondTimer(System.nanoTime());
+                    }
+                    engine.secondElapsed();
+                }
+            }
+        }
+
+        // Page flipping shows a whole new buffer each frame, so here everything is drawn every time
+        public void render(Graphics2D g, int width, int height) {
+            GameEvents.Paint event = new GameEvents.Paint();
+            event.begin();
+            long start = System.nanoTime();
+            g.setColor(getBackground());
+            g.fillRect(0, 0, width, height);
+            synchronized (stateLock) {
+                engine.getCircles().drawAll(g);
+                roundPresented();
+            }
+            if (GameConfig.PAINT_STATS) {
+                drawPaintStats(g, lastFramePixels, lastFramePaintNanos);
+            }
+            lastFramePixels = (long) width * height;
+            lastFramePaintNanos = System.nanoTime() - start;
+            timingStats.recordPaint(lastFramePixels, lastFramePaintNanos);
+            event.end();
+            if (event.shouldCommit()) {
+                event.pixels = lastFramePixels;
+                event.gameLoop = true;
+                event.commit();
             }
         }
     }
 
     // The ClickListener implements the MouseListener, and is essential for the interactive portion of this program
+    /*
+     * In press mode (the default, see GameConfig.INPUT_ON_PRESS) a hit counts as soon as the button goes down.
+     * In click mode it waits for mouseClicked, which only comes after the button is released, and not at all
+     * if the mouse moved in between. Either way we time how long presses take to become clicks, and count the
+     * presses that never became one, so the two modes can be compared at the end of the game.
+     */
     public class ClickListener implements MouseListener {
-        
-        public void mouseClicked(MouseEvent e) { 
-            // Does not register click if game is not running
-            if (!gameRunning) { 
-                return;
+        private long lastPressWhen = -1; // getWhen() of the last press that hasn't turned into a click yet
+
+        public void mousePressed(MouseEvent e) {
+            timingStats.recordPress();
+            lastPressWhen = e.getWhen();
+            if (GameConfig.INPUT_ON_PRESS) {
+                handle(e);
             }
+        }
 
-            // Retrieves coordinates where user clicked
-            int x = e.getX();
-            int y = e.getY();
-
-            boolean hit = false;
-
-            // Loops through each circle, and checks if coordinates match with target circle.
-            // Statistics will update accordingly, regardless of whether user hit or miss target (total attempts and misses)
-            // If user does hit target, the score will update by 1, and will then spawn a new set of circles.
-            for (Circle c : circles) {
-                if (c.containsPoint(x, y)) {
-                    hit = true;
-                    totalAttempts++;
-                    if (c.isTarget()) {
-                        parent.updateScore();
-                        recentlyClicked = true;
-                        spawnCircles();
-                        repaint();
-                    } else {
-                        misses++;
-                    }
-                    updateStats();
-                    break;
-                }
+        public void mouseClicked(MouseEvent e) {
+            if (lastPressWhen >= 0) {
+                timingStats.recordClick((e.getWhen() - lastPressWhen) * 1_000_000L);
+                lastPressWhen = -1;
+            }
+            if (!GameConfig.INPUT_ON_PRESS) {
+                handle(e);
             }
-            if (!hit) {
-                misses++;
-                totalAttempts++;
-                updateStats();
+        }
+
+        private void handle(MouseEvent e) {
+            GameEvents.Click event = new GameEvents.Click();
+            event.begin();
+
+            // getWhen() is the time the click actually happened. The event may have waited in the
+            // EDT queue for a while before reaching us, so we take that delay off the current nanoTime.
+            long now = System.nanoTime();
+            long queueDelayMillis = Math.max(0, System.currentTimeMillis() - e.getWhen());
+            long clickNanos = now - queueDelayMillis * 1_000_000L;
+
+            // The engine finds the top-most circle under the click and updates the score and stats. If the circles
+            // changed between the click and now, it judges the click against the ones that were there at clickNanos.
+            // If user does hit target, the reaction time is recorded for the current difficulty.
+            synchronized (stateLock) {
+                if (recorder != null) {
+                    recorder.click(e.getX(), e.getY(), e.getButton(), now, clickNanos, e.getWhen());
+                }
+                int outcome = engine.click(e.getX(), e.getY(), clickNanos, now);
+                if (outcome == GameEngine.HIT) {
+                    reactionStats[engine.getDifficulty()].record(engine.getLastReactionNanos());
+                    gameReactions.record(engine.getLastReactionNanos());
+                }
+
+                event.end();
+                if (event.shouldCommit()) {
+                    event.x = e.getX();
+                    event.y = e.getY();
+                    event.outcome = outcome == GameEngine.HIT ? "HIT" : outcome == GameEngine.MISS ? "MISS" : "IGNORED";
+                    event.queueDelay = queueDelayMillis;
+                    event.reaction = outcome == GameEngine.HIT ? engine.getLastReactionNanos() : 0;
+                    event.commit();
+                }
             }
         }
 
-        public void mousePressed(MouseEvent e) {}
         public void mouseReleased(MouseEvent e) {}
         public void mouseEntered(MouseEvent e) {}
         public void mouseExited(MouseEvent e) {}
     }
-}
\ No newline at end of file
+}
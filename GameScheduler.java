@@ -0,0 +1,23 @@
+/*
+ * Runs the game's timers: the round timer and the one-second countdown.
+ * GamePanel is written against this instead of javax.swing.Timer, so the same sessions can be run by
+ * SwingScheduler on the desktop (tasks run on the EDT) or by a TimingWheelScheduler on a server, where a few
+ * threads run the timers of many thousands of sessions.
+ *
+ * Fixed-rate tasks are scheduled against when they were due, not when they last ran, so lateness does not add up
+ * over a game. If a task falls more than a whole period behind, the runs it missed are dropped rather than run
+ * back to back (the same as a coalescing Swing Timer).
+ */
+public interface GameScheduler {
+    // A scheduled task, which can be cancelled
+    interface Task {
+        // Stops the task. Does nothing if it has already run (one-shot tasks) or was cancelled before.
+        void cancel();
+    }
+
+    // Runs task once, delayMillis from now
+    Task schedule(Runnable task, long delayMillis);
+
+    // Runs task every periodMillis, starting periodMillis from now
+    Task scheduleAtFixedRate(Runnable task, long periodMillis);
+}
@@ -8,10 +8,13 @@ public class GameWindow {
     private JPanel mainPanel;
 
     // Labels for game stats
-    private JLabel scoreLabel;
-    private JLabel timerLabel;
-    private JLabel missLabel;
-    private JLabel accuracyLabel;
+    private HudLabel scoreLabel;
+    private HudLabel timerLabel;
+    private HudLabel missLabel;
+    private HudLabel accuracyLabel;
+    private HudLabel recentAccuracyLabel;
+    private HudLabel streakLabel;
+    private HudLabel reactionLabel;
 
     // The start button which will start the game
     private JButton startButton;
@@ -34,6 +37,13 @@ public class GameWindow {
         // Creating the Game window, as well as setting a title and size
         frame = new JFrame("Click the Circle: Reflex Rush");
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE); // allows for program to exit if user closes it
+        frame.addWindowListener(new WindowAdapter() {
+            public void windowClosing(WindowEvent e) {
+                if (gamePanel != null) {
+                    gamePanel.close(); // runs before the exit, so the last game's save can finish
+                }
+            }
+        });
         frame.setSize(800, 550);
 
         // CardLayout allows for my program to display different panels one at a time. 
@@ -44,11 +54,34 @@ public class GameWindow {
         // Welcome Panel
         welcomePanel = new WelcomePanel(this);
 
+        // Add the welcome panel to the card layout. The game screen is only built once "Let's Play!" is pressed
+        // (see createGameScreen), so the window can show up sooner.
+        mainPanel.add(welcomePanel, "Welcome");
+
+        // Adding the panel to the frame
+        frame.add(mainPanel);
+        frame.setLocationRelativeTo(null);
+        frame.setVisible(true);
+
+        // Display the welcome screen first
+        // Later in the code, we will be able to switch to the game screen through the Start button listener.
+        cardLayout.show(mainPanel, "Welcome");
+    }
+
+    /*
+     * Builds the game screen: the stats labels, the start and difficulty buttons, and the GamePanel (which also
+     * opens the score store and everything else the game needs). Only done the first time it is shown.
+     */
+    private void createGameScreen() {
         // Game Panel Setup
-        scoreLabel = new JLabel("Score: 0");
-        timerLabel = new JLabel("Time: 20");
-        missLabel = new JLabel("Misses: 0");
-        accuracyLabel = new JLabel("Accuracy: 100%");
+        // Each label is as wide as the widest number it is expected to show, so the top panel never has to be laid out again
+        scoreLabel = new HudLabel("Score: ", "", 999, 0);
+        timerLabel = new HudLabel("Time: ", "", 20, 20);
+        missLabel = new HudLabel("Misses: ", "", 999, 0);
+        accuracyLabel = new HudLabel("Accuracy: ", "%", 100, 100);
+        recentAccuracyLabel = new HudLabel("Last " + SessionStats.ROLLING_ATTEMPTS + ": ", "%", 100, 100);
+        streakLabel = new HudLabel("Streak: ", "", 999, 0);
+        reactionLabel = new HudLabel("Reaction: ", " ms", 9999, 0);
 
         startButton = new JButton("Start Game");
         startButton.addActionListener(new StartButtonListener()); //adding the actionlistener to the button
@@ -59,10 +92,13 @@ public class GameWindow {
         topPanel.add(timerLabel);
         topPanel.add(missLabel);
         topPanel.add(accuracyLabel);
+        topPanel.add(recentAccuracyLabel);
+        topPanel.add(streakLabel);
+        topPanel.add(reactionLabel);
         topPanel.add(startButton);
 
         // creating our GamePanel
-        gamePanel = new GamePanel(this, timerLabel, missLabel, accuracyLabel);
+        gamePanel = new GamePanel(this, timerLabel, missLabel, accuracyLabel, recentAccuracyLabel, streakLabel, reactionLabel);
 
         // The gameContainer JPanel is our main gameplay screen, which holds the topPanel and gamePanel
         // Using a BorderLayout, I adjust the panels accordingly for a clean display.
@@ -70,19 +106,8 @@ public class GameWindow {
         gameContainer.add(topPanel, BorderLayout.NORTH);
         gameContainer.add(gamePanel, BorderLayout.CENTER);
 
-        // Add both panels to the card layout
-        mainPanel.add(welcomePanel, "Welcome");
         mainPanel.add(gameContainer, "Game");
 
-        // Adding the panel to the frame
-        frame.add(mainPanel);
-        frame.setLocationRelativeTo(null);
-        frame.setVisible(true);
-
-        // Display the welcome screen first
-        // Later in the code, we will be able to switch to the game screen through the Start button listener.
-        cardLayout.show(mainPanel, "Welcome");
-
         // These buttons are to change the level of difficulty of the game (making circles spawn and reset faster)
         easyBtn = new JButton("Easy");
         mediumBtn = new JButton("Medium");
@@ -123,25 +148,56 @@ public class GameWindow {
         topPanel.add(easyBtn);
         topPanel.add(mediumBtn);
         topPanel.add(hardBtn);
+
+        // Head-to-head mode, only when a match server is configured. It gets its own screen in the card layout,
+        // with the server's messages shown above the play area.
+        if (GameConfig.MATCH_HOST != null) {
+            JLabel matchStatusLabel = new JLabel("Head to head against other players");
+            final MatchPanel matchPanel = new MatchPanel(matchStatusLabel);
+            JPanel matchContainer = new JPanel(new BorderLayout());
+            JPanel matchTopPanel = new JPanel(new FlowLayout());
+            matchTopPanel.add(matchStatusLabel);
+            matchContainer.add(matchTopPanel, BorderLayout.NORTH);
+            matchContainer.add(matchPanel, BorderLayout.CENTER);
+            mainPanel.add(matchContainer, "Match");
+
+            JButton matchBtn = new JButton("Head to Head");
+            matchBtn.addActionListener(new ActionListener() {
+                public void actionPerformed(ActionEvent e) {
+                    cardLayout.show(mainPanel, "Match");
+                    matchPanel.startMatch();
+                }
+            });
+            topPanel.add(matchBtn);
+        }
         
     }
 
     // This method switches the Welcome screen panel to the Game screen panel.
     public void showGameScreen() {
+        if (gamePanel == null) {
+            createGameScreen();
+        }
         cardLayout.show(mainPanel, "Game");
     }
 
     // Update score by incrementing by 1, as well as updating the score label
     public void updateScore() {
         score++;
-        scoreLabel.setText("Score: " + score);
+        scoreLabel.setValue(score);
+    }
+
+    // Sets the score to a given value, as well as updating the score label
+    public void setScore(int newScore) {
+        score = newScore;
+        scoreLabel.setValue(score);
     }
 
     // Resets score back to 0
     // Used for when we start new game
     public void resetScore() {
         score = 0;
-        scoreLabel.setText("Score: 0");
+        scoreLabel.setValue(0);
     }
     
     // Returns score
@@ -0,0 +1,96 @@
+import java.util.ArrayList;
+import java.util.Random;
+
+/*
+ * Compares the cost of finding the clicked circle by checking every circle (the old way)
+ * with looking it up in a CircleGrid, for 5 up to 100,000 circles on a 600x400 panel.
+ *
+ * Run with: java HitTestBenchmark
+ */
+public class HitTestBenchmark {
+    private static final int WIDTH = 600;
+    private static final int HEIGHT = 400;
+    private static final int CIRCLE_SIZE = 50;
+    private static final int CLICKS = 1 << 16; // number of click positions, reused in every pass
+
+    // results are written here so the JIT cannot throw the lookups away
+    static volatile int sink;
+
+    public static void main(String[] args) {
+        int[] counts = { 5, 50, 500, 5_000, 50_000, 100_000 };
+        Random rand = new Random(42);
+
+        int[] clickX = new int[CLICKS];
+        int[] clickY = new int[CLICKS];
+        for (int i = 0; i < CLICKS; i++) {
+            clickX[i] = rand.nextInt(WIDTH);
+            clickY[i] = rand.nextInt(HEIGHT);
+        }
+
+        System.out.printf("%10s %16s %16s %14s%n", "circles", "linear ns/click", "grid ns/click", "grid build us");
+        for (int n : counts) {
+            // the same circles, as Circle objects for the linear scan and in a CircleStore for the grid
+            ArrayList<Circle> circles = new ArrayList<>();
+            CircleStore store = new CircleStore();
+            for (int i = 0; i < n; i++) {
+                int x = rand.nextInt(WIDTH - CIRCLE_SIZE);
+                int y = rand.nextInt(HEIGHT - CIRCLE_SIZE);
+                circles.add(new Circle(x, y, CIRCLE_SIZE, i == 0));
+                store.add(x, y, CIRCLE_SIZE, i == 0);
+            }
+            CircleGrid grid = new CircleGrid(WIDTH, HEIGHT, CIRCLE_SIZE);
+
+            // warm up both paths so the JIT has compiled them
+            for (int i = 0; i < 200; i++) {
+                grid.build(store);
+            }
+            for (int i = 0; i < 5; i++) {
+                linear(circles, clickX, clickY, Math.max(1, CLICKS / n));
+                gridLookup(grid, store, clickX, clickY, CLICKS);
+            }
+
+            long start = System.nanoTime();
+            int builds = 20;
+            for (int i = 0; i < builds; i++) {
+                grid.build(store);
+            }
+            double buildMicros = (System.nanoTime() - start) / 1000.0 / builds;
+
+            // the linear scan gets far slower as n grows, so it is given fewer clicks to keep the run short
+            int linearClicks = Math.max(256, Math.min(CLICKS, (int) (50_000_000L / n)));
+            start = System.nanoTime();
+            sink = linear(circles, clickX, clickY, linearClicks);
+            double linearNs = (double) (System.nanoTime() - start) / linearClicks;
+
+            start = System.nanoTime();
+            sink += gridLookup(grid, store, clickX, clickY, CLICKS);
+            double gridNs = (double) (System.nanoTime() - start) / CLICKS;
+
+            System.out.printf("%10d %16.1f %16.1f %14.1f%n", n, linearNs, gridNs, buildMicros);
+        }
+    }
+
+    // The old way: the last circle in the list that contains the click (the top-most one)
+    private static int linear(ArrayList<Circle> circles, int[] xs, int[] ys, int clicks) {
+        int sum = 0;
+        for (int i = 0; i < clicks; i++) {
+            int found = -1;
+            for (int c = circles.size() - 1; c >= 0; c--) {
+                if (circles.get(c).containsPoint(xs[i], ys[i])) {
+                    found = c;
+                    break;
+                }
+            }
+            sum += found;
+        }
+        return sum;
+    }
+
+    private static int gridLookup(CircleGrid grid, CircleStore circles, int[] xs, int[] ys, int clicks) {
+        int sum = 0;
+        for (int i = 0; i < clicks; i++) {
+            sum += grid.findTopmost(circles, xs[i], ys[i]);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,89 @@
+import javax.swing.*;
+import java.awt.*;
+
+/*
+ * A HUD label showing a number between a fixed prefix and suffix, e.g. "Misses: 12" or "Reaction: 312 ms".
+ * Unlike a JLabel, its size never changes: it is worked out once from the widest number it is meant to show,
+ * so a new value only repaints the label itself, instead of revalidating it and laying out the whole top panel
+ * again. The text is kept in a char array and changed in place, so setting a value doesn't create any strings.
+ * Only used on the EDT.
+ */
+public class HudLabel extends JComponent {
+    private final char[] text;
+    private final int prefixLength;
+    private final String suffix;
+    private final String widest; // the widest text the label is sized for
+    private int length;
+    private int value;
+
+    public HudLabel(String prefix, String suffix, int widestValue, int value) {
+        this.prefixLength = prefix.length();
+        this.suffix = suffix;
+        this.widest = prefix + widestValue + suffix;
+        this.text = new char[prefix.length() + 11 + suffix.length()]; // room for any int
+        prefix.getChars(0, prefix.length(), text, 0);
+        setFont(UIManager.getFont("Label.font"));
+        setForeground(UIManager.getColor("Label.foreground"));
+        this.value = value + 1; // so setValue sees a change
+        setValue(value);
+    }
+
+    public void setValue(int newValue) {
+        if (newValue == value) {
+            return;
+        }
+        value = newValue;
+
+        // the digits, written backwards from the end of where they go
+        int digits = 1;
+        for (long v = Math.abs((long) newValue); v >= 10; v /= 10) {
+            digits++;
+        }
+        int start = prefixLength;
+        if (newValue < 0) {
+            text[start++] = '-';
+        }
+        long v = Math.abs((long) newValue);
+        for (int i = start + digits - 1; i >= start; i--) {
+            text[i] = (char) ('0' + v % 10);
+            v /= 10;
+        }
+        int end = start + digits;
+        suffix.getChars(0, suffix.length(), text, end);
+        length = end + suffix.length();
+        repaint();
+    }
+
+    public int getValue() {
+        return value;
+    }
+
+    public Dimension getPreferredSize() {
+        FontMetrics metrics = getFontMetrics(getFont());
+        Insets insets = getInsets();
+        return new Dimension(metrics.stringWidth(widest) + insets.left + insets.right,
+                metrics.getHeight() + insets.top + insets.bottom);
+    }
+
+    public Dimension getMinimumSize() {
+        return getPreferredSize();
+    }
+
+    public Dimension getMaximumSize() {
+        return getPreferredSize();
+    }
+
+    protected void paintComponent(Graphics g) {
+        Graphics2D g2 = (Graphics2D) g;
+        Object textAntialias = UIManager.getDefaults().get(RenderingHints.KEY_TEXT_ANTIALIASING);
+        if (textAntialias != null) {
+            g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, textAntialias);
+        }
+        g.setFont(getFont());
+        g.setColor(getForeground());
+        FontMetrics metrics = g.getFontMetrics();
+        Insets insets = getInsets();
+        int baseline = insets.top + (getHeight() - insets.top - insets.bottom - metrics.getHeight()) / 2 + metrics.getAscent();
+        g.drawChars(text, 0, length, insets.left, baseline);
+    }
+}
@@ -0,0 +1,167 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * Records everything needed to play a game again exactly: each session's seed and difficulty, every spawn
+ * (circle positions and which one is the target), every timer tick and every mouse click.
+ *
+ * Records are fixed-width and are written straight into a memory-mapped file, so recording an event is just a few
+ * stores into memory: no allocation and no system call. The file is mapped in big chunks and only remapped
+ * (larger) when a chunk fills up. SessionReplayer reads the file back.
+ *
+ * File layout: an 8 byte header (MAGIC, VERSION), then records of RECORD_SIZE bytes:
+ *   int type, int i1, int i2, int i3, long l1, long l2, long l3
+ * A SPAWN record is followed by count pairs of ints (x, y). A type of END_OF_LOG (0) marks the end.
+ * Each launch of the game adds its sessions after the ones already in the file.
+ */
+public class InputRecorder implements Closeable {
+    public static final int MAGIC = 0x52524c47; // "RRLG"
+    public static final int VERSION = 2; // 2: layouts come from RoundLayouts, so version 1 spawns can't be replayed
+    public static final int HEADER_SIZE = 8;
+    public static final int RECORD_SIZE = 40;
+
+    // Record types, and what the fields hold for each one
+    public static final int END_OF_LOG = 0;
+    public static final int SESSION_START = 1; // i1 difficulty, i2 circles per round, l1 nanoTime, l2 seed
+    public static final int SPAWN = 2;         // i1 target index, i2 circle count, l1 round start nanos, then the positions
+    public static final int ROUND_TIMER = 3;   // l1 nanoTime
+    public static final int SECOND_TIMER = 4;  // l1 nanoTime
+    public static final int CLICK = 5;         // i1 x, i2 y, i3 button, l1 nanoTime handled, l2 click nanos, l3 MouseEvent.getWhen()
+    public static final int SESSION_END = 6;   // i1 score, i2 misses, i3 accuracy, l1 nanoTime
+
+    private static final long CHUNK_SIZE = 16L * 1024 * 1024;
+
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int position = HEADER_SIZE;
+
+    /*
+     * Opens the recording, adding to it if it already has games in it, so an earlier session is never lost
+     * (it may be needed to look into a disputed score). A file that isn't a recording of this version is left alone.
+     */
+    public InputRecorder(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long existing = channel.size();
+        if (existing > Integer.MAX_VALUE) {
+            channel.close();
+            throw new IOException(file + " is larger than 2 GB");
+        }
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(CHUNK_SIZE, existing));
+        if (existing >= HEADER_SIZE) {
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                channel.close();
+                throw new IOException(file + " is not a recording of version " + VERSION + ", so it is not added to");
+            }
+            position = endOfLog((int) existing);
+            if (position + 4 <= existing && buffer.getInt(position) != END_OF_LOG) {
+                // a half-written record: clear what is left of it, so it can't be read as the end of our own games
+                for (int i = position; i < existing; i++) {
+                    buffer.put(i, (byte) 0);
+                }
+            }
+        } else {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+        }
+    }
+
+    public void sessionStarted(int difficulty, int numCircles, long seed, long nowNanos) {
+        write(SESSION_START, difficulty, numCircles, 0, nowNanos, seed, 0);
+    }
+
+    public void spawned(CircleStore circles, long roundStartNanos) {
+        int count = circles.count();
+        ensureCapacity(RECORD_SIZE + count * 8);
+        write(SPAWN, circles.targetIndex(), count, 0, roundStartNanos, 0, 0);
+        for (int i = 0; i < count; i++) {
+            buffer.putInt(position, circles.getX(i));
+            buffer.putInt(position + 4, circles.getY(i));
+            position += 8;
+        }
+    }
+
+    public void roundTimer(long nowNanos) {
+        write(ROUND_TIMER, 0, 0, 0, nowNanos, 0, 0);
+    }
+
+    public void secondTimer(long nowNanos) {
+        write(SECOND_TIMER, 0, 0, 0, nowNanos, 0, 0);
+    }
+
+    public void click(int x, int y, int button, long nowNanos, long clickNanos, long when) {
+        write(CLICK, x, y, button, nowNanos, clickNanos, when);
+    }
+
+    public void sessionEnded(int score, int misses, int accuracy, long nowNanos) {
+        write(SESSION_END, score, misses, accuracy, nowNanos, 0, 0);
+    }
+
+    // Asks the OS to write the mapped pages to disk. This is a system call, so it is only done at the end of a game.
+    public void flush() {
+        buffer.force();
+    }
+
+    public void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    private void write(int type, int i1, int i2, int i3, long l1, long l2, long l3) {
+        ensureCapacity(RECORD_SIZE);
+        buffer.putInt(position, type);
+        buffer.putInt(position + 4, i1);
+        buffer.putInt(position + 8, i2);
+        buffer.putInt(position + 12, i3);
+        buffer.putLong(position + 16, l1);
+        buffer.putLong(position + 24, l2);
+        buffer.putLong(position + 32, l3);
+        position += RECORD_SIZE;
+    }
+
+    /*
+     * Finds where the games already in the file end: at the END_OF_LOG record, or at the first record that can't be
+     * right (the game was killed while writing it), which is then written over.
+     */
+    private int endOfLog(int size) {
+        int pos = HEADER_SIZE;
+        while (pos + RECORD_SIZE <= size) {
+            int type = buffer.getInt(pos);
+            if (type <= END_OF_LOG || type > SESSION_END) {
+                break;
+            }
+            int next = pos + RECORD_SIZE;
+            if (type == SPAWN) {
+                int count = buffer.getInt(pos + 8);
+                if (count < 0 || count > (size - next) / 8) {
+                    break;
+                }
+                next += count * 8;
+            }
+            pos = next;
+        }
+        return pos;
+    }
+
+    // Maps a bigger part of the file if the next write would not fit. This only happens once per chunk.
+    private void ensureCapacity(int bytes) {
+        long needed = (long) position + bytes;
+        if (needed <= buffer.capacity()) {
+            return;
+        }
+        long size = Math.max(needed, (long) buffer.capacity() + CHUNK_SIZE);
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Recording is larger than 2 GB");
+        }
+        try {
+            buffer.force();
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+import java.util.Arrays;
+
+/*
+ * A log-bucketed latency histogram, in the style of HdrHistogram.
+ * Every power of two is split into SUB_BUCKETS equal sub-buckets, so a value is always reported
+ * within about 3% of what was recorded, no matter how big it is.
+ * All the storage is allocated in the constructor, so record() never allocates or boxes anything.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS; // 32 sub-buckets per power of two
+
+    // enough buckets to hold any positive long value
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKET_COUNT];
+    private long totalCount = 0;
+    private long min = Long.MAX_VALUE;
+    private long max = 0;
+    private long sum = 0;
+
+    // Adds one value to the histogram. Negative values are counted as 0.
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts[bucketIndex(value)]++;
+        totalCount++;
+        sum += value;
+        if (value < min) {
+            min = value;
+        }
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    /*
+     * Returns the value at the given percentile (0 - 100).
+     * The answer is the highest value that falls in the bucket where the percentile lands,
+     * capped at the largest value actually recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        long countAtPercentile = (long) Math.ceil((percentile / 100.0) * totalCount);
+        if (countAtPercentile < 1) {
+            countAtPercentile = 1;
+        }
+
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= countAtPercentile) {
+                return Math.min(highestValueInBucket(i), max);
+            }
+        }
+        return max;
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    public long getMin() {
+        return totalCount == 0 ? 0 : min;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return totalCount == 0 ? 0 : (double) sum / totalCount;
+    }
+
+    // Adds every value recorded in another histogram to this one, e.g. to combine results worked out in parallel
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    // Clears every count so the histogram can be reused
+    public void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+        sum = 0;
+    }
+
+    /*
+     * Finds the bucket for a value. The exponent is how many bits we have to shift the value right
+     * so that it fits in 2 * SUB_BUCKETS, and the shifted value is the sub-bucket.
+     * Values smaller than 2 * SUB_BUCKETS get a bucket each, so small values are exact.
+     */
+    private static int bucketIndex(long value) {
+        int highestBit = 63 - Long.numberOfLeadingZeros(value | SUB_BUCKETS);
+        int exponent = highestBit - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> exponent);
+        return exponent * SUB_BUCKETS + subBucket;
+    }
+
+    // The opposite of bucketIndex: the largest value that would land in bucket i
+    private static long highestValueInBucket(int index) {
+        int exponent = Math.max(0, index / SUB_BUCKETS - 1);
+        long subBucket = index - (long) exponent * SUB_BUCKETS;
+        return ((subBucket + 1) << exponent) - 1;
+    }
+}
@@ -0,0 +1,70 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Talks to a LeaderboardServer over one connection. Not safe to use from several threads at once.
+ */
+public class LeaderboardClient implements Closeable {
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final byte[] record = new byte[SessionResult.BYTES];
+    private final ByteBuffer recordBuffer = ByteBuffer.wrap(record);
+
+    public LeaderboardClient(String host, int port) throws IOException {
+        socket = new Socket(host, port);
+        socket.setTcpNoDelay(true);
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    // Sends a finished game, and returns once the server has saved it
+    public long submit(SessionResult result) throws IOException {
+        result.writeTo(recordBuffer, 0);
+        out.writeByte(LeaderboardServer.SUBMIT);
+        out.write(record);
+        out.flush();
+        return in.readLong();
+    }
+
+    public List<SessionResult> top(int difficulty, int limit) throws IOException {
+        out.writeByte(LeaderboardServer.TOP);
+        out.writeInt(difficulty);
+        out.writeInt(limit);
+        out.flush();
+        return readResults();
+    }
+
+    public List<SessionResult> history(String player, int limit) throws IOException {
+        out.writeByte(LeaderboardServer.HISTORY);
+        out.writeUTF(player);
+        out.writeInt(limit);
+        out.flush();
+        return readResults();
+    }
+
+    private List<SessionResult> readResults() throws IOException {
+        int count = in.readInt();
+        if (count == LeaderboardServer.ERROR) {
+            throw new IOException("The leaderboard server rejected the request");
+        }
+        List<SessionResult> results = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            in.readFully(record);
+            results.add(SessionResult.readFrom(recordBuffer, 0));
+        }
+        return results;
+    }
+
+    public void close() throws IOException {
+        socket.close();
+    }
+}
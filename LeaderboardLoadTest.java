@@ -0,0 +1,86 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Starts a LeaderboardServer on loopback (with a fresh score store in a temporary directory) and has many
+ * clients submit games to it at the same time. Reports submissions per second and the latency percentiles
+ * of a submission, as seen by the client.
+ *
+ * Run with: java LeaderboardLoadTest [clients] [games per client]
+ */
+public class LeaderboardLoadTest {
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int gamesPerClient = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        Path dir = Files.createTempDirectory("leaderboard-load");
+        ScoreStore store = ScoreStore.open(dir);
+        LeaderboardServer server = new LeaderboardServer(0, store);
+        int port = server.getPort();
+
+        LatencyHistogram latencyMicros = new LatencyHistogram(); // shared, so recording is synchronized on it
+        AtomicLong failures = new AtomicLong();
+        CountDownLatch connected = new CountDownLatch(clients);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(clients);
+
+        // the clients use the same kind of threads as the server: virtual threads when this Java has them
+        ExecutorService executor = LeaderboardServer.newConnectionExecutor();
+        for (int c = 0; c < clients; c++) {
+            final int clientId = c;
+            executor.execute(() -> {
+                Random rand = new Random(clientId);
+                try (LeaderboardClient client = new LeaderboardClient("127.0.0.1", port)) {
+                    connected.countDown();
+                    start.await();
+                    for (int i = 0; i < gamesPerClient; i++) {
+                        SessionResult result = new SessionResult("client" + clientId, rand.nextInt(3), rand.nextInt(60),
+                                rand.nextInt(20), rand.nextInt(101), 300_000, 400_000, 500_000, 600_000, System.currentTimeMillis());
+                        long sent = System.nanoTime();
+                        client.submit(result);
+                        long micros = (System.nanoTime() - sent) / 1000;
+                        synchronized (latencyMicros) {
+                            latencyMicros.record(micros);
+                        }
+                    }
+                } catch (IOException e) {
+                    failures.incrementAndGet();
+                    connected.countDown();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    finished.countDown();
+                }
+            });
+        }
+
+        connected.await();
+        System.out.println(clients + " clients connected, starting");
+        long begin = System.nanoTime();
+        start.countDown();
+        finished.await();
+        double seconds = (System.nanoTime() - begin) / 1e9;
+
+        long submitted = latencyMicros.getTotalCount();
+        System.out.printf("%d submissions in %.2f s: %.0f submissions/s, %.1f games per group commit%n",
+                submitted, seconds, submitted / seconds, server.averageBatchSize());
+        System.out.printf("latency p50 %.2f ms | p99 %.2f ms | max %.2f ms | %d failed clients%n",
+                latencyMicros.getValueAtPercentile(50) / 1000.0, latencyMicros.getValueAtPercentile(99) / 1000.0,
+                latencyMicros.getMax() / 1000.0, failures.get());
+
+        try (LeaderboardClient client = new LeaderboardClient("127.0.0.1", port)) {
+            System.out.println("top Medium score: " + client.top(GameEngine.MEDIUM, 1));
+        }
+
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        server.close();
+        store.close();
+    }
+}
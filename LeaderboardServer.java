@@ -0,0 +1,313 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+ * A small TCP service that game clients send their finished games to, and that serves leaderboards.
+ *
+ *  - Every connection is handled on its own thread: a virtual thread when running on Java 21 or newer,
+ *    otherwise a thread from a cached pool.
+ *  - Submitted games are queued for one writer thread, which appends everything waiting in the queue to the
+ *    ScoreStore and then syncs once for the whole batch (group commit). A client gets its reply after the sync.
+ *  - Each difficulty has a LiveLeaderboard, so top-N reads come from memory.
+ *  - Player histories come from the store through a small LRU cache, which is cleared for a player when they
+ *    submit a new game.
+ *
+ * The protocol is binary and a connection can send any number of requests:
+ *   SUBMIT  'S', then a SessionResult (SessionResult.BYTES)  -> long record number
+ *   TOP     'T', int difficulty, int limit                   -> int count, then count SessionResults
+ *   HISTORY 'H', UTF player name, int limit                  -> int count, then count SessionResults
+ * A TOP or HISTORY request that makes no sense (an unknown difficulty or a negative limit) gets a count of ERROR
+ * and nothing else, and the connection stays open.
+ *
+ * Run with: java LeaderboardServer [port] [directory]
+ */
+public class LeaderboardServer implements AutoCloseable {
+    public static final int DEFAULT_PORT = 7171;
+    public static final byte SUBMIT = 'S';
+    public static final byte TOP = 'T';
+    public static final byte HISTORY = 'H';
+    public static final int ERROR = -1; // sent instead of a count when a request is rejected
+
+    public static final int LEADERBOARD_SIZE = 100;
+    private static final int MAX_BATCH = 4096; // most games written in one group commit
+    private static final int CACHED_PLAYERS = 1024;
+
+    // A submitted game waiting for the writer thread
+    private static class Submission {
+        final SessionResult result;
+        final CompletableFuture<Long> done = new CompletableFuture<>();
+
+        Submission(SessionResult result) {
+            this.result = result;
+        }
+    }
+
+    private final ScoreStore store;
+    private final ServerSocket serverSocket;
+    private final ExecutorService connections = newConnectionExecutor();
+    private final ArrayBlockingQueue<Submission> pending = new ArrayBlockingQueue<>(MAX_BATCH * 4);
+    private final LiveLeaderboard[] leaderboards = new LiveLeaderboard[GameEngine.DIFFICULTY_NAMES.length];
+    private final Thread writer;
+    private final Thread acceptor;
+    private volatile boolean running = true;
+
+    // A player's history as read from the store, and how many games they had played when it was read
+    private static class CachedHistory {
+        final List<SessionResult> games;
+        final int gamesPlayed;
+
+        CachedHistory(List<SessionResult> games, int gamesPlayed) {
+            this.games = games;
+            this.gamesPlayed = gamesPlayed;
+        }
+    }
+
+    // Recently asked-for player histories, least recently used dropped first
+    private final Map<String, CachedHistory> historyCache = new LinkedHashMap<String, CachedHistory>(16, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry<String, CachedHistory> eldest) {
+            return size() > CACHED_PLAYERS;
+        }
+    };
+
+    // Statistics about the group commits
+    private long batches = 0;
+    private long batchedGames = 0;
+
+    public LeaderboardServer(int port, ScoreStore store) throws IOException {
+        this.store = store;
+        for (int d = 0; d < leaderboards.length; d++) {
+            leaderboards[d] = new LiveLeaderboard(LEADERBOARD_SIZE);
+            for (SessionResult result : store.topScores(d, LEADERBOARD_SIZE)) {
+                leaderboards[d].offer(result);
+            }
+        }
+
+        serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress("127.0.0.1", port), 4096);
+
+        writer = new Thread(this::writeLoop, "leaderboard-writer");
+        writer.setDaemon(true);
+        writer.start();
+        acceptor = new Thread(this::acceptLoop, "leaderboard-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    // Virtual threads if this Java has them (21+), otherwise a normal thread per connection from a cached pool
+    static ExecutorService newConnectionExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                final Socket socket = serverSocket.accept();
+                connections.execute(() -> handle(socket));
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("Accept failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    // Answers requests on one connection until the client hangs up
+    private void handle(Socket socket) {
+        try (Socket s = socket) {
+            s.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+            byte[] record = new byte[SessionResult.BYTES];
+            while (true) {
+                int command;
+                try {
+                    command = in.readByte();
+                } catch (EOFException e) {
+                    return;
+                }
+                if (command == SUBMIT) {
+                    in.readFully(record);
+                    SessionResult result = SessionResult.readFrom(ByteBuffer.wrap(record), 0);
+                    out.writeLong(submit(result));
+                } else if (command == TOP) {
+                    int difficulty = in.readInt();
+                    int limit = in.readInt();
+                    if (difficulty < 0 || difficulty >= leaderboards.length || limit < 0) {
+                        out.writeInt(ERROR);
+                    } else {
+                        writeResults(out, top(difficulty, limit), record);
+                    }
+                } else if (command == HISTORY) {
+                    String player = in.readUTF();
+                    int limit = in.readInt();
+                    if (limit < 0) {
+                        out.writeInt(ERROR);
+                    } else {
+                        writeResults(out, history(player, limit), record);
+                    }
+                } else {
+                    return; // unknown command, drop the connection
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            // the client went away
+        }
+    }
+
+    // Queues a game for the writer and waits until it is safely on disk. Returns its record number.
+    long submit(SessionResult result) throws IOException {
+        if (result.difficulty < 0 || result.difficulty >= leaderboards.length) {
+            throw new IOException("Unknown difficulty " + result.difficulty);
+        }
+        Submission submission = new Submission(result);
+        try {
+            pending.put(submission);
+            long recordNo = submission.done.get();
+            leaderboards[result.difficulty].offer(result);
+            return recordNo;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while saving", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Could not save", e.getCause());
+        }
+    }
+
+    List<SessionResult> top(int difficulty, int limit) {
+        if (difficulty < 0 || difficulty >= leaderboards.length) {
+            throw new IllegalArgumentException("Unknown difficulty " + difficulty);
+        }
+        if (limit < 0) {
+            throw new IllegalArgumentException("Negative limit: " + limit);
+        }
+        SessionResult[] board = leaderboards[difficulty].top();
+        List<SessionResult> top = new ArrayList<>();
+        for (int i = 0; i < Math.min(limit, board.length); i++) {
+            top.add(board[i]);
+        }
+        return top;
+    }
+
+    /*
+     * A player's latest games, from the cache if it has enough of them. The store is read outside the cache lock,
+     * so a game may be committed while we read; the count of games played is taken before the read, and the result
+     * is only cached if the count is still the same afterwards, so a list missing that game is never cached.
+     */
+    List<SessionResult> history(String player, int limit) throws IOException {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Negative limit: " + limit);
+        }
+        int gamesPlayed = store.gamesPlayed(player);
+        synchronized (historyCache) {
+            CachedHistory cached = historyCache.get(player);
+            if (cached != null && cached.gamesPlayed == gamesPlayed
+                    && cached.games.size() >= Math.min(limit, gamesPlayed)) {
+                return cached.games.subList(0, Math.min(limit, cached.games.size()));
+            }
+        }
+        List<SessionResult> games = store.history(player, limit);
+        synchronized (historyCache) {
+            if (store.gamesPlayed(player) == gamesPlayed) {
+                historyCache.put(player, new CachedHistory(games, gamesPlayed));
+            }
+        }
+        return games;
+    }
+
+    /*
+     * The writer thread: takes everything waiting in the queue (at least one game), appends it all,
+     * syncs once, and then lets every waiting client know.
+     */
+    private void writeLoop() {
+        List<Submission> batch = new ArrayList<>(MAX_BATCH);
+        while (running) {
+            try {
+                batch.add(pending.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            pending.drainTo(batch, MAX_BATCH - 1);
+            try {
+                long[] recordNos = new long[batch.size()];
+                for (int i = 0; i < batch.size(); i++) {
+                    recordNos[i] = store.appendUncommitted(batch.get(i).result);
+                }
+                store.commit();
+                synchronized (historyCache) {
+                    for (Submission submission : batch) {
+                        historyCache.remove(submission.result.player);
+                    }
+                    batches++;
+                    batchedGames += batch.size();
+                }
+                for (int i = 0; i < batch.size(); i++) {
+                    batch.get(i).done.complete(recordNos[i]);
+                }
+            } catch (IOException e) {
+                for (Submission submission : batch) {
+                    submission.done.completeExceptionally(e);
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    // Average number of games per group commit so far
+    public double averageBatchSize() {
+        synchronized (historyCache) {
+            return batches == 0 ? 0 : (double) batchedGames / batches;
+        }
+    }
+
+    private static void writeResults(DataOutputStream out, List<SessionResult> results, byte[] record) throws IOException {
+        out.writeInt(results.size());
+        ByteBuffer buf = ByteBuffer.wrap(record);
+        for (SessionResult result : results) {
+            result.writeTo(buf, 0);
+            out.write(record);
+        }
+    }
+
+    public void close() throws IOException {
+        running = false;
+        serverSocket.close();
+        writer.interrupt();
+        connections.shutdownNow();
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        Path dir = Paths.get(args.length > 1 ? args[1] : GameConfig.SCORE_DIR);
+        ScoreStore store = ScoreStore.open(dir);
+        LeaderboardServer server = new LeaderboardServer(port, store);
+        System.out.println("Leaderboard server listening on 127.0.0.1:" + server.getPort() + ", " + store);
+    }
+}
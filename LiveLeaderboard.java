@@ -0,0 +1,103 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/*
+ * The top scores for one difficulty, kept in memory and updated by many threads at once without locks.
+ *
+ * Scores go into one of several stripes (picked by the player's name), each holding its own sorted top list
+ * as an array that is never changed once published: an update copies the array, inserts the score and swaps
+ * the new array in with compare-and-set, trying again if another thread got there first. A score too low to
+ * make its stripe's list is turned away without allocating anything.
+ * Readers get a merged snapshot, which is only rebuilt after something has changed. Every change bumps a counter,
+ * and each snapshot remembers the count it was merged at, so an older merge can never replace a newer one.
+ */
+public class LiveLeaderboard {
+    private static final int STRIPES = 16;
+    private static final SessionResult[] EMPTY = new SessionResult[0];
+
+    private final int size;
+    private final AtomicReferenceArray<SessionResult[]> stripes = new AtomicReferenceArray<>(STRIPES);
+    private final AtomicLong changes = new AtomicLong(); // how many times a stripe has changed
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>(new Snapshot(0, EMPTY));
+
+    // A merged top list, and the change count it was merged at
+    private static class Snapshot {
+        final long version;
+        final SessionResult[] results;
+
+        Snapshot(long version, SessionResult[] results) {
+            this.version = version;
+            this.results = results;
+        }
+    }
+
+    public LiveLeaderboard(int size) {
+        this.size = size;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes.set(i, EMPTY);
+        }
+    }
+
+    // Adds a result if it is good enough to be on the board
+    public void offer(SessionResult result) {
+        int stripe = (result.player.hashCode() & 0x7fffffff) % STRIPES;
+        while (true) {
+            SessionResult[] current = stripes.get(stripe);
+            if (current.length == size && !better(result, current[size - 1])) {
+                return;
+            }
+            SessionResult[] next = insert(current, result);
+            if (stripes.compareAndSet(stripe, current, next)) {
+                changes.incrementAndGet();
+                return;
+            }
+        }
+    }
+
+    /*
+     * The current top scores, best first. The array must not be changed by the caller.
+     * If something changed since the snapshot was merged, the stripes are merged into a new one. The change count
+     * is read before the stripes, so the new snapshot has at least every change up to that count. It is only
+     * installed if the snapshot it replaces is still the current one; if another thread installed one meanwhile,
+     * we look again, and merge again if that one is out of date too.
+     */
+    public SessionResult[] top() {
+        while (true) {
+            Snapshot current = snapshot.get();
+            long version = changes.get();
+            if (current.version == version) {
+                return current.results;
+            }
+            SessionResult[] merged = EMPTY;
+            for (int i = 0; i < STRIPES; i++) {
+                for (SessionResult result : stripes.get(i)) {
+                    if (merged.length < size || better(result, merged[merged.length - 1])) {
+                        merged = insert(merged, result);
+                    }
+                }
+            }
+            if (snapshot.compareAndSet(current, new Snapshot(version, merged))) {
+                return merged;
+            }
+        }
+    }
+
+    // A copy of the sorted list with the result in its place, cut to size entries
+    private SessionResult[] insert(SessionResult[] list, SessionResult result) {
+        int at = 0;
+        while (at < list.length && !better(result, list[at])) {
+            at++;
+        }
+        SessionResult[] next = new SessionResult[Math.min(size, list.length + 1)];
+        System.arraycopy(list, 0, next, 0, at);
+        next[at] = result;
+        System.arraycopy(list, at, next, at + 1, next.length - at - 1);
+        return next;
+    }
+
+    // Higher scores go first, and on a tie whoever got it earlier goes first
+    private static boolean better(SessionResult a, SessionResult b) {
+        return a.score > b.score || (a.score == b.score && a.timestamp < b.timestamp);
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * What a game looks like at one moment, for readers outside the game: the spectator window, streaming overlays and
+ * the metrics endpoint (see LiveStats and LiveStatsServer). Every field is final and the circle arrays are never
+ * changed once the snapshot is made, so any thread can read a snapshot without a lock and always sees one
+ * consistent state, however the game moves on in the meantime.
+ */
+public final class LiveSnapshot {
+    public static final LiveSnapshot EMPTY = new LiveSnapshot(0, 0, false, GameEngine.EASY, 0, GameEngine.GAME_SECONDS,
+            0, 0, 100, 0, Layout.EMPTY);
+
+    public final long version; // goes up by one with every snapshot the game publishes
+    public final long publishedNanos; // System.nanoTime() when it was published
+    public final boolean running;
+    public final int difficulty;
+    public final int score;
+    public final int timeLeft;
+    public final int misses;
+    public final int totalAttempts;
+    public final int accuracy;
+    public final int streak;
+    public final Layout layout;
+
+    public LiveSnapshot(long version, long publishedNanos, boolean running, int difficulty, int score, int timeLeft,
+                        int misses, int totalAttempts, int accuracy, int streak, Layout layout) {
+        this.version = version;
+        this.publishedNanos = publishedNanos;
+        this.running = running;
+        this.difficulty = difficulty;
+        this.score = score;
+        this.timeLeft = timeLeft;
+        this.misses = misses;
+        this.totalAttempts = totalAttempts;
+        this.accuracy = accuracy;
+        this.streak = streak;
+        this.layout = layout;
+    }
+
+    /*
+     * The circles on screen, copied out of a CircleStore. A layout only changes when a round does (or every frame
+     * with moving targets), so the snapshots in between all share the same one.
+     */
+    public static final class Layout {
+        public static final Layout EMPTY = new Layout(new int[0], new int[0], new int[0], -1, 0);
+
+        private final int[] x;
+        private final int[] y;
+        private final int[] size;
+        public final int target; // index of the target circle, -1 if there isn't one
+        public final long roundStartNanos;
+
+        private Layout(int[] x, int[] y, int[] size, int target, long roundStartNanos) {
+            this.x = x;
+            this.y = y;
+            this.size = size;
+            this.target = target;
+            this.roundStartNanos = roundStartNanos;
+        }
+
+        public static Layout of(CircleStore circles, long roundStartNanos) {
+            int n = circles.count();
+            int[] x = new int[n];
+            int[] y = new int[n];
+            int[] size = new int[n];
+            for (int i = 0; i < n; i++) {
+                x[i] = circles.getX(i);
+                y[i] = circles.getY(i);
+                size[i] = circles.getSize(i);
+            }
+            return new Layout(x, y, size, circles.targetIndex(), roundStartNanos);
+        }
+
+        // A layout from circle positions read from somewhere else, e.g. LiveStatsServer.parse. The arrays are copied.
+        public static Layout of(int[] x, int[] y, int[] size, int target, long roundStartNanos) {
+            return new Layout(x.clone(), y.clone(), size.clone(), target, roundStartNanos);
+        }
+
+        public int count() {
+            return x.length;
+        }
+
+        // Top left corner and diameter of circle i, the same as CircleStore's
+        public int getX(int i) {
+            return x[i];
+        }
+
+        public int getY(int i) {
+            return y[i];
+        }
+
+        public int getSize(int i) {
+            return size[i];
+        }
+    }
+}
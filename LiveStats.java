@@ -0,0 +1,66 @@
+/*
+ * Publishes the live state of a game for readers on other threads (spectators, overlays, the metrics endpoint).
+ *
+ * After every change the game builds a new immutable LiveSnapshot and stores it in one volatile field; that store
+ * is the only thing the game does for its readers. A reader just reads the field (latest()), which is wait-free:
+ * it never takes a lock, never retries, and never waits for the game or for other readers, so it doesn't matter
+ * how many there are. Readers that want to be told about changes subscribe() instead, and are polled on this
+ * class's own timer thread, not on the EDT; a subscriber that is slow only holds up the other subscribers.
+ *
+ * publish() and layoutChanged() must be called by one thread at a time (GamePanel calls them under its state lock).
+ */
+public class LiveStats implements AutoCloseable {
+    // Told about every snapshot that differs from the last one it saw. Polled at most once per period, so it can
+    // skip snapshots when several come out in between.
+    public interface Subscriber {
+        void snapshotChanged(LiveSnapshot snapshot);
+    }
+
+    private volatile LiveSnapshot latest = LiveSnapshot.EMPTY;
+    private long version = 0; // only changed by the publishing thread
+    private LiveSnapshot.Layout layout = LiveSnapshot.Layout.EMPTY;
+    private TimingWheelScheduler subscriptions; // created by the first subscribe()
+
+    // Copies the circles, to go into every snapshot from now on
+    public void layoutChanged(CircleStore circles, long roundStartNanos) {
+        layout = LiveSnapshot.Layout.of(circles, roundStartNanos);
+    }
+
+    // Publishes the game's current state, with the latest layout
+    public void publish(GameEngine engine, SessionStats stats) {
+        version++;
+        latest = new LiveSnapshot(version, System.nanoTime(), engine.isRunning(), engine.getDifficulty(),
+                engine.getScore(), engine.getTimeLeft(), engine.getMisses(), engine.getTotalAttempts(),
+                engine.getAccuracy(), stats.getStreak(), layout);
+    }
+
+    // The last snapshot published. Safe to call from any thread, as often as you like.
+    public LiveSnapshot latest() {
+        return latest;
+    }
+
+    // Calls the subscriber every periodMillis, on the subscription thread, if a new snapshot came out since the last call
+    public synchronized GameScheduler.Task subscribe(final Subscriber subscriber, long periodMillis) {
+        if (subscriptions == null) {
+            subscriptions = new TimingWheelScheduler("live-stats");
+        }
+        return subscriptions.scheduleAtFixedRate(new Runnable() {
+            private long seen = -1;
+
+            public void run() {
+                LiveSnapshot snapshot = latest;
+                if (snapshot.version != seen) {
+                    seen = snapshot.version;
+                    subscriber.snapshotChanged(snapshot);
+                }
+            }
+        }, periodMillis);
+    }
+
+    public synchronized void close() {
+        if (subscriptions != null) {
+            subscriptions.close();
+            subscriptions = null;
+        }
+    }
+}
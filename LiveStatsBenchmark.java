@@ -0,0 +1,210 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Measures what live stats readers cost the game: click-to-paint latency with and without readers attached.
+ *
+ * One thread stands in for the EDT: every few milliseconds it clicks the target (which scores and spawns a new
+ * round, like GamePanel's click handler), then paints the circles into an offscreen image, both under the state
+ * lock as GamePanel does, and records how long that took. Meanwhile the readers look at the game state every
+ * poll period, each time reading the score, time, misses and attempts and going over every circle:
+ *
+ *   mode=snapshot  through LiveStats: half the readers poll latest() on their own threads, half subscribe()
+ *   mode=lock      the naive way, copying the state out of the game while holding its state lock
+ *
+ * Run with, for example:
+ *   java -Djava.awt.headless=true LiveStatsBenchmark readers=0,100 mode=snapshot,lock clicks=20000 gap=2 poll=16
+ * (gap is the time between clicks and poll the time between reads, in milliseconds; poll=0 reads without pausing)
+ */
+public class LiveStatsBenchmark {
+    private static final int WARMUP_CLICKS = 3000;
+
+    public static void main(String[] args) throws Exception {
+        int[] readerCounts = { 0, 100 };
+        String[] modes = { "snapshot", "lock" };
+        int clicks = 20_000;
+        long gapMillis = 2;
+        long pollMillis = 16;
+        int circles = GameConfig.NUM_CIRCLES;
+
+        // arguments look like name=value
+        for (String arg : args) {
+            String[] kv = arg.split("=", 2);
+            if (kv.length != 2) {
+                throw new IllegalArgumentException("Arguments should look like name=value, got " + arg);
+            }
+            switch (kv[0]) {
+                case "readers":
+                    String[] parts = kv[1].split(",");
+                    readerCounts = new int[parts.length];
+                    for (int i = 0; i < parts.length; i++) {
+                        readerCounts[i] = Integer.parseInt(parts[i]);
+                    }
+                    break;
+                case "mode": modes = kv[1].split(","); break;
+                case "clicks": clicks = Integer.parseInt(kv[1]); break;
+                case "gap": gapMillis = Long.parseLong(kv[1]); break;
+                case "poll": pollMillis = Long.parseLong(kv[1]); break;
+                case "circles": circles = Integer.parseInt(kv[1]); break;
+                default: throw new IllegalArgumentException("Unknown argument: " + kv[0]);
+            }
+        }
+
+        System.out.println(clicks + " clicks " + gapMillis + " ms apart, " + circles + " circles, readers poll every "
+                + pollMillis + " ms, " + Runtime.getRuntime().availableProcessors() + " cores");
+        System.out.println(String.format("%-9s %7s %9s %9s %9s %9s %9s %12s", "mode", "readers", "p50 us", "p99 us",
+                "p99.9 us", "max us", "mean us", "reads/s"));
+        for (String mode : modes) {
+            if (!mode.equals("snapshot") && !mode.equals("lock")) {
+                throw new IllegalArgumentException("mode should be snapshot or lock, got " + mode);
+            }
+            for (int readers : readerCounts) {
+                run(mode, readers, clicks, gapMillis, pollMillis, circles);
+            }
+        }
+    }
+
+    private static void run(String mode, int readerCount, int clicks, long gapMillis, long pollMillis, int circles)
+            throws InterruptedException {
+        final boolean useSnapshots = mode.equals("snapshot");
+        final Object stateLock = new Object();
+        final GameEngine engine = new GameEngine(42, circles);
+        final SessionStats stats = new SessionStats();
+        final LiveStats live = new LiveStats();
+        engine.setListener(new GameEngine.Listener() {
+            public void circlesChanged() {
+                if (useSnapshots) {
+                    live.layoutChanged(engine.getCircles(), engine.getRoundStartNanos());
+                    live.publish(engine, stats);
+                }
+            }
+
+            public void scoreChanged() {
+                if (useSnapshots) {
+                    live.publish(engine, stats);
+                }
+            }
+
+            public void statsChanged() {
+                if (useSnapshots) {
+                    live.publish(engine, stats);
+                }
+            }
+
+            public void attemptMade(int kind, int x, int y, int targetX, int targetY, long elapsedNanos) {
+                stats.record(kind, elapsedNanos);
+            }
+        });
+        synchronized (stateLock) {
+            stats.reset();
+            engine.start(GameEngine.MEDIUM, System.nanoTime());
+        }
+
+        // The readers
+        final AtomicBoolean reading = new AtomicBoolean(true);
+        final LongAdder reads = new LongAdder();
+        final long pollNanos = pollMillis * 1_000_000L;
+        List<Thread> threads = new ArrayList<>();
+        List<GameScheduler.Task> subscriptions = new ArrayList<>();
+        for (int r = 0; r < readerCount; r++) {
+            if (useSnapshots && r % 2 == 1) {
+                subscriptions.add(live.subscribe(snapshot -> {
+                    readSnapshot(snapshot);
+                    reads.increment();
+                }, Math.max(1, pollMillis)));
+                continue;
+            }
+            Thread reader = new Thread(() -> {
+                int[] copy = new int[circles * 3];
+                long sink = 0;
+                while (reading.get()) {
+                    if (useSnapshots) {
+                        sink += readSnapshot(live.latest());
+                    } else {
+                        synchronized (stateLock) {
+                            sink += engine.getScore() + engine.getTimeLeft() + engine.getMisses() + engine.getTotalAttempts();
+                            CircleStore c = engine.getCircles();
+                            for (int i = 0; i < c.count(); i++) {
+                                copy[i * 3] = c.getX(i);
+                                copy[i * 3 + 1] = c.getY(i);
+                                copy[i * 3 + 2] = c.getSize(i);
+                            }
+                        }
+                        sink += copy[0];
+                    }
+                    reads.increment();
+                    if (pollNanos > 0) {
+                        LockSupport.parkNanos(pollNanos);
+                    }
+                }
+                if (sink == 42) {
+                    System.out.print(""); // keeps the reads from being optimised away
+                }
+            }, "reader-" + r);
+            reader.setDaemon(true);
+            reader.start();
+            threads.add(reader);
+        }
+
+        // The stand-in for the EDT
+        BufferedImage image = new BufferedImage(GameEngine.WIDTH, GameEngine.HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        CircleSprites sprites = new CircleSprites();
+        LatencyHistogram latency = new LatencyHistogram();
+        long gapNanos = gapMillis * 1_000_000L;
+        long readsBefore = 0;
+        long measuredStart = 0;
+        for (int i = 0; i < WARMUP_CLICKS + clicks; i++) {
+            if (i == WARMUP_CLICKS) {
+                latency.reset();
+                readsBefore = reads.sum();
+                measuredStart = System.nanoTime();
+            }
+            LockSupport.parkNanos(gapNanos);
+            long clickNanos = System.nanoTime();
+            synchronized (stateLock) {
+                CircleStore c = engine.getCircles();
+                int target = c.targetIndex();
+                engine.click(c.getX(target) + c.getSize(target) / 2, c.getY(target) + c.getSize(target) / 2,
+                        clickNanos, clickNanos);
+            }
+            synchronized (stateLock) {
+                g.setColor(Color.WHITE);
+                g.fillRect(0, 0, GameEngine.WIDTH, GameEngine.HEIGHT);
+                engine.getCircles().drawAll(g, 0, 0, GameEngine.WIDTH, GameEngine.HEIGHT, sprites);
+            }
+            latency.record((System.nanoTime() - clickNanos) / 1000);
+        }
+        double seconds = (System.nanoTime() - measuredStart) / 1e9;
+        long measuredReads = reads.sum() - readsBefore;
+
+        reading.set(false);
+        for (GameScheduler.Task task : subscriptions) {
+            task.cancel();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        live.close();
+        g.dispose();
+
+        System.out.println(String.format("%-9s %7d %9d %9d %9d %9d %9.1f %12.0f", mode, readerCount,
+                latency.getValueAtPercentile(50), latency.getValueAtPercentile(99), latency.getValueAtPercentile(99.9),
+                latency.getMax(), latency.getMean(), measuredReads / seconds));
+    }
+
+    // What a spectator does with a snapshot: looks at the numbers and every circle
+    private static long readSnapshot(LiveSnapshot s) {
+        long sum = s.score + s.timeLeft + s.misses + s.totalAttempts;
+        LiveSnapshot.Layout layout = s.layout;
+        for (int i = 0; i < layout.count(); i++) {
+            sum += layout.getX(i) + layout.getY(i) + layout.getSize(i);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,175 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+
+/*
+ * A small local HTTP endpoint serving the game's live state (see LiveStats), started when -Dreflex.livePort is set.
+ * Every request just reads the latest snapshot, so however many clients poll it, the game never waits for them.
+ *
+ *   /snapshot  everything in the snapshot, one name=value per line, then one "circle=x,y,size" line per circle
+ *              (read by SpectatorWindow)
+ *   /overlay   one line of text for a streaming overlay, e.g. "Score 12 | Time 8 | Misses 2 | Accuracy 85% | Streak 4"
+ *   /metrics   the numbers in the Prometheus text format
+ *
+ * It only listens on 127.0.0.1.
+ */
+public class LiveStatsServer implements AutoCloseable {
+    public static final int DEFAULT_PORT = 7373; // MatchServer has 7272
+
+    private final LiveStats stats;
+    private final HttpServer server;
+    private final ExecutorService connections = LeaderboardServer.newConnectionExecutor();
+
+    public LiveStatsServer(int port, LiveStats stats) throws IOException {
+        this.stats = stats;
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 64);
+        server.createContext("/snapshot", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                send(exchange, format(LiveStatsServer.this.stats.latest()));
+            }
+        });
+        server.createContext("/overlay", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                send(exchange, overlay(LiveStatsServer.this.stats.latest()) + "\n");
+            }
+        });
+        server.createContext("/metrics", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                send(exchange, metrics(LiveStatsServer.this.stats.latest()));
+            }
+        });
+        server.setExecutor(connections);
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private static void send(HttpExchange exchange, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.getResponseHeaders().set("Cache-Control", "no-store");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    // The /snapshot format. ageMillis is how long ago the snapshot was published, since nanoTime means nothing elsewhere.
+    static String format(LiveSnapshot s) {
+        StringBuilder out = new StringBuilder(256);
+        out.append("version=").append(s.version).append('\n');
+        out.append("ageMillis=").append(s.version == 0 ? 0 : (System.nanoTime() - s.publishedNanos) / 1_000_000).append('\n');
+        out.append("running=").append(s.running).append('\n');
+        out.append("difficulty=").append(GameEngine.DIFFICULTY_NAMES[s.difficulty]).append('\n');
+        out.append("score=").append(s.score).append('\n');
+        out.append("timeLeft=").append(s.timeLeft).append('\n');
+        out.append("misses=").append(s.misses).append('\n');
+        out.append("totalAttempts=").append(s.totalAttempts).append('\n');
+        out.append("accuracy=").append(s.accuracy).append('\n');
+        out.append("streak=").append(s.streak).append('\n');
+        out.append("target=").append(s.layout.target).append('\n');
+        for (int i = 0; i < s.layout.count(); i++) {
+            out.append("circle=").append(s.layout.getX(i)).append(',').append(s.layout.getY(i)).append(',')
+                    .append(s.layout.getSize(i)).append('\n');
+        }
+        return out.toString();
+    }
+
+    // Reads the /snapshot format back into a snapshot, published ageMillis before now
+    static LiveSnapshot parse(String text) {
+        long version = 0;
+        long age = 0;
+        boolean running = false;
+        int difficulty = GameEngine.EASY;
+        int score = 0;
+        int timeLeft = 0;
+        int misses = 0;
+        int totalAttempts = 0;
+        int accuracy = 100;
+        int streak = 0;
+        int target = -1;
+        int count = 0;
+        int[] x = new int[8];
+        int[] y = new int[8];
+        int[] size = new int[8];
+        for (String line : text.split("\n")) {
+            int eq = line.indexOf('=');
+            if (eq < 0) {
+                continue;
+            }
+            String name = line.substring(0, eq);
+            String value = line.substring(eq + 1).trim();
+            switch (name) {
+                case "version": version = Long.parseLong(value); break;
+                case "ageMillis": age = Long.parseLong(value); break;
+                case "running": running = Boolean.parseBoolean(value); break;
+                case "difficulty": difficulty = GameEngine.difficultyIndex(value); break;
+                case "score": score = Integer.parseInt(value); break;
+                case "timeLeft": timeLeft = Integer.parseInt(value); break;
+                case "misses": misses = Integer.parseInt(value); break;
+                case "totalAttempts": totalAttempts = Integer.parseInt(value); break;
+                case "accuracy": accuracy = Integer.parseInt(value); break;
+                case "streak": streak = Integer.parseInt(value); break;
+                case "target": target = Integer.parseInt(value); break;
+                case "circle":
+                    String[] parts = value.split(",");
+                    if (count == x.length) {
+                        x = Arrays.copyOf(x, count * 2);
+                        y = Arrays.copyOf(y, count * 2);
+                        size = Arrays.copyOf(size, count * 2);
+                    }
+                    x[count] = Integer.parseInt(parts[0]);
+                    y[count] = Integer.parseInt(parts[1]);
+                    size[count] = Integer.parseInt(parts[2]);
+                    count++;
+                    break;
+                default:
+                    break; // something a newer game added
+            }
+        }
+        LiveSnapshot.Layout layout = LiveSnapshot.Layout.of(Arrays.copyOf(x, count),
+                Arrays.copyOf(y, count), Arrays.copyOf(size, count), target < count ? target : -1, 0);
+        return new LiveSnapshot(version, System.nanoTime() - age * 1_000_000, running, difficulty, score, timeLeft,
+                misses, totalAttempts, accuracy, streak, layout);
+    }
+
+    static String overlay(LiveSnapshot s) {
+        return "Score " + s.score + " | Time " + s.timeLeft + " | Misses " + s.misses + " | Accuracy " + s.accuracy
+                + "% | Streak " + s.streak;
+    }
+
+    static String metrics(LiveSnapshot s) {
+        StringBuilder out = new StringBuilder(512);
+        gauge(out, "reflex_snapshot_version", "Snapshots published so far", s.version);
+        gauge(out, "reflex_running", "1 while a game is being played", s.running ? 1 : 0);
+        gauge(out, "reflex_difficulty", "0 = Easy, 1 = Medium, 2 = Hard", s.difficulty);
+        gauge(out, "reflex_score", "Targets hit in the current game", s.score);
+        gauge(out, "reflex_time_left_seconds", "Seconds left in the current game", s.timeLeft);
+        gauge(out, "reflex_misses", "Misses in the current game", s.misses);
+        gauge(out, "reflex_attempts", "Attempts in the current game", s.totalAttempts);
+        gauge(out, "reflex_accuracy_percent", "Hits as a percentage of attempts", s.accuracy);
+        gauge(out, "reflex_streak", "Hits in a row", s.streak);
+        gauge(out, "reflex_circles", "Circles on screen", s.layout.count());
+        return out.toString();
+    }
+
+    private static void gauge(StringBuilder out, String name, String help, long value) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" gauge\n");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    public void close() {
+        server.stop(0);
+        connections.shutdownNow();
+    }
+}
@@ -0,0 +1,121 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+
+/*
+ * One player's connection to a MatchServer.
+ * run() reads messages until the match ends, answers the server's pings by itself, and tells the
+ * listener about everything else. hit() can be called from any thread while run() is going.
+ */
+public class MatchClient implements Runnable, Closeable {
+
+    // Called on the thread that runs run()
+    public interface Listener {
+        default void matchStarted(int player, int players) {}
+        // circles is reused for every round, so copy it if it has to outlive the next round
+        default void roundStarted(int round, CircleStore circles, long receivedNanos) {}
+        default void pointAwarded(int round, int winner, int reactionMicros) {}
+        default void matchEnded(int[] scores) {}
+    }
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final Listener listener;
+    private final long clockSkewNanos; // added to every time we send, to pretend we are on a machine with another clock
+    private final CircleStore circles = new CircleStore();
+
+    public MatchClient(String host, int port, Listener listener) throws IOException {
+        this(host, port, listener, 0);
+    }
+
+    MatchClient(String host, int port, Listener listener, long clockSkewNanos) throws IOException {
+        this.listener = listener;
+        this.clockSkewNanos = clockSkewNanos;
+        socket = new Socket(host, port);
+        socket.setTcpNoDelay(true);
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    // This client's clock. Times passed to hit() have to come from it.
+    public long clock() {
+        return System.nanoTime() + clockSkewNanos;
+    }
+
+    // Joins (or creates) a match. The server starts it once the given number of players have joined.
+    public synchronized void join(int matchId, int players) throws IOException {
+        out.writeByte(MatchServer.JOIN);
+        out.writeInt(matchId);
+        out.writeByte(players);
+        out.flush();
+    }
+
+    // Reports a click at (x, y), made at clickNanos on this client's clock
+    public synchronized void hit(int round, long clickNanos, int x, int y) throws IOException {
+        out.writeByte(MatchServer.HIT);
+        out.writeInt(round);
+        out.writeLong(clickNanos);
+        out.writeShort(x);
+        out.writeShort(y);
+        out.flush();
+    }
+
+    public void run() {
+        try {
+            while (true) {
+                byte type = in.readByte();
+                if (type == MatchServer.PING) {
+                    long serverNanos = in.readLong();
+                    synchronized (this) {
+                        out.writeByte(MatchServer.PONG);
+                        out.writeLong(serverNanos);
+                        out.writeLong(clock());
+                        out.flush();
+                    }
+                } else if (type == MatchServer.ROUND) {
+                    long received = clock();
+                    int round = in.readInt();
+                    int count = in.readShort();
+                    int target = in.readShort();
+                    circles.reset(count);
+                    for (int i = 0; i < count; i++) {
+                        circles.add(in.readShort(), in.readShort(), GameEngine.CIRCLE_SIZE, i == target);
+                    }
+                    listener.roundStarted(round, circles, received);
+                } else if (type == MatchServer.POINT) {
+                    listener.pointAwarded(in.readInt(), in.readByte(), in.readInt());
+                } else if (type == MatchServer.START) {
+                    listener.matchStarted(in.readByte(), in.readByte());
+                } else if (type == MatchServer.END) {
+                    int[] scores = new int[in.readByte()];
+                    for (int i = 0; i < scores.length; i++) {
+                        scores[i] = in.readShort();
+                    }
+                    listener.matchEnded(scores);
+                    return;
+                } else {
+                    throw new IOException("Unknown message type " + type);
+                }
+            }
+        } catch (IOException e) {
+            if (!socket.isClosed()) {
+                System.err.println("Lost the match server: " + e.getMessage());
+            }
+        } finally {
+            try {
+                close();
+            } catch (IOException e) {
+                // nothing left to do
+            }
+        }
+    }
+
+    public void close() throws IOException {
+        socket.close();
+    }
+}
@@ -0,0 +1,141 @@
+import java.io.IOException;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * Starts a MatchServer on loopback and plays many matches on it at once with simulated players.
+ * Every player's clock is skewed by a random amount (up to a few seconds), and each player "clicks" the
+ * target after a reaction time drawn from a SyntheticPlayer, timestamped with its own skewed clock.
+ *
+ * Since we know the reaction time each player meant to have, we can check the server: how often it gives
+ * the point to the player who really was fastest (rounds where the two fastest are within 2 ms are too close
+ * to call and are left out), and how far the reaction time it reports is from the real one.
+ *
+ * Run with: java MatchLoadTest [matches] [players per match] [player]
+ * e.g. java MatchLoadTest 1000 2 gaussian:300:60:0
+ */
+public class MatchLoadTest {
+    private static final long TOO_CLOSE_NANOS = 2_000_000L;
+    private static final long MAX_SKEW_NANOS = 5_000_000_000L;
+
+    public static void main(String[] args) throws Exception {
+        int matches = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int players = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        SyntheticPlayer model = SyntheticPlayer.parse(args.length > 2 ? args[2] : "gaussian:300:60:0");
+
+        MatchServer server = new MatchServer(0);
+        int port = server.getPort();
+        Thread serverThread = new Thread(server, "match-server");
+        serverThread.start();
+
+        // the reaction each player meant to have, per match, round and player
+        int perMatch = (MatchServer.ROUNDS + 1) * players;
+        AtomicLongArray intended = new AtomicLongArray(matches * perMatch);
+
+        AtomicLong judged = new AtomicLong(); // rounds that weren't too close to call
+        AtomicLong correct = new AtomicLong(); // ... of which the server picked the right winner
+        AtomicLong failures = new AtomicLong();
+        LatencyHistogram errorMicros = new LatencyHistogram(); // shared, so recording is synchronized on it
+
+        ScheduledExecutorService clicker = Executors.newScheduledThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()));
+        ExecutorService readers = LeaderboardServer.newConnectionExecutor();
+        CountDownLatch finished = new CountDownLatch(matches * players);
+        long begin = System.nanoTime();
+
+        for (int m = 0; m < matches; m++) {
+            for (int p = 0; p < players; p++) {
+                final int matchId = m;
+                final int player = p;
+                final SplittableRandom rand = new SplittableRandom(matchId * 1_000_003L + p);
+                final long skew = rand.nextLong(-MAX_SKEW_NANOS, MAX_SKEW_NANOS);
+                final MatchClient[] client = new MatchClient[1];
+                final int[] me = new int[1];
+
+                MatchClient.Listener listener = new MatchClient.Listener() {
+                    public void matchStarted(int index, int count) {
+                        me[0] = index;
+                    }
+
+                    public void roundStarted(int round, CircleStore circles, long receivedNanos) {
+                        int target = circles.targetIndex();
+                        int x = circles.getX(target) + circles.getSize(target) / 2;
+                        int y = circles.getY(target) + circles.getSize(target) / 2;
+                        long reaction = Math.max(MatchServer.ROUND_NANOS / 10, model.reactionNanos(rand));
+                        intended.set(matchId * perMatch + round * players + me[0], reaction);
+                        clicker.schedule(() -> {
+                            try {
+                                client[0].hit(round, receivedNanos + reaction, x, y);
+                            } catch (IOException e) {
+                                failures.incrementAndGet();
+                            }
+                        }, reaction, TimeUnit.NANOSECONDS);
+                    }
+
+                    public void pointAwarded(int round, int winner, int reactionMicros) {
+                        if (me[0] != 0) {
+                            return; // one player per match does the checking
+                        }
+                        int best = -1;
+                        long bestNanos = Long.MAX_VALUE;
+                        long secondNanos = Long.MAX_VALUE;
+                        for (int i = 0; i < players; i++) {
+                            long r = intended.get(matchId * perMatch + round * players + i);
+                            if (r < bestNanos) {
+                                secondNanos = bestNanos;
+                                bestNanos = r;
+                                best = i;
+                            } else if (r < secondNanos) {
+                                secondNanos = r;
+                            }
+                        }
+                        if (winner >= 0) {
+                            long real = intended.get(matchId * perMatch + round * players + winner);
+                            synchronized (errorMicros) {
+                                errorMicros.record(Math.abs(reactionMicros - real / 1000));
+                            }
+                        }
+                        if (secondNanos - bestNanos >= TOO_CLOSE_NANOS) {
+                            judged.incrementAndGet();
+                            if (winner == best) {
+                                correct.incrementAndGet();
+                            }
+                        }
+                    }
+                };
+
+                readers.execute(() -> {
+                    try {
+                        client[0] = new MatchClient("127.0.0.1", port, listener, skew);
+                        client[0].join(matchId, players);
+                        client[0].run();
+                    } catch (IOException e) {
+                        failures.incrementAndGet();
+                    } finally {
+                        finished.countDown();
+                    }
+                });
+            }
+        }
+
+        finished.await();
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        clicker.shutdown();
+        readers.shutdown();
+        server.close();
+        serverThread.join();
+
+        System.out.printf("%d matches of %d players (%d finished) in %.2f s: %.0f rounds/s%n", matches, players,
+                server.getMatchesFinished(), seconds, server.getRoundsPlayed() / seconds);
+        System.out.printf("right winner in %.2f%% of %d rounds that weren't too close to call%n",
+                judged.get() == 0 ? 0 : 100.0 * correct.get() / judged.get(), judged.get());
+        System.out.printf("reported reaction off by p50 %.2f ms | p99 %.2f ms | max %.2f ms | %d failed clients%n",
+                errorMicros.getValueAtPercentile(50) / 1000.0, errorMicros.getValueAtPercentile(99) / 1000.0,
+                errorMicros.getMax() / 1000.0, failures.get());
+    }
+}
@@ -0,0 +1,149 @@
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.*;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*
+ * The play area for a head-to-head match (see MatchServer).
+ * The circles come from the server instead of a GameEngine, and clicks on the target are sent back to it
+ * with the time they happened. The server decides who scored, and this panel just shows it.
+ */
+class MatchPanel extends JPanel {
+    private final JLabel statusLabel; // shows the round, who won the last one, and the scores at the end
+    private final CircleStore circles = new CircleStore(); // the current round's circles, only used on the EDT
+    private volatile MatchClient client; // set by the client thread, read by the EDT
+    private final AtomicBoolean inMatch = new AtomicBoolean(); // true from startMatch() until the client thread ends
+    private int round = 0;
+    private volatile int player = -1; // our player number in the match, set by the client thread, read by the EDT
+    private boolean clicked = true; // whether we already clicked this round (only the first click counts)
+
+    public MatchPanel(JLabel statusLabel) {
+        this.statusLabel = statusLabel;
+        this.setPreferredSize(new Dimension(GameEngine.WIDTH, GameEngine.HEIGHT));
+        this.setBackground(Color.WHITE);
+        this.addMouseListener(new ClickListener());
+    }
+
+    // Connects to the server and joins the match from GameConfig. Does nothing if a match is already going.
+    public void startMatch() {
+        if (!inMatch.compareAndSet(false, true)) {
+            return; // client is only set once the connection is made, so it can't tell us a match is already starting
+        }
+        statusLabel.setText("Waiting for " + GameConfig.MATCH_PLAYERS + " players...");
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    client = new MatchClient(GameConfig.MATCH_HOST, GameConfig.MATCH_PORT, new ServerListener());
+                    client.join(GameConfig.MATCH_ID, GameConfig.MATCH_PLAYERS);
+                    client.run();
+                } catch (IOException e) {
+                    setStatus("Could not connect to the match server: " + e.getMessage());
+                } finally {
+                    client = null;
+                    inMatch.set(false);
+                }
+            }
+        }, "match-client");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void setStatus(final String text) {
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                statusLabel.setText(text);
+            }
+        });
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        circles.drawAll(g);
+    }
+
+    // Messages from the server arrive on the client thread, so everything is handed over to the EDT
+    private class ServerListener implements MatchClient.Listener {
+        public void matchStarted(final int index, final int players) {
+            player = index;
+            setStatus("You are player " + (index + 1) + " of " + players);
+        }
+
+        public void roundStarted(final int number, CircleStore roundCircles, long receivedNanos) {
+            // copy the circles, since the client reuses its store for the next round
+            final int count = roundCircles.count();
+            final int[] xs = new int[count];
+            final int[] ys = new int[count];
+            final int target = roundCircles.targetIndex();
+            for (int i = 0; i < count; i++) {
+                xs[i] = roundCircles.getX(i);
+                ys[i] = roundCircles.getY(i);
+            }
+            SwingUtilities.invokeLater(new Runnable() {
+                public void run() {
+                    circles.reset(count);
+                    for (int i = 0; i < count; i++) {
+                        circles.add(xs[i], ys[i], GameEngine.CIRCLE_SIZE, i == target);
+                    }
+                    round = number;
+                    clicked = false;
+                    statusLabel.setText("Round " + number + " of " + MatchServer.ROUNDS);
+                    repaint();
+                }
+            });
+        }
+
+        public void pointAwarded(int number, int winner, int reactionMicros) {
+            if (winner < 0) {
+                setStatus("Round " + number + ": nobody hit the target");
+            } else {
+                setStatus("Round " + number + ": " + (winner == player ? "you" : "player " + (winner + 1))
+                        + " won with " + (reactionMicros / 1000) + " ms");
+            }
+        }
+
+        public void matchEnded(int[] scores) {
+            StringBuilder text = new StringBuilder("Match over. Scores:");
+            for (int i = 0; i < scores.length; i++) {
+                text.append(i == player ? " you " : " player " + (i + 1) + " ").append(scores[i]);
+            }
+            setStatus(text.toString());
+        }
+    }
+
+    // Like GamePanel, a hit counts when the button goes down, or on mouseClicked with -Dreflex.input=click
+    public class ClickListener extends MouseAdapter {
+        public void mousePressed(MouseEvent e) {
+            if (GameConfig.INPUT_ON_PRESS) {
+                handle(e);
+            }
+        }
+
+        public void mouseClicked(MouseEvent e) {
+            if (!GameConfig.INPUT_ON_PRESS) {
+                handle(e);
+            }
+        }
+
+        private void handle(MouseEvent e) {
+            MatchClient current = client;
+            if (current == null || clicked) {
+                return;
+            }
+            // same queue delay correction as GamePanel: getWhen() is when the click really happened
+            long queueDelayMillis = Math.max(0, System.currentTimeMillis() - e.getWhen());
+            long clickNanos = current.clock() - queueDelayMillis * 1_000_000L;
+            int index = circles.findTopmost(e.getX(), e.getY());
+            if (index < 0 || !circles.isTarget(index)) {
+                return; // the server would ignore it anyway
+            }
+            clicked = true;
+            try {
+                current.hit(round, clickNanos, e.getX(), e.getY());
+            } catch (IOException ex) {
+                statusLabel.setText("Lost the match server: " + ex.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,496 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/*
+ * The authoritative server for head-to-head matches.
+ * For each match it decides every round's circles, sends them to all players at the same moment,
+ * and gives the point to whoever clicked the target fastest.
+ *
+ * Players' clocks don't agree, so the server measures each one: it sends PINGs with its own time, the client
+ * answers with its time, and from the round trip the server works out the client's clock offset (and the
+ * one-way delay, half the round trip) the way NTP does, keeping the sample with the shortest round trip.
+ * A hit's reaction time is then: the click time moved onto the server's clock, minus the moment the round
+ * reached that client.
+ *
+ * Everything runs on one thread with one Selector. Each connection gets its read and write buffers (direct
+ * buffers) when it connects, and messages are small fixed-size binary records:
+ *
+ *   client -> server   JOIN  'J' int match, byte players        (join a match, which starts once it is full)
+ *                      PONG  'P' long server nanos, long client nanos
+ *                      HIT   'H' int round, long client nanos, short x, short y
+ *   server -> client   START 'S' byte your player number, byte players
+ *                      PING  'p' long server nanos
+ *                      ROUND 'R' int round, short circles, short target, then circles x (short x, short y)
+ *                      POINT 'W' int round, byte winner (-1 if nobody hit), int winner's reaction in microseconds
+ *                      END   'E' byte players, then a short score for each player
+ *
+ * Run with: java MatchServer [port]
+ */
+public class MatchServer implements Runnable, AutoCloseable {
+    public static final int DEFAULT_PORT = 7272;
+
+    public static final byte JOIN = 'J';
+    public static final byte PONG = 'P';
+    public static final byte HIT = 'H';
+    public static final byte START = 'S';
+    public static final byte PING = 'p';
+    public static final byte ROUND = 'R';
+    public static final byte POINT = 'W';
+    public static final byte END = 'E';
+
+    public static final int JOIN_SIZE = 6;
+    public static final int PONG_SIZE = 17;
+    public static final int HIT_SIZE = 17;
+
+    public static final int ROUNDS = 10; // rounds per match
+    public static final int CIRCLES = 5; // circles per round
+    public static final long ROUND_NANOS = 1_500_000_000L; // how long players have to click
+    private static final long GAP_NANOS = 500_000_000L; // pause between rounds
+    private static final int PINGS = 5; // pings sent before the first round
+    private static final long PING_INTERVAL_NANOS = 40_000_000L;
+    private static final long MIN_REACTION_NANOS = 80_000_000L; // faster than this is a guess, not a reaction
+
+    private static final int READ_BUFFER_SIZE = 256;
+    private static final int WRITE_BUFFER_SIZE = 4096;
+
+    // One connected player
+    private static class Connection {
+        final SocketChannel channel;
+        final ByteBuffer in = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        final ByteBuffer out = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+        SelectionKey key;
+        Match match;
+        int player;
+        boolean left; // disconnected; nothing more is sent to it
+        long offsetNanos; // client clock minus server clock
+        long oneWayNanos; // half the shortest round trip seen
+        long bestRoundTrip = Long.MAX_VALUE;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    // One match between a fixed number of players
+    private class Match {
+        final int id;
+        final Connection[] players;
+        final int[] scores;
+        final long[] reactions; // each player's reaction this round, or -1 if they haven't hit the target
+        final CircleStore circles = new CircleStore();
+        final RoundLayouts layouts;
+        int joined = 0;
+        boolean started = false;
+        boolean finished = false;
+        int round = 0;
+        int pingsSent = 0;
+        boolean roundOpen = false;
+        long roundStartNanos;
+        int timerGeneration = 0; // bumped on every schedule(), so older entries in the timer queue can be skipped
+
+        Match(int id, int size) {
+            this.id = id;
+            this.players = new Connection[size];
+            this.scores = new int[size];
+            this.reactions = new long[size];
+            this.layouts = new RoundLayouts(id * 31L + System.nanoTime(), CIRCLES, GameEngine.WIDTH, GameEngine.HEIGHT,
+                    GameEngine.CIRCLE_SIZE);
+        }
+    }
+
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final Map<Integer, Match> matches = new HashMap<>();
+
+    /*
+     * When each match next needs attention. Rescheduling a match doesn't take its old entry out of the queue, which
+     * would mean a linear search; the old entry is left in and skipped when it comes up, since its generation
+     * no longer matches the match's. Each match has at most one live entry, and stale ones only last until
+     * their deadline passes, so the queue stays about as big as the number of matches.
+     */
+    private static class Timer {
+        final Match match;
+        final long deadline;
+        final int generation;
+
+        Timer(Match match, long deadline, int generation) {
+            this.match = match;
+            this.deadline = deadline;
+            this.generation = generation;
+        }
+
+        boolean isStale() {
+            return match.finished || generation != match.timerGeneration;
+        }
+    }
+
+    private final PriorityQueue<Timer> timers = new PriorityQueue<>((a, b) -> Long.compare(a.deadline, b.deadline));
+    private volatile boolean running = true;
+
+    // statistics
+    private long roundsPlayed = 0;
+    private long matchesFinished = 0;
+
+    public MatchServer(int port) throws IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress("127.0.0.1", port), 4096);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    public int getPort() throws IOException {
+        return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+    }
+
+    public synchronized long getRoundsPlayed() {
+        return roundsPlayed;
+    }
+
+    public synchronized long getMatchesFinished() {
+        return matchesFinished;
+    }
+
+    // The event loop: waits for network events or the next match deadline, whichever comes first
+    public void run() {
+        try {
+            while (running) {
+                long now = System.nanoTime();
+                while (!timers.isEmpty() && (timers.peek().isStale() || timers.peek().deadline <= now)) {
+                    Timer timer = timers.poll();
+                    if (!timer.isStale()) {
+                        timer.match.timerGeneration++; // it has fired, so it no longer counts as scheduled
+                        onDeadline(timer.match, now);
+                    }
+                }
+                long waitMillis = timers.isEmpty() ? 100 : Math.max(1, (timers.peek().deadline - now) / 1_000_000);
+                selector.select(waitMillis);
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        Connection connection = (Connection) key.attachment();
+                        if (key.isReadable()) {
+                            read(connection);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            flush(connection);
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            if (running) {
+                System.err.println("Match server stopped: " + e.getMessage());
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            Connection connection = new Connection(channel);
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+        }
+    }
+
+    // Reads whatever arrived and handles every complete message in it
+    private void read(Connection c) {
+        try {
+            if (c.channel.read(c.in) < 0) {
+                disconnect(c);
+                return;
+            }
+        } catch (IOException e) {
+            disconnect(c);
+            return;
+        }
+        c.in.flip();
+        long now = System.nanoTime();
+        while (c.in.remaining() > 0) {
+            byte type = c.in.get(c.in.position());
+            int size = type == JOIN ? JOIN_SIZE : type == PONG ? PONG_SIZE : type == HIT ? HIT_SIZE : -1;
+            if (size < 0) {
+                disconnect(c); // not our protocol
+                return;
+            }
+            if (c.in.remaining() < size) {
+                break; // wait for the rest of the message
+            }
+            c.in.get(); // the type
+            if (type == JOIN) {
+                join(c, c.in.getInt(), c.in.get());
+            } else if (type == PONG) {
+                pong(c, c.in.getLong(), c.in.getLong(), now);
+            } else {
+                hit(c, c.in.getInt(), c.in.getLong(), c.in.getShort(), c.in.getShort(), now);
+            }
+        }
+        c.in.compact();
+    }
+
+    private void join(Connection c, int matchId, int size) {
+        if (c.match != null || size < 2 || size > 16) {
+            disconnect(c);
+            return;
+        }
+        Match match = matches.get(matchId);
+        if (match == null) {
+            match = new Match(matchId, size);
+            matches.put(matchId, match);
+        }
+        if (match.joined == match.players.length) {
+            disconnect(c); // match already full
+            return;
+        }
+        c.match = match;
+        c.player = match.joined;
+        match.players[match.joined++] = c;
+        if (match.joined == match.players.length) {
+            match.started = true;
+            for (Connection p : match.players) {
+                p.out.put(START).put((byte) p.player).put((byte) match.players.length);
+                flush(p);
+            }
+            schedule(match, System.nanoTime());
+        }
+    }
+
+    // Updates the client's clock offset if this round trip was the quickest so far (so the least distorted)
+    private void pong(Connection c, long serverSent, long clientNanos, long now) {
+        long roundTrip = now - serverSent;
+        if (roundTrip >= 0 && roundTrip < c.bestRoundTrip) {
+            c.bestRoundTrip = roundTrip;
+            c.oneWayNanos = roundTrip / 2;
+            c.offsetNanos = clientNanos - (serverSent + c.oneWayNanos);
+        }
+    }
+
+    private void hit(Connection c, int round, long clientNanos, int x, int y, long now) {
+        Match match = c.match;
+        if (match == null || match.finished || !match.roundOpen || round != match.round || match.reactions[c.player] >= 0) {
+            return; // late, early, or already counted
+        }
+        int index = match.circles.findTopmost(x, y);
+        if (index < 0 || !match.circles.isTarget(index)) {
+            return; // missed clicks don't count against you, they just don't score
+        }
+        // the click on the server's clock, minus when the round reached this player
+        long reaction = (clientNanos - c.offsetNanos) - (match.roundStartNanos + c.oneWayNanos);
+        if (reaction < MIN_REACTION_NANOS || reaction > ROUND_NANOS) {
+            return;
+        }
+        match.reactions[c.player] = reaction;
+
+        // if everyone still playing has hit, there's no need to wait for the end of the round
+        for (Connection p : match.players) {
+            if (!p.left && match.reactions[p.player] < 0) {
+                return;
+            }
+        }
+        endRound(match, now);
+    }
+
+    // Called when a match's deadline comes up: the next ping, the next round, or the end of a round
+    private void onDeadline(Match match, long now) {
+        if (match.pingsSent < PINGS) {
+            for (Connection p : match.players) {
+                if (p.left) {
+                    continue;
+                }
+                p.out.put(PING).putLong(System.nanoTime());
+                flush(p);
+            }
+            match.pingsSent++;
+            schedule(match, now + PING_INTERVAL_NANOS);
+        } else if (match.roundOpen) {
+            endRound(match, now);
+        } else {
+            startRound(match, now);
+        }
+    }
+
+    private void startRound(Match match, long now) {
+        match.round++;
+        CircleStore circles = match.circles;
+        match.layouts.next(circles);
+        int target = circles.targetIndex();
+        java.util.Arrays.fill(match.reactions, -1);
+
+        // put the round into every player's buffer first, then send them all, so they go out together
+        for (Connection p : match.players) {
+            if (p.left) {
+                continue;
+            }
+            p.out.put(ROUND).putInt(match.round).putShort((short) CIRCLES).putShort((short) target);
+            for (int i = 0; i < CIRCLES; i++) {
+                p.out.putShort((short) circles.getX(i)).putShort((short) circles.getY(i));
+            }
+            // a ping with every round keeps the clock offsets up to date
+            p.out.put(PING).putLong(System.nanoTime());
+        }
+        match.roundStartNanos = System.nanoTime();
+        for (Connection p : match.players) {
+            flush(p);
+        }
+        match.roundOpen = true;
+        schedule(match, now + ROUND_NANOS);
+    }
+
+    private void endRound(Match match, long now) {
+        match.roundOpen = false;
+        int winner = -1;
+        for (int i = 0; i < match.reactions.length; i++) {
+            if (match.reactions[i] >= 0 && (winner < 0 || match.reactions[i] < match.reactions[winner])) {
+                winner = i;
+            }
+        }
+        if (winner >= 0) {
+            match.scores[winner]++;
+        }
+        int reactionMicros = winner >= 0 ? (int) (match.reactions[winner] / 1000) : 0;
+        for (Connection p : match.players) {
+            if (p.left) {
+                continue;
+            }
+            p.out.put(POINT).putInt(match.round).put((byte) winner).putInt(reactionMicros);
+            flush(p);
+        }
+        synchronized (this) {
+            roundsPlayed++;
+        }
+        if (match.finished) {
+            return; // a player left while we sent the point, and that ended the match
+        }
+
+        if (match.round < ROUNDS) {
+            schedule(match, now + GAP_NANOS);
+        } else {
+            finish(match);
+        }
+    }
+
+    // Sends everyone still connected the final scores, and forgets the match
+    private void finish(Match match) {
+        match.finished = true; // before sending, so a player leaving during the sends doesn't finish it again
+        for (Connection p : match.players) {
+            if (p.left) {
+                continue;
+            }
+            p.out.put(END).put((byte) match.players.length);
+            for (int score : match.scores) {
+                p.out.putShort((short) score);
+            }
+            flush(p);
+        }
+        matches.remove(match.id);
+        synchronized (this) {
+            matchesFinished++;
+        }
+    }
+
+    // Makes deadline the match's only live timer. A finished match is never scheduled again.
+    private void schedule(Match match, long deadline) {
+        if (match.finished) {
+            return;
+        }
+        match.timerGeneration++;
+        timers.add(new Timer(match, deadline, match.timerGeneration));
+    }
+
+    // Writes as much of the connection's buffer as the socket takes, and asks to be told when it can take more
+    private void flush(Connection c) {
+        if (!c.channel.isOpen()) {
+            return;
+        }
+        c.out.flip();
+        try {
+            c.channel.write(c.out);
+        } catch (IOException e) {
+            c.out.clear();
+            disconnect(c);
+            return;
+        }
+        boolean pending = c.out.hasRemaining();
+        c.out.compact();
+        if (c.key.isValid()) {
+            c.key.interestOps(pending ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+        }
+    }
+
+    /*
+     * A player who leaves a match that hasn't started gives up their seat, and a match left with nobody waiting is
+     * dropped. A player who leaves a started match forfeits: the match carries on for the others (they can no longer
+     * score), unless fewer than two players are left, in which case it ends there.
+     */
+    private void disconnect(Connection c) {
+        if (c.left) {
+            return;
+        }
+        c.left = true;
+        c.key.cancel();
+        try {
+            c.channel.close();
+        } catch (IOException e) {
+            // already closed
+        }
+
+        Match match = c.match;
+        if (match == null || match.finished) {
+            return;
+        }
+        if (!match.started) {
+            // close up the seats, so the next player to join takes the last one
+            for (int i = c.player; i < match.joined - 1; i++) {
+                match.players[i] = match.players[i + 1];
+                match.players[i].player = i;
+            }
+            match.players[--match.joined] = null;
+            c.match = null;
+            if (match.joined == 0) {
+                matches.remove(match.id);
+            }
+            return;
+        }
+        int playing = 0;
+        for (Connection p : match.players) {
+            if (!p.left) {
+                playing++;
+            }
+        }
+        if (playing < 2) {
+            finish(match);
+        }
+    }
+
+    public void close() throws IOException {
+        running = false;
+        selector.wakeup();
+        serverChannel.close();
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        MatchServer server = new MatchServer(port);
+        System.out.println("Match server listening on 127.0.0.1:" + server.getPort());
+        server.run();
+    }
+}
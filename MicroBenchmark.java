@@ -0,0 +1,119 @@
+import java.lang.management.ManagementFactory;
+
+/*
+ * A small benchmark harness, in the spirit of JMH.
+ * A benchmark is run in batches whose size is picked so one batch takes about a millisecond, for a few
+ * warmup iterations and then a few measured iterations of a fixed length. For every measured iteration we
+ * record the throughput, and the bytes allocated by the benchmark thread (like JMH's gc profiler).
+ * GameBenchmarks runs each benchmark in its own JVM, so one benchmark's JIT decisions don't affect the next.
+ */
+public class MicroBenchmark {
+    private static final long BATCH_TARGET_NANOS = 1_000_000;
+
+    // The code being measured. It should do the operation ops times and return something that depends on the work,
+    // so the JIT can't remove it.
+    public interface Body {
+        long run(int ops);
+    }
+
+    public static class Result {
+        final String name;
+        final double opsPerSecond;
+        final double opsPerSecondError; // standard deviation over the measured iterations
+        final double nanosPerOp;
+        final double bytesPerOp;
+        final double allocMegabytesPerSecond;
+
+        Result(String name, double opsPerSecond, double opsPerSecondError, double bytesPerOp) {
+            this.name = name;
+            this.opsPerSecond = opsPerSecond;
+            this.opsPerSecondError = opsPerSecondError;
+            this.nanosPerOp = 1e9 / opsPerSecond;
+            this.bytesPerOp = bytesPerOp;
+            this.allocMegabytesPerSecond = bytesPerOp * opsPerSecond / (1024 * 1024);
+        }
+
+        public static String header() {
+            return String.format("%-36s %16s %12s %12s %12s %12s", "Benchmark", "ops/s", "error", "ns/op", "B/op", "alloc MB/s");
+        }
+
+        public String toString() {
+            return String.format("%-36s %16.1f %12.1f %12.2f %12.2f %12.2f",
+                    name, opsPerSecond, opsPerSecondError, nanosPerOp, bytesPerOp, allocMegabytesPerSecond);
+        }
+    }
+
+    static volatile long sink; // results of the benchmark bodies end up here
+
+    private final int warmupIterations;
+    private final int measureIterations;
+    private final long iterationNanos;
+
+    public MicroBenchmark(int warmupIterations, int measureIterations, long iterationMillis) {
+        this.warmupIterations = warmupIterations;
+        this.measureIterations = measureIterations;
+        this.iterationNanos = iterationMillis * 1_000_000L;
+    }
+
+    public Result measure(String name, Body body) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        int batch = calibrate(body);
+        for (int i = 0; i < warmupIterations; i++) {
+            runIteration(body, batch);
+        }
+
+        double[] throughput = new double[measureIterations];
+        long totalOps = 0;
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < measureIterations; i++) {
+            long start = System.nanoTime();
+            long ops = runIteration(body, batch);
+            long elapsed = System.nanoTime() - start;
+            throughput[i] = ops * 1e9 / elapsed;
+            totalOps += ops;
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        double mean = 0;
+        for (double t : throughput) {
+            mean += t;
+        }
+        mean /= measureIterations;
+        double variance = 0;
+        for (double t : throughput) {
+            variance += (t - mean) * (t - mean);
+        }
+        double error = measureIterations > 1 ? Math.sqrt(variance / (measureIterations - 1)) : 0;
+
+        return new Result(name, mean, error, (double) allocated / totalOps);
+    }
+
+    // Runs whole batches until the iteration time is used up, and returns how many operations were done
+    private long runIteration(Body body, int batch) {
+        long end = System.nanoTime() + iterationNanos;
+        long ops = 0;
+        long result = 0;
+        do {
+            result += body.run(batch);
+            ops += batch;
+        } while (System.nanoTime() < end);
+        sink = result;
+        return ops;
+    }
+
+    // Doubles the batch size until one batch takes about BATCH_TARGET_NANOS
+    private static int calibrate(Body body) {
+        int batch = 1;
+        while (batch < (1 << 24)) {
+            long start = System.nanoTime();
+            sink = body.run(batch);
+            if (System.nanoTime() - start >= BATCH_TARGET_NANOS) {
+                break;
+            }
+            batch *= 2;
+        }
+        return batch;
+    }
+}
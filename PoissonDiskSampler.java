@@ -0,0 +1,157 @@
+import java.util.Random;
+
+/*
+ * Bridson's Poisson disk sampling: fills a rectangle with random points that are all at least minDistance apart,
+ * until no more fit. It never throws a point away and starts over, so the time it takes only grows with the
+ * number of points, not with how crowded the rectangle gets.
+ *
+ * A background grid with cells of minDistance / sqrt(2) holds at most one point per cell, so checking a candidate
+ * only looks at the 5x5 cells around it. Points are kept as ints, and the distance check is done on the ints,
+ * so rounding can never bring two points closer than minDistance.
+ * Everything is allocated in the constructor, so sampling creates no garbage.
+ *
+ * When only a few points are wanted, filling the whole rectangle is wasted work, so sampleSparse() just throws
+ * random points at it (using the same grid to check them) and gives up after a fixed number of throws.
+ */
+public class PoissonDiskSampler {
+    private static final int CANDIDATES = 30; // tries around each point before it is retired (Bridson's k)
+
+    private final int width; // points lie in [0, width) x [0, height)
+    private final int height;
+    private final int minDistance;
+    private final long minDistanceSquared;
+    private final double cellsPerPixel; // 1 / cell size
+    private final int cols;
+    private final int rows;
+    private final int[] grid; // index of the point in each cell, or -1
+    private final int[] xs; // at most one point per cell, so cols * rows is always enough
+    private final int[] ys;
+    private final int[] active; // points that may still have room around them
+    private int count = 0;
+
+    public PoissonDiskSampler(int width, int height, int minDistance) {
+        if (width <= 0 || height <= 0 || minDistance <= 0) {
+            throw new IllegalArgumentException("Width, height and distance must be positive");
+        }
+        this.width = width;
+        this.height = height;
+        this.minDistance = minDistance;
+        this.minDistanceSquared = (long) minDistance * minDistance;
+        double cellSize = minDistance / Math.sqrt(2);
+        this.cellsPerPixel = 1 / cellSize;
+        this.cols = (int) Math.ceil(width / cellSize);
+        this.rows = (int) Math.ceil(height / cellSize);
+        this.grid = new int[cols * rows];
+        java.util.Arrays.fill(grid, -1);
+        this.xs = new int[cols * rows];
+        this.ys = new int[cols * rows];
+        this.active = new int[cols * rows];
+    }
+
+    // Replaces the points with a new set, and returns how many there are
+    public int sample(Random rand) {
+        clear();
+        int activeCount = 0;
+
+        add(rand.nextInt(width), rand.nextInt(height));
+        active[activeCount++] = 0;
+
+        while (activeCount > 0) {
+            int slot = rand.nextInt(activeCount);
+            int p = active[slot];
+            boolean placed = false;
+            for (int k = 0; k < CANDIDATES; k++) {
+                // a random point in the ring between minDistance and 2 * minDistance around p
+                double angle = rand.nextDouble() * 2 * Math.PI;
+                double distance = minDistance * (1 + rand.nextDouble());
+                int x = (int) Math.round(xs[p] + Math.cos(angle) * distance);
+                int y = (int) Math.round(ys[p] + Math.sin(angle) * distance);
+                if (x >= 0 && x < width && y >= 0 && y < height && isFarEnough(x, y)) {
+                    active[activeCount++] = count;
+                    add(x, y);
+                    placed = true;
+                    break;
+                }
+            }
+            if (!placed) {
+                active[slot] = active[--activeCount]; // nothing fits around p any more
+            }
+        }
+        return count;
+    }
+
+    /*
+     * Throws up to maxThrows uniformly random points, keeping those far enough from the ones already kept,
+     * until wanted points are kept. Returns how many were kept, which is less than wanted if it ran out of throws.
+     * While the rectangle is mostly empty almost every throw is kept, so this is much cheaper than sample().
+     */
+    public int sampleSparse(Random rand, int wanted, int maxThrows) {
+        clear();
+        for (int i = 0; i < maxThrows && count < wanted && count < xs.length; i++) {
+            int x = rand.nextInt(width);
+            int y = rand.nextInt(height);
+            if (isFarEnough(x, y)) {
+                add(x, y);
+            }
+        }
+        return count;
+    }
+
+    // The most points sample() can ever return
+    public int capacity() {
+        return xs.length;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public int getX(int i) {
+        return xs[i];
+    }
+
+    public int getY(int i) {
+        return ys[i];
+    }
+
+    // Empties the grid by clearing just the cells that have points in them, which is quicker for a sparse sample
+    private void clear() {
+        for (int i = 0; i < count; i++) {
+            grid[cellRow(ys[i]) * cols + cellCol(xs[i])] = -1;
+        }
+        count = 0;
+    }
+
+    private void add(int x, int y) {
+        xs[count] = x;
+        ys[count] = y;
+        grid[cellRow(y) * cols + cellCol(x)] = count;
+        count++;
+    }
+
+    private boolean isFarEnough(int x, int y) {
+        int col = cellCol(x);
+        int row = cellRow(y);
+        for (int r = Math.max(0, row - 2); r <= Math.min(rows - 1, row + 2); r++) {
+            for (int c = Math.max(0, col - 2); c <= Math.min(cols - 1, col + 2); c++) {
+                int q = grid[r * cols + c];
+                if (q >= 0) {
+                    long dx = xs[q] - x;
+                    long dy = ys[q] - y;
+                    if (dx * dx + dy * dy < minDistanceSquared) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    private int cellCol(int x) {
+        return (int) (x * cellsPerPixel);
+    }
+
+    private int cellRow(int y) {
+        return (int) (y * cellsPerPixel);
+    }
+}
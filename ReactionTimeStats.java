@@ -0,0 +1,78 @@
+/*
+ * Keeps the reaction times for one difficulty level.
+ * Each sample goes into a fixed-size ring buffer (so the most recent rounds are kept as raw values)
+ * and into a LatencyHistogram (so percentiles over every round are cheap to read).
+ * Everything is preallocated, so record() can be called from the click handler without creating garbage.
+ */
+public class ReactionTimeStats {
+    private static final int RECENT_CAPACITY = 1024; // how many raw samples we keep
+
+    private final String name; // name of the difficulty these stats are for
+    private final long[] recent = new long[RECENT_CAPACITY]; // ring buffer of reaction times in microseconds
+    private int nextIndex = 0; // where the next sample will be written in the ring buffer
+    private int recentCount = 0; // how many slots of the ring buffer are filled
+
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    public ReactionTimeStats(String name) {
+        this.name = name;
+    }
+
+    // Records one reaction time, given in nanoseconds. It is stored in microseconds.
+    public void record(long reactionNanos) {
+        long micros = reactionNanos / 1000;
+        recent[nextIndex] = micros;
+        nextIndex = (nextIndex + 1) % RECENT_CAPACITY;
+        if (recentCount < RECENT_CAPACITY) {
+            recentCount++;
+        }
+        histogram.record(micros);
+    }
+
+    // Returns the i-th most recent reaction time in microseconds (0 = the latest one)
+    public long getRecent(int i) {
+        if (i < 0 || i >= recentCount) {
+            throw new IndexOutOfBoundsException("No reaction time at index " + i);
+        }
+        int index = (nextIndex - 1 - i + RECENT_CAPACITY) % RECENT_CAPACITY;
+        return recent[index];
+    }
+
+    public int getRecentCount() {
+        return recentCount;
+    }
+
+    // Forgets every sample, e.g. when a new game starts
+    public void reset() {
+        nextIndex = 0;
+        recentCount = 0;
+        histogram.reset();
+    }
+
+    public LatencyHistogram getHistogram() {
+        return histogram;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /*
+     * Builds a short summary such as "p50 312 ms | p90 401 ms | p99 530 ms | max 611 ms (42 hits)".
+     * This creates strings, so it should only be called once the game has ended.
+     */
+    public String summary() {
+        if (histogram.getTotalCount() == 0) {
+            return "no hits yet";
+        }
+        return "p50 " + millis(histogram.getValueAtPercentile(50))
+                + " | p90 " + millis(histogram.getValueAtPercentile(90))
+                + " | p99 " + millis(histogram.getValueAtPercentile(99))
+                + " | max " + millis(histogram.getMax())
+                + " (" + histogram.getTotalCount() + " hits)";
+    }
+
+    private static String millis(long micros) {
+        return (micros / 1000) + " ms";
+    }
+}
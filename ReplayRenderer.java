@@ -0,0 +1,453 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.imageio.ImageIO;
+
+/*
+ * Turns a session recorded by InputRecorder into a sequence of frames, without a display: what GamePanel showed
+ * (the circles, and the score, time, misses and accuracy labels above them), with the player's clicks drawn on top.
+ * Useful for coaching, or to look at a disputed game frame by frame.
+ *
+ * The recording is first replayed through SessionReplayer, which is quick, to get a timeline: every round's
+ * layout, the labels after every event, and every click. After that each frame only depends on the timeline,
+ * so the frames are split into chunks and rendered (and encoded) by several threads at once, each with its own
+ * BufferedImage, Graphics2D and sprite cache. A single writer takes the chunks in order. Only a few chunks per
+ * thread can be in flight, rendered or waiting for the writer, so memory stays the same however long the game is.
+ *
+ * Run with, for example:
+ *   java ReplayRenderer game.rec out=frames format=png fps=30 session=1 threads=1,2,4
+ * format is png (one file per frame in the out directory), rgb (every frame in one file of raw 24-bit RGB, e.g.
+ * for ffmpeg -f rawvideo -pix_fmt rgb24) or none (render and encode nothing, to measure the drawing alone).
+ * With a list of thread counts the session is rendered once with each (after a warm-up pass), to see how the frame
+ * rate scales.
+ *
+ * Circles of a moving-target game are drawn where they were when their round started.
+ */
+public class ReplayRenderer {
+    private static final int HUD_HEIGHT = 30; // the label bar above the game area
+    private static final int WIDTH = GameEngine.WIDTH;
+    private static final int HEIGHT = GameEngine.HEIGHT + HUD_HEIGHT;
+    private static final long CLICK_SHOWN_NANOS = 1_000_000_000L; // how long a click stays on screen
+    private static final int FRAMES_PER_CHUNK = 4;
+    private static final int CHUNKS_PER_THREAD = 2; // how many chunks each thread can have in flight
+    private static final Font HUD_FONT = new Font("Dialog", Font.BOLD, 12); // the Metal look and feel's label font
+    private static final Color HUD_BACKGROUND = new Color(238, 238, 238);
+
+    /*
+     * What happened in one session, as the replay went. state i applies from stateTime[i] until the next one.
+     * Times are nanoTimes from the recording.
+     */
+    private static class Timeline implements SessionReplayer.Observer {
+        private final int wantedSession;
+        private int session = 0;
+        long start = -1;
+        long end = -1;
+
+        final ArrayList<CircleStore> layouts = new ArrayList<>();
+        private long layoutStart; // round start of the last layout copied
+
+        long[] stateTime = new long[64];
+        int[] score = new int[64];
+        int[] misses = new int[64];
+        int[] accuracy = new int[64];
+        int[] timeLeft = new int[64];
+        int[] layout = new int[64]; // index into layouts
+        int states = 0;
+
+        long[] clickTime = new long[64];
+        int[] clickX = new int[64];
+        int[] clickY = new int[64];
+        boolean[] clickHit = new boolean[64];
+        int clicks = 0;
+
+        Timeline(int wantedSession) {
+            this.wantedSession = wantedSession;
+        }
+
+        public void sessionStarted(GameEngine engine, long nanos) {
+            session++;
+            if (session == wantedSession) {
+                start = nanos;
+                copyLayout(engine);
+                addState(engine, nanos);
+            }
+        }
+
+        public void eventReplayed(GameEngine engine, int type, long nanos) {
+            if (session == wantedSession && end < 0) {
+                if (engine.getRoundStartNanos() != layoutStart) {
+                    copyLayout(engine);
+                }
+                addState(engine, nanos);
+            }
+        }
+
+        public void clicked(GameEngine engine, int x, int y, int result, long clickNanos) {
+            if (session != wantedSession || end >= 0 || result == GameEngine.IGNORED) {
+                return;
+            }
+            if (clicks == clickTime.length) {
+                int capacity = clicks * 2;
+                clickTime = Arrays.copyOf(clickTime, capacity);
+                clickX = Arrays.copyOf(clickX, capacity);
+                clickY = Arrays.copyOf(clickY, capacity);
+                clickHit = Arrays.copyOf(clickHit, capacity);
+            }
+            clickTime[clicks] = clickNanos;
+            clickX[clicks] = x;
+            clickY[clicks] = y;
+            clickHit[clicks] = result == GameEngine.HIT;
+            clicks++;
+        }
+
+        public void sessionEnded(GameEngine engine, long nanos) {
+            if (session == wantedSession) {
+                end = nanos;
+            }
+        }
+
+        private void copyLayout(GameEngine engine) {
+            CircleStore circles = engine.getCircles();
+            CircleStore copy = new CircleStore();
+            copy.reset(circles.count());
+            for (int i = 0; i < circles.count(); i++) {
+                copy.add(circles.getX(i), circles.getY(i), circles.getSize(i), circles.isTarget(i));
+            }
+            layouts.add(copy);
+            layoutStart = engine.getRoundStartNanos();
+        }
+
+        private void addState(GameEngine engine, long nanos) {
+            if (states == stateTime.length) {
+                int capacity = states * 2;
+                stateTime = Arrays.copyOf(stateTime, capacity);
+                score = Arrays.copyOf(score, capacity);
+                misses = Arrays.copyOf(misses, capacity);
+                accuracy = Arrays.copyOf(accuracy, capacity);
+                timeLeft = Arrays.copyOf(timeLeft, capacity);
+                layout = Arrays.copyOf(layout, capacity);
+            }
+            stateTime[states] = nanos;
+            score[states] = engine.getScore();
+            misses[states] = engine.getMisses();
+            accuracy[states] = engine.getAccuracy();
+            timeLeft[states] = engine.getTimeLeft();
+            layout[states] = layouts.size() - 1;
+            states++;
+        }
+
+        // Index of the last entry of times[0, count) at or before t, or -1
+        static int lastAtOrBefore(long[] times, int count, long t) {
+            int low = 0;
+            int high = count - 1;
+            int found = -1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (times[middle] <= t) {
+                    found = middle;
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return found;
+        }
+    }
+
+    // One rendering thread's own things to draw with
+    private static class FrameCanvas {
+        final BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        final Graphics2D g = image.createGraphics();
+        final CircleSprites sprites = new CircleSprites();
+        final int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        final ByteArrayOutputStream png = new ByteArrayOutputStream();
+    }
+
+    private final Timeline timeline;
+    private final long frameNanos;
+    private final int frameCount;
+
+    public ReplayRenderer(Timeline timeline, int fps) {
+        this.timeline = timeline;
+        this.frameNanos = 1_000_000_000L / fps;
+        this.frameCount = (int) ((timeline.end - timeline.start) / frameNanos) + 1;
+    }
+
+    // Draws the frame at time t into the canvas
+    void render(FrameCanvas canvas, long t) {
+        Graphics2D g = canvas.g;
+        Timeline tl = timeline;
+        int state = Math.max(0, Timeline.lastAtOrBefore(tl.stateTime, tl.states, t));
+
+        // the labels, spaced out and centred like the FlowLayout in GameWindow's top panel
+        g.setColor(HUD_BACKGROUND);
+        g.fillRect(0, 0, WIDTH, HUD_HEIGHT);
+        g.setFont(HUD_FONT);
+        g.setColor(Color.BLACK);
+        String[] labels = {
+            "Score: " + tl.score[state], "Time: " + tl.timeLeft[state], "Misses: " + tl.misses[state],
+            "Accuracy: " + tl.accuracy[state] + "%"
+        };
+        FontMetrics metrics = g.getFontMetrics();
+        int gap = 5;
+        int total = -gap;
+        for (String label : labels) {
+            total += metrics.stringWidth(label) + gap;
+        }
+        int x = (WIDTH - total) / 2;
+        int baseline = (HUD_HEIGHT + metrics.getAscent() - metrics.getDescent()) / 2;
+        for (String label : labels) {
+            g.drawString(label, x, baseline);
+            x += metrics.stringWidth(label) + gap;
+        }
+
+        // the game area, with the round's circles
+        g.translate(0, HUD_HEIGHT);
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, GameEngine.WIDTH, GameEngine.HEIGHT);
+        if (t < tl.end) {
+            CircleStore circles = tl.layouts.get(tl.layout[state]);
+            circles.drawAll(g, 0, 0, GameEngine.WIDTH, GameEngine.HEIGHT, canvas.sprites);
+        }
+
+        // clicks from the last second, fading out: green for hits, red for misses
+        for (int c = Timeline.lastAtOrBefore(tl.clickTime, tl.clicks, t); c >= 0; c--) {
+            long age = t - tl.clickTime[c];
+            if (age >= CLICK_SHOWN_NANOS) {
+                break;
+            }
+            int alpha = (int) (255 - 200 * age / CLICK_SHOWN_NANOS);
+            g.setColor(tl.clickHit[c] ? new Color(0, 160, 0, alpha) : new Color(220, 0, 0, alpha));
+            int cx = tl.clickX[c];
+            int cy = tl.clickY[c];
+            g.drawLine(cx - 8, cy, cx + 8, cy);
+            g.drawLine(cx, cy - 8, cx, cy + 8);
+            g.drawOval(cx - 5, cy - 5, 10, 10);
+        }
+        g.translate(0, -HUD_HEIGHT);
+    }
+
+    // Encodes the frame in the canvas the way the output wants it
+    byte[] encode(FrameCanvas canvas, String format) {
+        if (format.equals("png")) {
+            canvas.png.reset();
+            try {
+                ImageIO.write(canvas.image, "png", canvas.png);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return canvas.png.toByteArray();
+        } else if (format.equals("rgb")) {
+            int[] pixels = canvas.pixels;
+            byte[] rgb = new byte[pixels.length * 3];
+            for (int i = 0, j = 0; i < pixels.length; i++, j += 3) {
+                int p = pixels[i];
+                rgb[j] = (byte) (p >> 16);
+                rgb[j + 1] = (byte) (p >> 8);
+                rgb[j + 2] = (byte) p;
+            }
+            return rgb;
+        }
+        return null;
+    }
+
+    /*
+     * Renders every frame with the given number of threads and writes them to out (which can be null for format
+     * none). Returns how long it took in nanoseconds.
+     *
+     * Chunk k goes into slot k % slots once it is done, and the writer takes them in order. A thread has to get a
+     * permit before it starts a chunk, and the writer gives one back after writing a chunk, so there are never
+     * more chunks in flight than slots, and a slot is always free again by the time the next chunk for it is done.
+     * If a thread or the writer fails, the other threads are told to stop and given permits so none stays waiting,
+     * and they are all joined before this returns.
+     */
+    public long renderAll(int threads, final String format, Path out) throws IOException, InterruptedException {
+        final int chunks = (frameCount + FRAMES_PER_CHUNK - 1) / FRAMES_PER_CHUNK;
+        final int slots = threads * CHUNKS_PER_THREAD;
+        final byte[][][] done = new byte[slots][][];
+        final Semaphore permits = new Semaphore(slots);
+        final AtomicInteger nextChunk = new AtomicInteger();
+        final AtomicBoolean stop = new AtomicBoolean();
+        final Throwable[] failure = new Throwable[1];
+
+        long startNanos = System.nanoTime();
+        Thread[] workers = new Thread[threads];
+        for (int w = 0; w < threads; w++) {
+            workers[w] = new Thread(new Runnable() {
+                public void run() {
+                    FrameCanvas canvas = new FrameCanvas();
+                    try {
+                        while (true) {
+                            permits.acquire();
+                            int chunk = nextChunk.getAndIncrement();
+                            if (chunk >= chunks || stop.get()) {
+                                permits.release();
+                                return;
+                            }
+                            int first = chunk * FRAMES_PER_CHUNK;
+                            int count = Math.min(FRAMES_PER_CHUNK, frameCount - first);
+                            byte[][] frames = new byte[count][];
+                            for (int f = 0; f < count; f++) {
+                                render(canvas, timeline.start + (first + f) * frameNanos);
+                                frames[f] = encode(canvas, format);
+                            }
+                            synchronized (done) {
+                                done[chunk % slots] = frames;
+                                done.notifyAll();
+                            }
+                        }
+                    } catch (Throwable t) {
+                        synchronized (done) {
+                            failure[0] = t;
+                            done.notifyAll();
+                        }
+                    }
+                }
+            }, "replay-render-" + w);
+            workers[w].setDaemon(true);
+            workers[w].start();
+        }
+
+        FileChannel rgbOut = null;
+        boolean written = false;
+        try {
+            if (format.equals("rgb")) {
+                rgbOut = FileChannel.open(out, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING);
+            } else if (format.equals("png")) {
+                Files.createDirectories(out);
+            }
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                byte[][] frames;
+                synchronized (done) {
+                    while (done[chunk % slots] == null && failure[0] == null) {
+                        done.wait();
+                    }
+                    if (failure[0] != null) {
+                        throw new IOException("Rendering failed", failure[0]);
+                    }
+                    frames = done[chunk % slots];
+                    done[chunk % slots] = null;
+                }
+                for (int f = 0; f < frames.length; f++) {
+                    if (rgbOut != null) {
+                        ByteBuffer buffer = ByteBuffer.wrap(frames[f]);
+                        while (buffer.hasRemaining()) {
+                            rgbOut.write(buffer);
+                        }
+                    } else if (format.equals("png")) {
+                        String name = String.format("frame-%06d.png", chunk * FRAMES_PER_CHUNK + f);
+                        Files.write(out.resolve(name), frames[f]);
+                    }
+                }
+                permits.release();
+            }
+            written = true;
+        } finally {
+            if (!written) {
+                // enough permits for every thread to get one, see stop and return
+                stop.set(true);
+                permits.release(threads);
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            if (rgbOut != null) {
+                rgbOut.close();
+            }
+        }
+        return System.nanoTime() - startNanos;
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        if (args.length < 1) {
+            System.out.println("Usage: java ReplayRenderer <recording> [out=PATH] [format=png|rgb|none] [fps=30] "
+                    + "[session=1] [threads=N,N,...]");
+            return;
+        }
+        String out = null;
+        String format = "png";
+        int fps = 30;
+        int session = 1;
+        String threadCounts = String.valueOf(Runtime.getRuntime().availableProcessors());
+
+        // arguments after the recording look like name=value
+        for (int i = 1; i < args.length; i++) {
+            String[] kv = args[i].split("=", 2);
+            if (kv.length != 2) {
+                throw new IllegalArgumentException("Arguments should look like name=value, got " + args[i]);
+            }
+            if (kv[0].equals("out")) {
+                out = kv[1];
+            } else if (kv[0].equals("format")) {
+                format = kv[1];
+            } else if (kv[0].equals("fps")) {
+                fps = Integer.parseInt(kv[1]);
+            } else if (kv[0].equals("session")) {
+                session = Integer.parseInt(kv[1]);
+            } else if (kv[0].equals("threads")) {
+                threadCounts = kv[1];
+            } else {
+                throw new IllegalArgumentException("Unknown argument: " + kv[0]);
+            }
+        }
+        if (!format.equals("png") && !format.equals("rgb") && !format.equals("none")) {
+            throw new IllegalArgumentException("format should be png, rgb or none, got " + format);
+        }
+        if (out == null) {
+            out = format.equals("rgb") ? "replay.rgb" : "replay-frames";
+        }
+
+        long start = System.nanoTime();
+        SessionReplayer replayer = new SessionReplayer(Paths.get(args[0]));
+        Timeline timeline = new Timeline(session);
+        replayer.setObserver(timeline);
+        replayer.replay(false, null);
+        if (timeline.start < 0) {
+            System.out.println("The recording has no session " + session);
+            return;
+        }
+        if (timeline.end < 0) {
+            timeline.end = timeline.stateTime[timeline.states - 1]; // the game was not finished
+        }
+        ReplayRenderer renderer = new ReplayRenderer(timeline, fps);
+        System.out.printf("session %d: %.1f s, %d rounds, %d clicks -> %d frames of %dx%d at %d fps (timeline in %.0f ms)%n",
+                session, (timeline.end - timeline.start) / 1e9, timeline.layouts.size(), timeline.clicks,
+                renderer.frameCount, WIDTH, HEIGHT, fps, (System.nanoTime() - start) / 1e6);
+
+        // one pass that isn't timed, so the first thread count isn't also waiting for the JIT
+        renderer.renderAll(Integer.parseInt(threadCounts.split(",")[0].trim()), format, Paths.get(out));
+
+        double singleThread = 0;
+        for (String count : threadCounts.split(",")) {
+            int threads = Integer.parseInt(count.trim());
+            long nanos = renderer.renderAll(threads, format, Paths.get(out));
+            double framesPerSecond = renderer.frameCount / (nanos / 1e9);
+            if (singleThread == 0 && threads == 1) {
+                singleThread = framesPerSecond;
+            }
+            System.out.printf("%2d threads: %.0f frames/s%s%n", threads, framesPerSecond,
+                    singleThread > 0 && threads > 1 ? String.format(" (%.2fx one thread)", framesPerSecond / singleThread) : "");
+        }
+        if (format.equals("rgb")) {
+            System.out.printf("ffmpeg -f rawvideo -pix_fmt rgb24 -s %dx%d -r %d -i %s replay.mp4%n", WIDTH, HEIGHT, fps, out);
+        } else if (format.equals("png")) {
+            System.out.println("frames written to " + out);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ * Decides where each round's circles go and which one is the target.
+ *
+ * Circles are placed with Poisson disk sampling, so no two are closer than their size plus GAP and the target is
+ * never covered. A few circles are placed by throwing random points at a PoissonDiskSampler grid, which is quick
+ * while the area is mostly empty. If that runs out of throws, the whole area is filled with Bridson's algorithm
+ * instead and the circles are picked from those points. If more circles are asked for than fit that way (about 45 in the 600x400 play area), the extra
+ * grey ones go anywhere that doesn't touch the target; they may overlap each other, but never the target.
+ *
+ * Layouts are made one after the other from one seeded Random, so the same seed always gives the same rounds.
+ * With prefetching on, the next round's layout is made on a background thread as soon as the current one is
+ * handed out, so next() only has to copy it. Prefetching doesn't change which layouts come out, only when they
+ * are worked out.
+ */
+public class RoundLayouts {
+    public static final int GAP = 4; // smallest gap between two circles, in pixels
+
+    // Random throws are only tried for up to 1/SPARSE_FRACTION of the sampler's grid cells, with this many throws each
+    private static final int SPARSE_FRACTION = 8;
+    private static final int THROWS_PER_CIRCLE = 4;
+
+    // One thread is enough for every game: a layout takes well under a millisecond to make
+    private static final ExecutorService PREFETCHER = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "layout-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Random rand = new Random();
+    private final int numCircles;
+    private final int circleSize;
+    private final int maxX; // circles' top left corners lie in [0, maxX) x [0, maxY)
+    private final int maxY;
+    private final PoissonDiskSampler sampler;
+
+    // the next layout, ready to be handed out
+    private final int[] nextX;
+    private final int[] nextY;
+    private final int[] order; // used to pick which sampled points to use
+    private int nextTarget;
+
+    private boolean prefetch = false;
+    private Future<?> pending; // the background job making the next layout, or null if it's already made
+
+    public RoundLayouts(long seed, int numCircles, int width, int height, int circleSize) {
+        this.numCircles = numCircles;
+        this.circleSize = circleSize;
+        this.maxX = width - circleSize;
+        this.maxY = height - circleSize;
+        this.sampler = new PoissonDiskSampler(maxX, maxY, circleSize + GAP);
+        this.nextX = new int[numCircles];
+        this.nextY = new int[numCircles];
+        this.order = new int[sampler.capacity()];
+        setSeed(seed);
+    }
+
+    // Starts the layouts over from a new seed
+    public void setSeed(long seed) {
+        await();
+        rand.setSeed(seed);
+        makeNext();
+    }
+
+    // Turns making the next layout on a background thread on or off
+    public void setPrefetch(boolean prefetch) {
+        this.prefetch = prefetch;
+    }
+
+    // Puts the next round's circles into the store, and starts on the one after
+    public void next(CircleStore circles) {
+        await();
+        circles.reset(numCircles);
+        for (int i = 0; i < numCircles; i++) {
+            circles.add(nextX[i], nextY[i], circleSize, i == nextTarget);
+        }
+        if (prefetch) {
+            pending = PREFETCHER.submit(this::makeNext);
+        } else {
+            makeNext(); // on this thread, so it is done before next() returns
+        }
+    }
+
+    // Waits for the background job, if there is one. The job shares our arrays, so we can't stop waiting early.
+    private void await() {
+        if (pending == null) {
+            return;
+        }
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    pending.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Could not make the next layout", e.getCause());
+        } finally {
+            pending = null;
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void makeNext() {
+        int spaced;
+        if (numCircles <= sampler.capacity() / SPARSE_FRACTION
+                && sampler.sampleSparse(rand, numCircles, numCircles * THROWS_PER_CIRCLE) == numCircles) {
+            // the points came out in random order already
+            spaced = numCircles;
+            for (int i = 0; i < spaced; i++) {
+                nextX[i] = sampler.getX(i);
+                nextY[i] = sampler.getY(i);
+            }
+        } else {
+            int points = sampler.sample(rand);
+            spaced = Math.min(points, numCircles);
+
+            // a random choice of the sampled points (a partial Fisher-Yates shuffle)
+            for (int i = 0; i < points; i++) {
+                order[i] = i;
+            }
+            for (int i = 0; i < spaced; i++) {
+                int j = i + rand.nextInt(points - i);
+                int swap = order[i];
+                order[i] = order[j];
+                order[j] = swap;
+                nextX[i] = sampler.getX(order[i]);
+                nextY[i] = sampler.getY(order[i]);
+            }
+        }
+        nextTarget = rand.nextInt(spaced);
+
+        // circles that didn't fit with spacing: anywhere, as long as they keep clear of the target
+        long clearSquared = (long) (circleSize + GAP) * (circleSize + GAP);
+        for (int i = spaced; i < numCircles; i++) {
+            int x;
+            int y;
+            long dx;
+            long dy;
+            do {
+                x = rand.nextInt(maxX);
+                y = rand.nextInt(maxY);
+                dx = x - nextX[nextTarget];
+                dy = y - nextY[nextTarget];
+            } while (dx * dx + dy * dy < clearSquared);
+            nextX[i] = x;
+            nextY[i] = y;
+        }
+    }
+}
@@ -1,7 +1,17 @@
+import javax.swing.SwingUtilities;
+
 public class RunGame {
     public static void main(String[] args) {
+        if (GameConfig.STARTUP_PROBE && java.awt.GraphicsEnvironment.isHeadless()) {
+            StartupProbe.runHeadless(); // see StartupProbe
+            return;
+        }
 
-        GameWindow g1 = new GameWindow();
-        
+        // Swing components should only be created on the EDT, so the window is built there
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                GameWindow g1 = new GameWindow();
+            }
+        });
     }
 }
@@ -0,0 +1,233 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Compares TimingWheelScheduler with a ScheduledThreadPoolExecutor for hosting many game sessions at once.
+ *
+ * First it schedules a million one-shot tasks with delays of up to a minute and cancels them all again, to see
+ * what scheduling and cancelling cost with that many tasks waiting. Then it starts the given number of sessions,
+ * each a GameEngine driven by its own round timer and countdown timer (as in GamePanel), lets them play for a
+ * while, and reports how late the timers fired, how much CPU it took, and how much heap the sessions used.
+ * A session that finishes its game starts another one, with new timers.
+ *
+ * Run with, for example:
+ *   java -Xms3g -Xmx3g SchedulerBenchmark sessions=100000 threads=4 seconds=30 scheduler=both
+ * The wheel uses one TimingWheelScheduler per thread, and the executor uses a pool of that many threads.
+ */
+public class SchedulerBenchmark {
+    private static final int CANCEL_TASKS = 1_000_000;
+
+    // GameScheduler on top of a ScheduledThreadPoolExecutor, with cancelled tasks taken out of its queue
+    private static class ExecutorScheduler implements GameScheduler {
+        final ScheduledThreadPoolExecutor executor;
+
+        ExecutorScheduler(int threads) {
+            executor = new ScheduledThreadPoolExecutor(threads);
+            executor.setRemoveOnCancelPolicy(true);
+        }
+
+        public Task schedule(Runnable task, long delayMillis) {
+            return wrap(executor.schedule(task, delayMillis, TimeUnit.MILLISECONDS));
+        }
+
+        public Task scheduleAtFixedRate(Runnable task, long periodMillis) {
+            return wrap(executor.scheduleAtFixedRate(task, periodMillis, periodMillis, TimeUnit.MILLISECONDS));
+        }
+
+        private static Task wrap(final ScheduledFuture<?> future) {
+            return new Task() {
+                public void cancel() {
+                    future.cancel(false);
+                }
+            };
+        }
+    }
+
+    // Every thread that runs timers records how late they were into its own histogram, in microseconds
+    private static final List<LatencyHistogram> lateness = new ArrayList<>();
+    private static final ThreadLocal<LatencyHistogram> LATENESS = ThreadLocal.withInitial(() -> {
+        LatencyHistogram h = new LatencyHistogram();
+        synchronized (lateness) {
+            lateness.add(h);
+        }
+        return h;
+    });
+
+    // One hosted game, played by timers only
+    private static class Session {
+        final GameEngine engine;
+        final GameScheduler scheduler;
+        final int difficulty;
+        GameScheduler.Task roundTimer;
+        GameScheduler.Task countdown;
+        long startNanos;
+
+        Session(long seed, int difficulty, GameScheduler scheduler) {
+            this.engine = new GameEngine(seed, GameConfig.NUM_CIRCLES);
+            this.difficulty = difficulty;
+            this.scheduler = scheduler;
+        }
+
+        synchronized void start() {
+            startNanos = System.nanoTime();
+            engine.start(difficulty, startNanos);
+            final long roundNanos = GameEngine.roundDelayMillis(difficulty) * 1_000_000L;
+            roundTimer = scheduler.scheduleAtFixedRate(() -> {
+                synchronized (this) {
+                    long now = System.nanoTime();
+                    recordLateness(now - startNanos, roundNanos);
+                    engine.roundElapsed(now);
+                }
+            }, GameEngine.roundDelayMillis(difficulty));
+            countdown = scheduler.scheduleAtFixedRate(() -> {
+                synchronized (this) {
+                    long now = System.nanoTime();
+                    recordLateness(now - startNanos, 1_000_000_000L);
+                    engine.secondElapsed();
+                    if (!engine.isRunning()) {
+                        roundTimer.cancel();
+                        countdown.cancel();
+                        start();
+                    }
+                }
+            }, 1000);
+        }
+
+        /*
+         * How late a timer fired, as the time since it was last due. This assumes it is less than a period late;
+         * counting runs instead would not work, as the wheel skips runs that are more than a period late.
+         */
+        private static void recordLateness(long sinceStart, long periodNanos) {
+            LATENESS.get().record(sinceStart % periodNanos / 1000);
+        }
+
+        synchronized void stop() {
+            roundTimer.cancel();
+            countdown.cancel();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int sessions = 100_000;
+        int threads = 4;
+        int seconds = 30;
+        String which = "both";
+
+        // arguments look like name=value
+        for (String arg : args) {
+            String[] kv = arg.split("=", 2);
+            if (kv.length != 2) {
+                throw new IllegalArgumentException("Arguments should look like name=value, got " + arg);
+            }
+            if (kv[0].equals("sessions")) {
+                sessions = Integer.parseInt(kv[1]);
+            } else if (kv[0].equals("threads")) {
+                threads = Integer.parseInt(kv[1]);
+            } else if (kv[0].equals("seconds")) {
+                seconds = Integer.parseInt(kv[1]);
+            } else if (kv[0].equals("scheduler")) {
+                which = kv[1];
+            } else {
+                throw new IllegalArgumentException("Unknown argument: " + kv[0]);
+            }
+        }
+
+        System.out.println(sessions + " sessions, " + threads + " threads, " + seconds + " s, "
+                + Runtime.getRuntime().availableProcessors() + " cores");
+        if (which.equals("both") || which.equals("wheel")) {
+            TimingWheelScheduler[] wheels = new TimingWheelScheduler[threads];
+            for (int i = 0; i < threads; i++) {
+                wheels[i] = new TimingWheelScheduler("wheel-" + i);
+            }
+            run("wheel", wheels, sessions, seconds);
+            for (TimingWheelScheduler wheel : wheels) {
+                wheel.close();
+            }
+        }
+        if (which.equals("both") || which.equals("executor")) {
+            ExecutorScheduler executor = new ExecutorScheduler(threads);
+            GameScheduler[] schedulers = new GameScheduler[threads];
+            for (int i = 0; i < threads; i++) {
+                schedulers[i] = executor;
+            }
+            run("executor", schedulers, sessions, seconds);
+            executor.executor.shutdown();
+            executor.executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private static void run(String name, GameScheduler[] schedulers, int sessionCount, int seconds)
+            throws InterruptedException {
+        SplittableRandom rand = new SplittableRandom(7);
+        Runnable nothing = () -> {};
+
+        // scheduling and cancelling with a million tasks waiting
+        GameScheduler.Task[] tasks = new GameScheduler.Task[CANCEL_TASKS];
+        long start = System.nanoTime();
+        for (int i = 0; i < CANCEL_TASKS; i++) {
+            tasks[i] = schedulers[i % schedulers.length].schedule(nothing, 1 + rand.nextInt(60_000));
+        }
+        long scheduled = System.nanoTime();
+        for (int i = 0; i < CANCEL_TASKS; i++) {
+            tasks[i].cancel();
+        }
+        long cancelled = System.nanoTime();
+        tasks = null;
+        System.out.printf("%-8s schedule %.0f ns/task, cancel %.0f ns/task (%d tasks waiting)%n", name,
+                (double) (scheduled - start) / CANCEL_TASKS, (double) (cancelled - scheduled) / CANCEL_TASKS,
+                CANCEL_TASKS);
+
+        // hosting sessions; they are started over the first second so their timers don't all fire together
+        long heapBefore = usedHeap();
+        Session[] sessions = new Session[sessionCount];
+        for (int i = 0; i < sessionCount; i++) {
+            final Session session = new Session(rand.nextLong(), rand.nextInt(3), schedulers[i % schedulers.length]);
+            sessions[i] = session;
+            session.scheduler.schedule(session::start, rand.nextInt(1000));
+        }
+        Thread.sleep(2000); // every session has started, and the JIT has had time to warm up
+        long heapUsed = usedHeap() - heapBefore;
+        Thread.sleep(2000); // the full GC in usedHeap() holds up every timer, so give them time to catch up
+        synchronized (lateness) {
+            for (LatencyHistogram h : lateness) {
+                h.reset();
+            }
+        }
+        long cpuBefore = processCpuNanos();
+        Thread.sleep(seconds * 1000L);
+        long cpu = processCpuNanos() - cpuBefore;
+        for (Session session : sessions) {
+            session.stop();
+        }
+
+        LatencyHistogram late = new LatencyHistogram();
+        synchronized (lateness) {
+            for (LatencyHistogram h : lateness) {
+                late.add(h);
+            }
+            lateness.clear();
+        }
+        System.out.printf("%-8s %.0f timer fires/s | late p50 %.2f ms, p99 %.2f ms, p99.9 %.2f ms, max %.2f ms"
+                        + " | CPU %.0f%% of a core | sessions use %d MB%n",
+                name, late.getTotalCount() / (double) seconds,
+                late.getValueAtPercentile(50) / 1000.0, late.getValueAtPercentile(99) / 1000.0,
+                late.getValueAtPercentile(99.9) / 1000.0, late.getMax() / 1000.0,
+                100.0 * cpu / (seconds * 1e9), heapUsed >> 20);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long processCpuNanos() {
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean())
+                .getProcessCpuTime();
+    }
+}
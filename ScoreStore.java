@@ -0,0 +1,426 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/*
+ * Keeps every finished game on disk, so scores survive after the game is closed.
+ *
+ * scores.log  - an append-only log of SessionResults. Each record is RECORD_SIZE bytes and ends with a CRC32,
+ *               so a record that was only half written when the machine crashed can be spotted.
+ * scores.idx  - a memory-mapped index with the top TOP_K scores of each difficulty, and a hash table with
+ *               the latest record and number of games of each player.
+ * scores.prev - for each record, the number of the same player's previous record, so a player's history
+ *               can be followed backwards without reading the log.
+ *
+ * The index remembers how many log records it covers. Opening the store only reads the records written after
+ * that (normally none), so it doesn't get slower as the log grows. If the last record is torn it is cut off,
+ * rather than refusing to open the whole file.
+ */
+public class ScoreStore implements Closeable {
+    public static final int TOP_K = 100; // how many top scores are kept per difficulty
+
+    private static final int LOG_MAGIC = 0x52524c53; // "RRLS"
+    private static final int INDEX_MAGIC = 0x52524958; // "RRIX"
+    private static final int VERSION = 1;
+    private static final int INDEX_VERSION = 2; // 1 kept TOP_K inside the covered count, so it is built again
+    private static final int LOG_HEADER_SIZE = 16;
+    static final int RECORD_SIZE = 80; // SessionResult, then int record number, then int CRC32
+    private static final int CRC_OFFSET = RECORD_SIZE - 4;
+
+    private static final int DIFFICULTIES = 3;
+    private static final int PLAYER_SLOTS = 1 << 16; // size of the player hash table
+    private static final int PLAYER_SLOT_SIZE = 16; // long name hash, int latest record, int games played
+    private static final int INDEX_HEADER_SIZE = 64;
+    private static final int TOP_SECTION_SIZE = 8 + TOP_K * 8; // int count, int unused, then TOP_K (int score, int record)
+    private static final int PLAYERS_OFFSET = INDEX_HEADER_SIZE + DIFFICULTIES * TOP_SECTION_SIZE;
+    private static final int INDEX_SIZE = PLAYERS_OFFSET + PLAYER_SLOTS * PLAYER_SLOT_SIZE;
+
+    // offsets of the index header fields
+    private static final int COVERED_OFFSET = 8;
+    private static final int PLAYER_COUNT_OFFSET = 16;
+    private static final int TOP_K_OFFSET = 20;
+
+    private static final long PREV_CHUNK = 4L * 1024 * 1024;
+
+    private final Path dir;
+    private final FileChannel log;
+    private final FileChannel indexChannel;
+    private final MappedByteBuffer index;
+    private FileChannel prevChannel; // opened the first time it is needed
+    private MappedByteBuffer prev;
+
+    private long records; // number of complete records in the log
+    private final ByteBuffer recordBuffer = ByteBuffer.allocate(RECORD_SIZE);
+    private final CRC32 crc = new CRC32();
+
+    private ScoreStore(Path dir) throws IOException {
+        this.dir = dir;
+        Files.createDirectories(dir);
+        log = FileChannel.open(dir.resolve("scores.log"), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (log.size() < LOG_HEADER_SIZE) {
+            ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_SIZE);
+            header.putInt(0, LOG_MAGIC).putInt(4, VERSION).putInt(8, RECORD_SIZE);
+            log.truncate(0);
+            log.write(header, 0);
+            log.force(true);
+        } else {
+            ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_SIZE);
+            log.read(header, 0);
+            if (header.getInt(0) != LOG_MAGIC || header.getInt(8) != RECORD_SIZE) {
+                throw new IOException(dir.resolve("scores.log") + " is not a score log");
+            }
+        }
+
+        Path indexFile = dir.resolve("scores.idx");
+        boolean newIndex = !Files.exists(indexFile);
+        indexChannel = FileChannel.open(indexFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, INDEX_SIZE);
+        if (newIndex || index.getInt(0) != INDEX_MAGIC || index.getInt(4) != INDEX_VERSION) {
+            clearIndex();
+        }
+
+        recover();
+    }
+
+    // Opens (or creates) the store in the given directory
+    public static ScoreStore open(Path dir) throws IOException {
+        return new ScoreStore(dir);
+    }
+
+    /*
+     * Adds a finished game and makes sure it is on disk before returning. Returns its record number.
+     * The log is written (and synced) first and the index afterwards, so if we crash in between,
+     * the next open() finds the record past the end of the index and adds it then.
+     */
+    public synchronized long append(SessionResult result) throws IOException {
+        long recordNo = appendUncommitted(result);
+        commit();
+        return recordNo;
+    }
+
+    /*
+     * Adds a game without waiting for it to reach the disk. commit() must be called afterwards.
+     * This lets a whole batch of games share one sync (a group commit).
+     */
+    public synchronized long appendUncommitted(SessionResult result) throws IOException {
+        long recordNo = records;
+        recordBuffer.clear();
+        result.writeTo(recordBuffer, 0);
+        recordBuffer.putInt(SessionResult.BYTES, (int) recordNo);
+        recordBuffer.putInt(CRC_OFFSET, checksum(recordBuffer));
+        recordBuffer.position(0).limit(RECORD_SIZE);
+        long offset = recordOffset(recordNo);
+        while (recordBuffer.hasRemaining()) {
+            log.write(recordBuffer, offset + recordBuffer.position());
+        }
+        records++;
+
+        addToIndex(recordNo, result);
+        return recordNo;
+    }
+
+    /*
+     * Syncs every game appended so far to disk, and only then marks them as covered by the index.
+     * Until then, open() will add them to the index again from the log (which does no harm).
+     */
+    public synchronized void commit() throws IOException {
+        log.force(false);
+        index.force();
+        if (prev != null) {
+            prev.force();
+        }
+        index.putLong(COVERED_OFFSET, records);
+    }
+
+    // Number of games stored
+    public synchronized long size() {
+        return records;
+    }
+
+    // Reads one record from the log
+    public synchronized SessionResult read(long recordNo) throws IOException {
+        if (recordNo < 0 || recordNo >= records) {
+            throw new IndexOutOfBoundsException("No record " + recordNo);
+        }
+        readRecord(recordNo);
+        return SessionResult.readFrom(recordBuffer, 0);
+    }
+
+    // The best scores for a difficulty, highest first (on a tie, whoever got it first is higher)
+    public synchronized List<SessionResult> topScores(int difficulty, int limit) throws IOException {
+        int base = topOffset(difficulty);
+        int count = Math.min(limit, index.getInt(base));
+        List<SessionResult> top = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            top.add(read(index.getInt(base + 8 + i * 8 + 4)));
+        }
+        return top;
+    }
+
+    // A player's most recent games, newest first
+    public synchronized List<SessionResult> history(String player, int limit) throws IOException {
+        List<SessionResult> games = new ArrayList<>();
+        int slot = findSlot(player, false);
+        if (slot < 0) {
+            return games;
+        }
+        String storedName = new String(SessionResult.playerBytes(player), StandardCharsets.UTF_8);
+        long recordNo = index.getInt(slot + 8);
+        mapPrev();
+        while (recordNo >= 0 && games.size() < limit) {
+            SessionResult result = read(recordNo);
+            if (result.player.equals(storedName)) {
+                games.add(result);
+            }
+            recordNo = prev.getInt((int) (recordNo * 4));
+        }
+        return games;
+    }
+
+    // How many games a player has played
+    public synchronized int gamesPlayed(String player) {
+        int slot = findSlot(player, false);
+        return slot < 0 ? 0 : index.getInt(slot + 12);
+    }
+
+    public synchronized void close() throws IOException {
+        commit();
+        index.force();
+        if (prev != null) {
+            prevChannel.close();
+        }
+        indexChannel.close();
+        log.close();
+    }
+
+    /*
+     * Works out how many complete, valid records the log has, cutting off a torn record at the end,
+     * and adds any records the index doesn't cover yet.
+     * appendUncommitted() changes the mapped index before the record is synced, and the OS may write those pages
+     * out at any time, so after a crash the index can point at a record that was then cut off. If it does, the
+     * index is built again from the log.
+     */
+    private void recover() throws IOException {
+        long covered = index.getLong(COVERED_OFFSET);
+        long complete = (log.size() - LOG_HEADER_SIZE) / RECORD_SIZE;
+
+        // The index can't cover more than the log has (e.g. the log was restored from an older copy)
+        if (covered > complete) {
+            clearIndex();
+            covered = 0;
+        }
+
+        // Only records after the ones the index covers can be torn, since those were all synced
+        long valid = complete;
+        while (valid > covered && !recordValid(valid - 1)) {
+            valid--;
+        }
+        if (log.size() != recordOffset(valid)) {
+            log.truncate(recordOffset(valid));
+            log.force(true);
+        }
+        records = valid;
+        if (indexMentions(valid)) {
+            clearIndex();
+            covered = 0;
+        }
+
+        for (long recordNo = covered; recordNo < records; recordNo++) {
+            readRecord(recordNo);
+            addToIndex(recordNo, SessionResult.readFrom(recordBuffer, 0));
+        }
+        index.putLong(COVERED_OFFSET, records);
+    }
+
+    // Whether any top score or player's latest game in the index is record fromRecord or later
+    private boolean indexMentions(long fromRecord) {
+        for (int d = 0; d < DIFFICULTIES; d++) {
+            int base = topOffset(d);
+            int count = index.getInt(base);
+            for (int i = 0; i < count; i++) {
+                if (index.getInt(base + 8 + i * 8 + 4) >= fromRecord) {
+                    return true;
+                }
+            }
+        }
+        for (int slot = PLAYERS_OFFSET; slot < INDEX_SIZE; slot += PLAYER_SLOT_SIZE) {
+            if (index.getLong(slot) != 0 && index.getInt(slot + 8) >= fromRecord) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean recordValid(long recordNo) throws IOException {
+        readRecord(recordNo);
+        return recordBuffer.getInt(SessionResult.BYTES) == (int) recordNo
+                && recordBuffer.getInt(CRC_OFFSET) == checksum(recordBuffer);
+    }
+
+    private void readRecord(long recordNo) throws IOException {
+        recordBuffer.clear();
+        long offset = recordOffset(recordNo);
+        while (recordBuffer.hasRemaining()) {
+            if (log.read(recordBuffer, offset + recordBuffer.position()) < 0) {
+                throw new IOException("Score log ended in the middle of record " + recordNo);
+            }
+        }
+    }
+
+    /*
+     * Puts a record into the top scores and the player table. Doing it twice for the same record
+     * does nothing the second time, so it is safe to redo after a crash.
+     */
+    private void addToIndex(long recordNo, SessionResult result) throws IOException {
+        if (result.difficulty >= 0 && result.difficulty < DIFFICULTIES) {
+            addTopScore(topOffset(result.difficulty), (int) recordNo, result.score);
+        }
+
+        int slot = findSlot(result.player, true);
+        int latest = index.getInt(slot + 8);
+        if (latest >= recordNo) {
+            return; // already added
+        }
+        mapPrev();
+        ensurePrevCapacity(recordNo);
+        prev.putInt((int) (recordNo * 4), latest);
+        index.putInt(slot + 8, (int) recordNo);
+        index.putInt(slot + 12, index.getInt(slot + 12) + 1);
+    }
+
+    private void addTopScore(int base, int recordNo, int score) {
+        int count = index.getInt(base);
+        for (int i = 0; i < count; i++) {
+            if (index.getInt(base + 8 + i * 8 + 4) == recordNo) {
+                return; // already added
+            }
+        }
+
+        // find the first entry with a lower score; equal scores stay ahead, since they were there first
+        int at = 0;
+        while (at < count && index.getInt(base + 8 + at * 8) >= score) {
+            at++;
+        }
+        if (at >= TOP_K) {
+            return;
+        }
+
+        // move the lower entries down one place, dropping the last one if the list is full
+        int last = Math.min(count, TOP_K - 1);
+        for (int i = last; i > at; i--) {
+            index.putLong(base + 8 + i * 8, index.getLong(base + 8 + (i - 1) * 8));
+        }
+        index.putInt(base + 8 + at * 8, score);
+        index.putInt(base + 8 + at * 8 + 4, recordNo);
+        index.putInt(base, Math.min(count + 1, TOP_K));
+    }
+
+    /*
+     * Finds the player's slot in the hash table (linear probing on a 64-bit hash of the name).
+     * Returns the slot's offset in the index, or -1 if the player isn't there and create is false.
+     */
+    private int findSlot(String player, boolean create) {
+        long hash = nameHash(player);
+        int i = (int) (hash & (PLAYER_SLOTS - 1));
+        for (int probes = 0; probes < PLAYER_SLOTS; probes++) {
+            int slot = PLAYERS_OFFSET + i * PLAYER_SLOT_SIZE;
+            long stored = index.getLong(slot);
+            if (stored == hash) {
+                return slot;
+            }
+            if (stored == 0) {
+                if (!create) {
+                    return -1;
+                }
+                index.putLong(slot, hash);
+                index.putInt(slot + 8, -1);
+                index.putInt(slot + 12, 0);
+                index.putInt(PLAYER_COUNT_OFFSET, index.getInt(PLAYER_COUNT_OFFSET) + 1);
+                return slot;
+            }
+            i = (i + 1) & (PLAYER_SLOTS - 1);
+        }
+        throw new IllegalStateException("Score store has no room for more players");
+    }
+
+    // 64-bit FNV-1a hash of the stored form of the name (never 0, which marks an empty slot)
+    private static long nameHash(String player) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : SessionResult.playerBytes(player)) {
+            hash ^= (b & 0xff);
+            hash *= 0x100000001b3L;
+        }
+        return hash == 0 ? 1 : hash;
+    }
+
+    private void clearIndex() throws IOException {
+        for (int i = 0; i < INDEX_SIZE; i += 8) {
+            index.putLong(i, 0);
+        }
+        index.putInt(0, INDEX_MAGIC);
+        index.putInt(4, INDEX_VERSION);
+        index.putInt(TOP_K_OFFSET, TOP_K);
+        if (prevChannel != null) {
+            prevChannel.truncate(0);
+        }
+    }
+
+    // Maps scores.prev the first time a player's history is needed
+    private void mapPrev() throws IOException {
+        if (prev != null) {
+            return;
+        }
+        prevChannel = FileChannel.open(dir.resolve("scores.prev"), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = Math.max(PREV_CHUNK, (prevChannel.size() + PREV_CHUNK - 1) / PREV_CHUNK * PREV_CHUNK);
+        prev = prevChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    private void ensurePrevCapacity(long recordNo) throws IOException {
+        long needed = (recordNo + 1) * 4;
+        if (needed <= prev.capacity()) {
+            return;
+        }
+        if (needed > Integer.MAX_VALUE) {
+            throw new IOException("Score store is full");
+        }
+        prev.force();
+        prev = prevChannel.map(FileChannel.MapMode.READ_WRITE, 0, Math.min(Integer.MAX_VALUE, prev.capacity() + PREV_CHUNK));
+    }
+
+    private int checksum(ByteBuffer record) {
+        crc.reset();
+        crc.update(record.array(), 0, CRC_OFFSET);
+        return (int) crc.getValue();
+    }
+
+    private static long recordOffset(long recordNo) {
+        return LOG_HEADER_SIZE + recordNo * RECORD_SIZE;
+    }
+
+    private static int topOffset(int difficulty) {
+        return INDEX_HEADER_SIZE + difficulty * TOP_SECTION_SIZE;
+    }
+
+    // Used by ScoreStoreBenchmark to check the top scores without reading the log
+    synchronized int[] topScoreValues(int difficulty) {
+        int base = topOffset(difficulty);
+        int[] scores = new int[index.getInt(base)];
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = index.getInt(base + 8 + i * 8);
+        }
+        return scores;
+    }
+
+    public String toString() {
+        return "ScoreStore " + dir + " (" + records + " games, " + index.getInt(PLAYER_COUNT_OFFSET) + " players)";
+    }
+}
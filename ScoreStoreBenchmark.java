@@ -0,0 +1,80 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Random;
+
+/*
+ * Fills a ScoreStore with a million games, then measures how long it takes to open it again and to read the
+ * leaderboards and a player's history. It also checks that a torn record at the end of the log is cut off
+ * when the store is opened.
+ *
+ * Run with: java ScoreStoreBenchmark [games] [directory]
+ */
+public class ScoreStoreBenchmark {
+    public static void main(String[] args) throws IOException {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Path dir = args.length > 1 ? Paths.get(args[1]) : Files.createTempDirectory("score-store");
+        Random rand = new Random(7);
+        int[] best = new int[3];
+
+        long start = System.nanoTime();
+        try (ScoreStore store = ScoreStore.open(dir)) {
+            for (int i = 0; i < games; i++) {
+                int difficulty = rand.nextInt(3);
+                int score = rand.nextInt(60);
+                best[difficulty] = Math.max(best[difficulty], score);
+                store.appendUncommitted(new SessionResult("player" + rand.nextInt(1000), difficulty, score, rand.nextInt(20), rand.nextInt(101),
+                        300_000, 400_000, 500_000, 600_000, System.currentTimeMillis()));
+            }
+        }
+        System.out.printf("appended %d games in %.1f s (one commit at the end)%n", games, (System.nanoTime() - start) / 1e9);
+
+        // open a few times, the first one may have to read the files from disk
+        for (int i = 0; i < 3; i++) {
+            start = System.nanoTime();
+            ScoreStore store = ScoreStore.open(dir);
+            double openMillis = (System.nanoTime() - start) / 1e6;
+
+            start = System.nanoTime();
+            List<SessionResult> top = store.topScores(GameEngine.MEDIUM, 10);
+            double topMillis = (System.nanoTime() - start) / 1e6;
+
+            start = System.nanoTime();
+            List<SessionResult> history = store.history("player42", 20);
+            double historyMillis = (System.nanoTime() - start) / 1e6;
+
+            System.out.printf("open %.2f ms | top 10 %.2f ms | history of 20 %.2f ms | %s%n",
+                    openMillis, topMillis, historyMillis, store);
+            if (top.get(0).score != best[GameEngine.MEDIUM]) {
+                throw new IllegalStateException("Top score is " + top.get(0).score + ", expected " + best[GameEngine.MEDIUM]);
+            }
+            if (history.isEmpty()) {
+                throw new IllegalStateException("No history for player42");
+            }
+            store.close();
+        }
+
+        // a game that was only half written when the power went out
+        Path logFile = dir.resolve("scores.log");
+        long before;
+        try (ScoreStore store = ScoreStore.open(dir)) {
+            before = store.size();
+        }
+        try (FileChannel log = FileChannel.open(logFile, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            log.write(ByteBuffer.wrap(new byte[ScoreStore.RECORD_SIZE / 2]));
+        }
+        start = System.nanoTime();
+        try (ScoreStore store = ScoreStore.open(dir)) {
+            System.out.printf("open after torn write %.2f ms: %d games before, %d after%n",
+                    (System.nanoTime() - start) / 1e6, before, store.size());
+            if (store.size() != before) {
+                throw new IllegalStateException("Torn record was not cut off");
+            }
+        }
+    }
+}
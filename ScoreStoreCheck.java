@@ -0,0 +1,209 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/*
+ * Checks that a ScoreStore comes back with exactly the games it should after being closed, or after a crash.
+ * Every case writes games, damages the files the way a crash could, opens the store again, and compares what it
+ * reads (size, top scores, each player's history and games played) with a plain list of the games that should
+ * have survived:
+ *
+ *   reopen       closed normally, then opened again
+ *   torn tail    the last record cut off halfway, after the index already covered it (so the index is rebuilt)
+ *   uncommitted  a crash after appendUncommitted(): the index already has the game, but the log only has half of it
+ *   bad crc      the same, but the last record is all there with a damaged byte in it
+ *   no index     scores.idx deleted, so it is rebuilt from the log
+ *   append after recovery, then closed and opened once more
+ *   crash before first commit   the same as uncommitted, but on a new store whose index doesn't cover anything yet
+ *
+ * A crash is imitated by copying the files while the store is open: the index is memory-mapped, so the copy gets
+ * whatever the index looked like at that moment, as a crash could leave it on disk.
+ *
+ * Run with: java ScoreStoreCheck [games] [directory]
+ * Prints one line per case, and exits with an AssertionError at the first difference.
+ */
+public class ScoreStoreCheck {
+    private static final String[] PLAYERS = { "ana", "bo", "chen", "dara", "eli", "fay", "gus" };
+
+    public static void main(String[] args) throws IOException {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        Path root = args.length > 1 ? Paths.get(args[1]) : Files.createTempDirectory("score-check");
+        Random rand = new Random(11);
+
+        // reopen
+        Path dir = root.resolve("reopen");
+        List<SessionResult> expected = new ArrayList<>();
+        try (ScoreStore store = ScoreStore.open(dir)) {
+            for (int i = 0; i < games; i++) {
+                SessionResult result = randomGame(rand, i);
+                store.append(result);
+                expected.add(result);
+            }
+        }
+        try (ScoreStore store = ScoreStore.open(dir)) {
+            verify("reopen", store, expected);
+        }
+
+        // torn tail: the last record is half gone, though the index said it had it
+        Path torn = copy(dir, root.resolve("torn"));
+        truncateLog(torn, ScoreStore.RECORD_SIZE / 2);
+        try (ScoreStore store = ScoreStore.open(torn)) {
+            verify("torn tail", store, expected.subList(0, expected.size() - 1));
+        }
+
+        // uncommitted: a few committed games, then one that only reached the index before the crash
+        Path crashed = root.resolve("uncommitted");
+        Path damaged = root.resolve("bad-crc");
+        List<SessionResult> committed = new ArrayList<>(expected);
+        try (ScoreStore store = ScoreStore.open(dir)) {
+            for (int i = 0; i < 3; i++) {
+                SessionResult result = randomGame(rand, games + i);
+                store.append(result);
+                committed.add(result);
+            }
+            // a high score, so it goes into the top list too
+            store.appendUncommitted(new SessionResult(PLAYERS[0], 1, 1000, 0, 100, 0, 0, 0, 0, games + 3));
+            copy(dir, crashed);
+            copy(dir, damaged);
+        }
+        truncateLog(crashed, ScoreStore.RECORD_SIZE / 2);
+        try (ScoreStore store = ScoreStore.open(crashed)) {
+            verify("uncommitted", store, committed);
+        }
+        flipByte(damaged, ScoreStore.RECORD_SIZE / 3);
+        try (ScoreStore store = ScoreStore.open(damaged)) {
+            verify("bad crc", store, committed);
+        }
+
+        // no index
+        Files.delete(crashed.resolve("scores.idx"));
+        try (ScoreStore store = ScoreStore.open(crashed)) {
+            verify("no index", store, committed);
+        }
+
+        // append after recovery
+        List<SessionResult> more = new ArrayList<>(committed);
+        try (ScoreStore store = ScoreStore.open(crashed)) {
+            for (int i = 0; i < 50; i++) {
+                SessionResult result = randomGame(rand, games + 10 + i);
+                store.append(result);
+                more.add(result);
+            }
+        }
+        try (ScoreStore store = ScoreStore.open(crashed)) {
+            verify("append after recovery", store, more);
+        }
+
+        // crash before the first commit: the index has both games, but nothing says it covers any of the log
+        Path fresh = root.resolve("fresh");
+        Path early = root.resolve("first-commit");
+        List<SessionResult> first = new ArrayList<>();
+        try (ScoreStore store = ScoreStore.open(fresh)) {
+            first.add(new SessionResult(PLAYERS[0], 0, 30, 0, 100, 0, 0, 0, 0, 1));
+            store.appendUncommitted(first.get(0));
+            store.appendUncommitted(new SessionResult(PLAYERS[0], 0, 40, 0, 100, 0, 0, 0, 0, 2));
+            copy(fresh, early);
+        }
+        truncateLog(early, ScoreStore.RECORD_SIZE / 2);
+        try (ScoreStore store = ScoreStore.open(early)) {
+            verify("crash before first commit", store, first);
+            SessionResult result = randomGame(rand, 3);
+            store.append(result);
+            first.add(result);
+        }
+        try (ScoreStore store = ScoreStore.open(early)) {
+            verify("append after first commit", store, first);
+        }
+        System.out.println("All checks passed (" + root + ")");
+    }
+
+    private static SessionResult randomGame(Random rand, long timestamp) {
+        return new SessionResult(PLAYERS[rand.nextInt(PLAYERS.length)], rand.nextInt(3), rand.nextInt(60),
+                rand.nextInt(10), rand.nextInt(101), 0, 0, 0, 0, timestamp);
+    }
+
+    // Compares everything the store can tell us with the games that should be in it, in the order they were added
+    private static void verify(String name, ScoreStore store, List<SessionResult> games) throws IOException {
+        check(store.size() == games.size(), name + ": size " + store.size() + ", expected " + games.size());
+        for (int d = 0; d < 3; d++) {
+            final int difficulty = d;
+            List<SessionResult> top = new ArrayList<>();
+            for (SessionResult game : games) {
+                if (game.difficulty == difficulty) {
+                    top.add(game);
+                }
+            }
+            top.sort(Comparator.comparingInt((SessionResult r) -> -r.score)); // stable, so ties stay in order
+            top = top.subList(0, Math.min(ScoreStore.TOP_K, top.size()));
+            same(name + ": top scores, difficulty " + d, store.topScores(d, ScoreStore.TOP_K), top);
+        }
+        for (String player : PLAYERS) {
+            List<SessionResult> history = new ArrayList<>();
+            for (int i = games.size() - 1; i >= 0; i--) {
+                if (games.get(i).player.equals(player)) {
+                    history.add(games.get(i));
+                }
+            }
+            check(store.gamesPlayed(player) == history.size(),
+                    name + ": " + player + " played " + store.gamesPlayed(player) + ", expected " + history.size());
+            same(name + ": history of " + player, store.history(player, Integer.MAX_VALUE), history);
+        }
+        System.out.println(name + ": ok (" + games.size() + " games)");
+    }
+
+    private static void same(String what, List<SessionResult> actual, List<SessionResult> expected) {
+        check(actual.size() == expected.size(), what + ": " + actual.size() + " games, expected " + expected.size());
+        for (int i = 0; i < actual.size(); i++) {
+            SessionResult a = actual.get(i);
+            SessionResult e = expected.get(i);
+            check(a.player.equals(e.player) && a.difficulty == e.difficulty && a.score == e.score
+                            && a.timestamp == e.timestamp,
+                    what + ": game " + i + " is " + a.player + "/" + a.score + "@" + a.timestamp
+                            + ", expected " + e.player + "/" + e.score + "@" + e.timestamp);
+        }
+    }
+
+    private static void check(boolean ok, String message) {
+        if (!ok) {
+            throw new AssertionError(message);
+        }
+    }
+
+    private static Path copy(Path from, Path to) throws IOException {
+        Files.createDirectories(to);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(from)) {
+            for (Path file : files) {
+                Files.copy(file, to.resolve(file.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        return to;
+    }
+
+    private static void truncateLog(Path dir, int bytes) throws IOException {
+        try (FileChannel log = FileChannel.open(dir.resolve("scores.log"), StandardOpenOption.WRITE)) {
+            log.truncate(log.size() - bytes);
+        }
+    }
+
+    // Flips one byte of the last record, this far from its start
+    private static void flipByte(Path dir, int offsetInRecord) throws IOException {
+        try (FileChannel log = FileChannel.open(dir.resolve("scores.log"), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long position = log.size() - ScoreStore.RECORD_SIZE + offsetInRecord;
+            ByteBuffer b = ByteBuffer.allocate(1);
+            log.read(b, position);
+            b.put(0, (byte) ~b.get(0));
+            b.rewind();
+            log.write(b, position);
+        }
+    }
+}
@@ -0,0 +1,271 @@
+import javax.swing.*;
+import java.awt.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+/*
+ * Plays back a file written by InputRecorder through GameEngine, and checks that the game comes out the same:
+ * every spawn must put the circles in the same places, and every session must end with the same score,
+ * misses and accuracy.
+ *
+ * It can run unthrottled, for checking lots of recordings quickly, or at real speed in a window so a game
+ * can be watched again (for example when a player disputes their score).
+ *
+ * Run with: java SessionReplayer <recording> [speed=max|real]
+ */
+public class SessionReplayer {
+    private static final int MAX_PROBLEMS = 20; // how many divergences are described in the report
+
+    // What the replay found
+    public static class Report {
+        int sessions = 0;
+        long events = 0;
+        int spawnMismatches = 0;
+        int resultMismatches = 0;
+        final ArrayList<String> problems = new ArrayList<>();
+
+        boolean matches() {
+            return spawnMismatches == 0 && resultMismatches == 0;
+        }
+
+        void problem(String text) {
+            if (problems.size() < MAX_PROBLEMS) {
+                problems.add(text);
+            }
+        }
+    }
+
+    /*
+     * Told about every event as it is replayed, after the engine has handled it, e.g. by ReplayRenderer.
+     * All methods do nothing by default. nanos is the event's time in the recording.
+     */
+    public interface Observer {
+        default void sessionStarted(GameEngine engine, long nanos) {}
+        default void eventReplayed(GameEngine engine, int type, long nanos) {}
+        default void clicked(GameEngine engine, int x, int y, int result, long clickNanos) {}
+        default void sessionEnded(GameEngine engine, long nanos) {}
+    }
+
+    private static final Observer NO_OBSERVER = new Observer() {};
+
+    private final ByteBuffer log;
+    private Observer observer = NO_OBSERVER;
+
+    public SessionReplayer(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            log = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (log.limit() < InputRecorder.HEADER_SIZE || log.getInt(0) != InputRecorder.MAGIC) {
+            throw new IOException(file + " is not a recording");
+        }
+        if (log.getInt(4) != InputRecorder.VERSION) {
+            throw new IOException(file + " has recording version " + log.getInt(4) + ", expected " + InputRecorder.VERSION);
+        }
+    }
+
+    public void setObserver(Observer observer) {
+        this.observer = observer != null ? observer : NO_OBSERVER;
+    }
+
+    /*
+     * Replays every session in the file. At real speed each event waits until the same time has passed
+     * as in the original game. If view is not null it is shown the game as it goes.
+     */
+    public Report replay(boolean realSpeed, ReplayView view) {
+        Report report = new Report();
+        GameEngine engine = null;
+        long sessionStartNanos = 0; // recorded nanoTime of the session start
+        long replayStartNanos = 0; // our nanoTime when we started replaying that session
+        int pos = InputRecorder.HEADER_SIZE;
+
+        while (pos + InputRecorder.RECORD_SIZE <= log.limit()) {
+            int type = log.getInt(pos);
+            if (type == InputRecorder.END_OF_LOG) {
+                break;
+            }
+            int i1 = log.getInt(pos + 4);
+            int i2 = log.getInt(pos + 8);
+            int i3 = log.getInt(pos + 12);
+            long l1 = log.getLong(pos + 16);
+            long l2 = log.getLong(pos + 24);
+            pos += InputRecorder.RECORD_SIZE;
+            report.events++;
+
+            if (type == InputRecorder.SESSION_START) {
+                engine = new GameEngine(l2, i2);
+                if (GameConfig.MOVING_SPEED > 0) {
+                    // the recording doesn't say whether the circles moved, so replay with the same -Dreflex.moving
+                    engine.setMotion(new CircleMotion(CircleMotion.kernel(GameConfig.VECTOR), GameEngine.WIDTH,
+                            GameEngine.HEIGHT, GameConfig.MOVING_SPEED));
+                    engine.setSeed(l2);
+                }
+                sessionStartNanos = l1;
+                replayStartNanos = System.nanoTime();
+                report.sessions++;
+                if (view != null) {
+                    view.setEngine(engine);
+                }
+                synchronized (engine) {
+                    engine.start(i1, l1);
+                }
+                observer.sessionStarted(engine, l1);
+                continue;
+            }
+            if (type == InputRecorder.SPAWN) {
+                // the positions follow the record, whether or not we are in a session
+                if (engine != null) {
+                    checkSpawn(engine, pos, i1, i2, report);
+                }
+                pos += i2 * 8;
+                continue;
+            }
+            if (engine == null) {
+                continue; // a click before any game was started
+            }
+
+            if (realSpeed) {
+                waitUntil(replayStartNanos + (l1 - sessionStartNanos));
+            }
+            synchronized (engine) {
+                if (type == InputRecorder.ROUND_TIMER) {
+                    engine.roundElapsed(l1);
+                } else if (type == InputRecorder.SECOND_TIMER) {
+                    engine.secondElapsed();
+                } else if (type == InputRecorder.CLICK) {
+                    int result = engine.click(i1, i2, l2, l1);
+                    observer.clicked(engine, i1, i2, result, l2);
+                } else if (type == InputRecorder.SESSION_END) {
+                    checkResult(engine, i1, i2, i3, report);
+                    observer.sessionEnded(engine, l1);
+                }
+                observer.eventReplayed(engine, type, l1);
+            }
+            // outside the engine lock: paintComponent holds the view's lock and then takes the engine's
+            if (type == InputRecorder.CLICK && view != null) {
+                view.addClick(i1, i2);
+            }
+            if (view != null) {
+                view.repaint();
+            }
+        }
+        return report;
+    }
+
+    // Checks that the engine's circles are where the recording says they were
+    private void checkSpawn(GameEngine engine, int pos, int targetIndex, int count, Report report) {
+        CircleStore circles = engine.getCircles();
+        boolean same = circles.count() == count && circles.targetIndex() == targetIndex;
+        for (int i = 0; same && i < count; i++) {
+            same = circles.getX(i) == log.getInt(pos + i * 8) && circles.getY(i) == log.getInt(pos + i * 8 + 4);
+        }
+        if (!same) {
+            report.spawnMismatches++;
+            report.problem("session " + report.sessions + ": circles differ from the recording after event " + report.events);
+        }
+    }
+
+    private void checkResult(GameEngine engine, int score, int misses, int accuracy, Report report) {
+        if (engine.getScore() != score || engine.getMisses() != misses || engine.getAccuracy() != accuracy) {
+            report.resultMismatches++;
+            report.problem("session " + report.sessions + ": recorded score/misses/accuracy " + score + "/" + misses + "/" + accuracy
+                    + "%, replayed " + engine.getScore() + "/" + engine.getMisses() + "/" + engine.getAccuracy() + "%");
+        }
+    }
+
+    private static void waitUntil(long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            try {
+                Thread.sleep(remaining / 1_000_000, (int) (remaining % 1_000_000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // Shows the replayed game: the circles, and where the player clicked
+    public static class ReplayView extends JPanel {
+        private static final int CLICKS_SHOWN = 8;
+
+        private GameEngine engine;
+        private final int[] clickX = new int[CLICKS_SHOWN];
+        private final int[] clickY = new int[CLICKS_SHOWN];
+        private int clicks = 0;
+
+        public ReplayView() {
+            setPreferredSize(new Dimension(GameEngine.WIDTH, GameEngine.HEIGHT));
+            setBackground(Color.WHITE);
+        }
+
+        synchronized void setEngine(GameEngine engine) {
+            this.engine = engine;
+            clicks = 0;
+        }
+
+        synchronized void addClick(int x, int y) {
+            clickX[clicks % CLICKS_SHOWN] = x;
+            clickY[clicks % CLICKS_SHOWN] = y;
+            clicks++;
+        }
+
+        protected synchronized void paintComponent(Graphics g) {
+            super.paintComponent(g);
+            if (engine == null) {
+                return;
+            }
+            synchronized (engine) {
+                engine.getCircles().drawAll(g);
+                g.setColor(Color.BLACK);
+                g.drawString("Score: " + engine.getScore() + "  Misses: " + engine.getMisses()
+                        + "  Time: " + engine.getTimeLeft(), 10, 20);
+            }
+            g.setColor(Color.BLUE);
+            for (int i = 0; i < Math.min(clicks, CLICKS_SHOWN); i++) {
+                g.drawLine(clickX[i] - 5, clickY[i], clickX[i] + 5, clickY[i]);
+                g.drawLine(clickX[i], clickY[i] - 5, clickX[i], clickY[i] + 5);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: java SessionReplayer <recording> [speed=max|real]");
+            return;
+        }
+        boolean realSpeed = args.length > 1 && args[1].equals("speed=real");
+
+        ReplayView view = null;
+        if (realSpeed && !GraphicsEnvironment.isHeadless()) {
+            view = new ReplayView();
+            JFrame frame = new JFrame("Replay: " + args[0]);
+            frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+            frame.add(view);
+            frame.pack();
+            frame.setLocationRelativeTo(null);
+            frame.setVisible(true);
+        }
+
+        long start = System.nanoTime();
+        Report report = new SessionReplayer(Paths.get(args[0])).replay(realSpeed, view);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%d sessions, %d events in %.2f s (%.0f events/s)%n",
+                report.sessions, report.events, seconds, report.events / seconds);
+        for (String problem : report.problems) {
+            System.out.println("  " + problem);
+        }
+        if (report.matches()) {
+            System.out.println("Replay matches the recording.");
+        } else {
+            System.out.println("Replay DIVERGED: " + report.spawnMismatches + " spawn mismatches, "
+                    + report.resultMismatches + " result mismatches.");
+            System.exit(1);
+        }
+    }
+}
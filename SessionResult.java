@@ -0,0 +1,94 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/*
+ * The result of one finished game: who played it, on what difficulty, how it went, and a summary of
+ * their reaction times. Stored by ScoreStore.
+ * It can be written to and read from a fixed-size block of bytes (BYTES long) at any position in a buffer.
+ */
+public class SessionResult {
+    public static final int PLAYER_BYTES = 32; // player names are cut down to this many bytes of UTF-8
+    public static final int BYTES = 72;
+
+    public final String player;
+    public final int difficulty;
+    public final int score;
+    public final int misses;
+    public final int accuracy;
+    public final int p50Micros; // reaction time percentiles for the game, in microseconds
+    public final int p90Micros;
+    public final int p99Micros;
+    public final int maxMicros;
+    public final long timestamp; // when the game ended, in milliseconds since 1970
+
+    public SessionResult(String player, int difficulty, int score, int misses, int accuracy,
+                         int p50Micros, int p90Micros, int p99Micros, int maxMicros, long timestamp) {
+        this.player = player;
+        this.difficulty = difficulty;
+        this.score = score;
+        this.misses = misses;
+        this.accuracy = accuracy;
+        this.p50Micros = p50Micros;
+        this.p90Micros = p90Micros;
+        this.p99Micros = p99Micros;
+        this.maxMicros = maxMicros;
+        this.timestamp = timestamp;
+    }
+
+    // Builds a result from a finished game and that game's reaction times
+    public static SessionResult of(String player, GameEngine engine, LatencyHistogram reactionMicros, long timestamp) {
+        return new SessionResult(player, engine.getDifficulty(), engine.getScore(), engine.getMisses(), engine.getAccuracy(),
+                (int) reactionMicros.getValueAtPercentile(50), (int) reactionMicros.getValueAtPercentile(90),
+                (int) reactionMicros.getValueAtPercentile(99), (int) reactionMicros.getMax(), timestamp);
+    }
+
+    // Writes this result into BYTES bytes of buf, starting at pos
+    public void writeTo(ByteBuffer buf, int pos) {
+        buf.putLong(pos, timestamp);
+        buf.putInt(pos + 8, difficulty);
+        buf.putInt(pos + 12, score);
+        buf.putInt(pos + 16, misses);
+        buf.putInt(pos + 20, accuracy);
+        buf.putInt(pos + 24, p50Micros);
+        buf.putInt(pos + 28, p90Micros);
+        buf.putInt(pos + 32, p99Micros);
+        buf.putInt(pos + 36, maxMicros);
+        byte[] name = playerBytes(player);
+        for (int i = 0; i < PLAYER_BYTES; i++) {
+            buf.put(pos + 40 + i, i < name.length ? name[i] : 0);
+        }
+    }
+
+    public static SessionResult readFrom(ByteBuffer buf, int pos) {
+        byte[] name = new byte[PLAYER_BYTES];
+        int length = 0;
+        while (length < PLAYER_BYTES && buf.get(pos + 40 + length) != 0) {
+            name[length] = buf.get(pos + 40 + length);
+            length++;
+        }
+        return new SessionResult(new String(name, 0, length, StandardCharsets.UTF_8),
+                buf.getInt(pos + 8), buf.getInt(pos + 12), buf.getInt(pos + 16), buf.getInt(pos + 20),
+                buf.getInt(pos + 24), buf.getInt(pos + 28), buf.getInt(pos + 32), buf.getInt(pos + 36),
+                buf.getLong(pos));
+    }
+
+    // The player's name as UTF-8, cut to PLAYER_BYTES without splitting a character
+    static byte[] playerBytes(String player) {
+        byte[] bytes = player.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length <= PLAYER_BYTES) {
+            return bytes;
+        }
+        int end = PLAYER_BYTES;
+        while (end > 0 && (bytes[end] & 0xC0) == 0x80) {
+            end--; // don't stop in the middle of a multi-byte character
+        }
+        byte[] cut = new byte[end];
+        System.arraycopy(bytes, 0, cut, 0, end);
+        return cut;
+    }
+
+    public String toString() {
+        return player + " " + GameEngine.DIFFICULTY_NAMES[difficulty] + " score " + score + " misses " + misses
+                + " accuracy " + accuracy + "% p50 " + (p50Micros / 1000) + " ms";
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * The running stats of one game, kept up to date one attempt at a time (see GameEngine.Listener.attemptMade):
+ * score, misses and attempts (counted the same way as GameEngine counts them), the current and best streak of
+ * hits, the accuracy over the last ROLLING_ATTEMPTS attempts, and an exponentially weighted moving average of the
+ * reaction time. Every update is a few arithmetic operations on fields, with nothing allocated, so it can be
+ * called for every click.
+ *
+ * Not thread-safe; GamePanel only uses it while holding its state lock.
+ */
+public class SessionStats {
+    public static final int ROLLING_ATTEMPTS = 20; // how many of the latest attempts the rolling accuracy covers
+    private static final double EWMA_WEIGHT = 0.2; // how much each new reaction time counts in the average
+
+    private int score;
+    private int misses;
+    private int attempts;
+    private int streak; // hits in a row
+    private int bestStreak;
+    private int streakBeforeExpiry; // the streak an EXPIRED round ended, in case a LATE_HIT takes that back
+    private long history; // the latest 64 attempts, one bit each (1 = hit), the latest in bit 0
+    private int attemptsSinceExpiry = -1; // where the last EXPIRED is in history, -1 if there wasn't one
+    private double reactionEwmaMicros;
+    private int reactions; // how many reaction times went into the average
+    private long version; // goes up on every change, so readers can tell whether anything changed
+
+    public void reset() {
+        score = 0;
+        misses = 0;
+        attempts = 0;
+        streak = 0;
+        bestStreak = 0;
+        streakBeforeExpiry = 0;
+        history = 0;
+        attemptsSinceExpiry = -1;
+        reactionEwmaMicros = 0;
+        reactions = 0;
+        version++;
+    }
+
+    // One attempt, as passed to GameEngine.Listener.attemptMade
+    public void record(int kind, long elapsedNanos) {
+        if (kind == GameEngine.HIT) {
+            score++;
+            addAttempt(true);
+            streak++;
+            bestStreak = Math.max(bestStreak, streak);
+            addReaction(elapsedNanos);
+        } else if (kind == GameEngine.MISS) {
+            misses++;
+            addAttempt(false);
+            streak = 0;
+        } else if (kind == GameEngine.EXPIRED) {
+            misses++;
+            addAttempt(false);
+            streakBeforeExpiry = streak;
+            streak = 0;
+            attemptsSinceExpiry = 0;
+        } else if (kind == GameEngine.LATE_HIT) {
+            // the round that ran out was hit after all: it is not a miss or an attempt of its own any more
+            score++;
+            misses--;
+            if (attemptsSinceExpiry >= 0 && attemptsSinceExpiry < 64) {
+                history |= 1L << attemptsSinceExpiry;
+            }
+            streak = (attemptsSinceExpiry == 0 ? streakBeforeExpiry : streak) + 1;
+            bestStreak = Math.max(bestStreak, streak);
+            attemptsSinceExpiry = -1;
+            addReaction(elapsedNanos);
+        }
+        version++;
+    }
+
+    private void addAttempt(boolean hit) {
+        attempts++;
+        history = (history << 1) | (hit ? 1 : 0);
+        if (attemptsSinceExpiry >= 0) {
+            attemptsSinceExpiry++;
+        }
+    }
+
+    private void addReaction(long nanos) {
+        double micros = nanos / 1000.0;
+        reactionEwmaMicros = reactions == 0 ? micros : reactionEwmaMicros + EWMA_WEIGHT * (micros - reactionEwmaMicros);
+        reactions++;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public int getMisses() {
+        return misses;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    // Percentage of attempts that hit the target, worked out the same way as GameEngine.getAccuracy
+    public int getAccuracy() {
+        if (attempts > 0) {
+            return (int) ((score * 100.0f) / attempts);
+        }
+        return 100;
+    }
+
+    // Percentage of the last ROLLING_ATTEMPTS attempts (or fewer at the start) that hit the target
+    public int getRollingAccuracy() {
+        int window = Math.min(attempts, ROLLING_ATTEMPTS);
+        if (window == 0) {
+            return 100;
+        }
+        long mask = (1L << window) - 1;
+        return Long.bitCount(history & mask) * 100 / window;
+    }
+
+    public int getStreak() {
+        return streak;
+    }
+
+    public int getBestStreak() {
+        return bestStreak;
+    }
+
+    // The moving average of the reaction time in milliseconds, 0 before the first hit
+    public int getReactionEwmaMillis() {
+        return (int) Math.round(reactionEwmaMicros / 1000);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+}
@@ -0,0 +1,132 @@
+import javax.swing.*;
+import java.awt.*;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+/*
+ * Watches a game from another process: polls the game's /snapshot endpoint (see LiveStatsServer) and draws the
+ * circles and stats it gets. Start the game with -Dreflex.livePort=7373, then
+ *
+ *   java SpectatorWindow [host=127.0.0.1] [port=7373] [fps=30]
+ *
+ * Running in its own JVM, the spectator's painting never shares the game's EDT.
+ */
+public class SpectatorWindow extends JPanel {
+    private volatile LiveSnapshot snapshot = LiveSnapshot.EMPTY;
+    private volatile String status = "Waiting for the game...";
+
+    public SpectatorWindow() {
+        setPreferredSize(new Dimension(GameEngine.WIDTH, GameEngine.HEIGHT + 24));
+        setBackground(Color.WHITE);
+    }
+
+    void show(LiveSnapshot newSnapshot) {
+        snapshot = newSnapshot;
+        status = null;
+        repaint();
+    }
+
+    // The game answered, but with nothing new: just takes down any error shown since
+    void reachable() {
+        if (status != null) {
+            status = null;
+            repaint();
+        }
+    }
+
+    void showError(String message) {
+        status = message;
+        repaint();
+    }
+
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        LiveSnapshot s = snapshot; // one read, so everything drawn comes from the same snapshot
+        g.setColor(Color.BLACK);
+        String line = status != null ? status
+                : LiveStatsServer.overlay(s) + " | " + GameEngine.DIFFICULTY_NAMES[s.difficulty]
+                        + (s.running ? "" : " (not playing)");
+        g.drawString(line, 6, 16);
+        g.translate(0, 24);
+        LiveSnapshot.Layout layout = s.layout;
+        for (int i = 0; i < layout.count(); i++) {
+            g.setColor(i == layout.target ? Color.RED : Color.GRAY);
+            g.fillOval(layout.getX(i), layout.getY(i), layout.getSize(i), layout.getSize(i));
+        }
+        g.translate(0, -24);
+    }
+
+    private static String fetch(URL url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(1000);
+        connection.setReadTimeout(1000);
+        try (InputStream in = connection.getInputStream()) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                body.write(buffer, 0, n);
+            }
+            return new String(body.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String host = "127.0.0.1";
+        int port = LiveStatsServer.DEFAULT_PORT;
+        int fps = 30;
+        for (String arg : args) {
+            String[] kv = arg.split("=", 2);
+            if (kv.length != 2) {
+                throw new IllegalArgumentException("Arguments should look like name=value, got " + arg);
+            }
+            switch (kv[0]) {
+                case "host": host = kv[1]; break;
+                case "port": port = Integer.parseInt(kv[1]); break;
+                case "fps": fps = Math.max(1, Integer.parseInt(kv[1])); break;
+                default: throw new IllegalArgumentException("Unknown argument: " + kv[0]);
+            }
+        }
+        final URL url = new URL("http", host, port, "/snapshot");
+        final long periodMillis = 1000 / fps;
+
+        final SpectatorWindow panel = new SpectatorWindow();
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                JFrame frame = new JFrame("Reflex Rush - spectating " + url.getHost() + ":" + url.getPort());
+                frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+                frame.add(panel);
+                frame.pack();
+                frame.setVisible(true);
+            }
+        });
+
+        // Polled on this thread, so a slow or missing game never holds up the spectator's EDT
+        long seen = -1;
+        while (true) {
+            long start = System.nanoTime();
+            try {
+                LiveSnapshot s = LiveStatsServer.parse(fetch(url));
+                if (s.version != seen) {
+                    seen = s.version;
+                    panel.show(s);
+                } else {
+                    panel.reachable();
+                }
+            } catch (IOException e) {
+                panel.showError("Can't reach the game at " + url + ": " + e.getMessage());
+            } catch (RuntimeException e) {
+                // a truncated or garbled answer; keep polling, the next one is probably fine
+                panel.showError("Bad answer from the game at " + url + ": " + e);
+            }
+            long sleep = periodMillis - (System.nanoTime() - start) / 1_000_000;
+            if (sleep > 0) {
+                Thread.sleep(sleep);
+            }
+        }
+    }
+}
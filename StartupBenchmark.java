@@ -0,0 +1,108 @@
+import java.awt.GraphicsEnvironment;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * Measures how long the game takes to start: from launching the JVM to the welcome screen's first frame,
+ * and to the window being able to react to input (see StartupProbe). Each launch is a fresh JVM, run
+ *  - with class data sharing off,
+ *  - with the JDK's default CDS archive (the normal case),
+ *  - and with an AppCDS archive of the game's own classes, made first if it doesn't exist yet.
+ * The launches of the three kinds take turns, so background noise hits them all alike.
+ *
+ * Run with: java StartupBenchmark [runs=10] [archive=FILE]
+ * Without a display it measures the headless stand-in StartupProbe uses (painting into an image), which still
+ * shows the class loading savings, but not the time it takes to open a real window.
+ */
+public class StartupBenchmark {
+    public static void main(String[] args) throws Exception {
+        int runs = 10;
+        String archive = "target" + File.separator + "reaction-time-game.jsa";
+        for (String arg : args) {
+            String[] kv = arg.split("=", 2);
+            if (kv.length != 2) {
+                throw new IllegalArgumentException("Arguments should look like name=value, got " + arg);
+            }
+            if (kv[0].equals("runs")) {
+                runs = Integer.parseInt(kv[1]);
+            } else if (kv[0].equals("archive")) {
+                archive = kv[1];
+            } else {
+                throw new IllegalArgumentException("Unknown argument: " + kv[0]);
+            }
+        }
+
+        if (!new File(archive).exists()) {
+            File parent = new File(archive).getAbsoluteFile().getParentFile();
+            parent.mkdirs();
+            System.out.println("making " + archive);
+            launch("-XX:ArchiveClassesAtExit=" + archive);
+        }
+
+        String[] names = { "CDS off", "JDK CDS", "AppCDS" };
+        String[] flags = { "-Xshare:off", "-Xshare:auto", "-XX:SharedArchiveFile=" + archive };
+        long[][] firstFrame = new long[names.length][runs];
+        long[][] interactive = new long[names.length][runs];
+        launch(flags[1]); // one launch to warm up the disk cache, not counted
+        for (int r = 0; r < runs; r++) {
+            for (int k = 0; k < names.length; k++) {
+                long[] times = launch(flags[k]);
+                firstFrame[k][r] = times[0];
+                interactive[k][r] = times[1];
+            }
+        }
+
+        System.out.println((GraphicsEnvironment.isHeadless() ? "headless, " : "") + runs + " launches each");
+        System.out.printf("%-10s %22s %22s%n", "", "first frame (ms)", "interactive (ms)");
+        for (int k = 0; k < names.length; k++) {
+            System.out.printf("%-10s %22s %22s%n", names[k], describe(firstFrame[k]), describe(interactive[k]));
+        }
+    }
+
+    // Starts the game with the startup probe on and the given JVM flag. Returns the ms to first frame and to interactive.
+    private static long[] launch(String flag) throws Exception {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<String> command = new ArrayList<>();
+        command.add(java);
+        command.add(flag);
+        if (GraphicsEnvironment.isHeadless()) {
+            command.add("-Djava.awt.headless=true");
+        }
+        command.add("-Dreflex.startupProbe=true");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("RunGame");
+
+        long launched = System.currentTimeMillis();
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        long firstFrame = -1;
+        long interactive = -1;
+        StringBuilder output = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("startup firstFrame=")) {
+                    firstFrame = Long.parseLong(line.substring(line.indexOf('=') + 1)) - launched;
+                } else if (line.startsWith("startup interactive=")) {
+                    interactive = Long.parseLong(line.substring(line.indexOf('=') + 1)) - launched;
+                } else {
+                    output.append(line).append('\n');
+                }
+            }
+        }
+        if (process.waitFor() != 0 || firstFrame < 0 || interactive < 0) {
+            throw new IllegalStateException("Launch with " + flag + " failed:\n" + output);
+        }
+        return new long[] { firstFrame, interactive };
+    }
+
+    private static String describe(long[] millis) {
+        long[] sorted = millis.clone();
+        Arrays.sort(sorted);
+        return "median " + sorted[sorted.length / 2] + ", min " + sorted[0];
+    }
+}
@@ -0,0 +1,49 @@
+import javax.swing.SwingUtilities;
+import java.awt.image.BufferedImage;
+
+/*
+ * Reports how long the game takes to start, for StartupBenchmark (with -Dreflex.startupProbe=true).
+ * When the welcome screen is first painted it prints the time, then posts one more event: once the EDT gets to it,
+ * the window can react to input, so that is "interactive". It prints that time too and exits.
+ * Times are System.currentTimeMillis(), so the launching process can subtract its own launch time.
+ *
+ * Without a display the window can't be shown, so the welcome screen is built and painted into an image instead.
+ * That still loads most of the classes a real start does, which is enough to make a class data sharing archive.
+ */
+final class StartupProbe {
+    private static boolean painted = false; // only touched on the EDT
+
+    private StartupProbe() {
+    }
+
+    // Called from WelcomePanel.paintComponent
+    static void welcomePainted() {
+        if (painted) {
+            return;
+        }
+        painted = true;
+        System.out.println("startup firstFrame=" + System.currentTimeMillis());
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                System.out.println("startup interactive=" + System.currentTimeMillis());
+                System.out.flush();
+                System.exit(0);
+            }
+        });
+    }
+
+    // The headless stand-in for showing the window
+    static void runHeadless() {
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                WelcomePanel welcome = new WelcomePanel(null);
+                welcome.setSize(800, 550);
+                welcome.doLayout();
+                BufferedImage image = new BufferedImage(800, 550, BufferedImage.TYPE_INT_RGB);
+                java.awt.Graphics2D g = image.createGraphics();
+                welcome.printAll(g);
+                g.dispose();
+            }
+        });
+    }
+}
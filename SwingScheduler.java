@@ -0,0 +1,33 @@
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import javax.swing.Timer;
+
+/*
+ * A GameScheduler for the desktop: every task is a javax.swing.Timer, so it runs on the EDT, where it can touch
+ * the components directly. The timers all share Swing's one timer thread, which is fine for one game at a time.
+ */
+public class SwingScheduler implements GameScheduler {
+    public Task schedule(Runnable task, long delayMillis) {
+        return start(task, delayMillis, false);
+    }
+
+    public Task scheduleAtFixedRate(Runnable task, long periodMillis) {
+        return start(task, periodMillis, true);
+    }
+
+    private static Task start(final Runnable task, long millis, boolean repeats) {
+        final Timer timer = new Timer((int) millis, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                task.run();
+            }
+        });
+        timer.setRepeats(repeats);
+        timer.setCoalesce(true);
+        timer.start();
+        return new Task() {
+            public void cancel() {
+                timer.stop();
+            }
+        };
+    }
+}
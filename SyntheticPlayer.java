@@ -0,0 +1,69 @@
+import java.util.SplittableRandom;
+
+/*
+ * A made-up player for BotSimulator. Each time new circles appear (or after a missed click),
+ * the player waits for a reaction time and then clicks, either on the target or somewhere random.
+ */
+public interface SyntheticPlayer {
+
+    // How long the player takes to click, in nanoseconds
+    long reactionNanos(SplittableRandom rand);
+
+    // Whether this click goes somewhere random instead of at the target
+    boolean misclicks(SplittableRandom rand);
+
+    // Reaction times from a normal distribution (never below 100 ms)
+    static SyntheticPlayer gaussian(final double meanMillis, final double sdMillis, final double missRate) {
+        return new SyntheticPlayer() {
+            public long reactionNanos(SplittableRandom rand) {
+                double millis = meanMillis + sdMillis * gaussian(rand);
+                return (long) (Math.max(100, millis) * 1_000_000);
+            }
+
+            public boolean misclicks(SplittableRandom rand) {
+                return rand.nextDouble() < missRate;
+            }
+        };
+    }
+
+    // Reaction times from a log-normal distribution, which has the long slow tail that real reaction times have
+    static SyntheticPlayer logNormal(final double medianMillis, final double sigma, final double missRate) {
+        return new SyntheticPlayer() {
+            public long reactionNanos(SplittableRandom rand) {
+                double millis = medianMillis * Math.exp(sigma * gaussian(rand));
+                return (long) (millis * 1_000_000);
+            }
+
+            public boolean misclicks(SplittableRandom rand) {
+                return rand.nextDouble() < missRate;
+            }
+        };
+    }
+
+    /*
+     * Builds a player from text such as "gaussian:350:60:0.1" (mean ms, standard deviation ms, miss rate)
+     * or "lognormal:320:0.25:0.08" (median ms, sigma, miss rate).
+     */
+    static SyntheticPlayer parse(String spec) {
+        String[] parts = spec.split(":");
+        if (parts.length != 4) {
+            throw new IllegalArgumentException("Player should look like gaussian:350:60:0.1, got " + spec);
+        }
+        double a = Double.parseDouble(parts[1]);
+        double b = Double.parseDouble(parts[2]);
+        double missRate = Double.parseDouble(parts[3]);
+        if (parts[0].equals("gaussian")) {
+            return gaussian(a, b, missRate);
+        } else if (parts[0].equals("lognormal")) {
+            return logNormal(a, b, missRate);
+        }
+        throw new IllegalArgumentException("Unknown player model: " + parts[0]);
+    }
+
+    // A standard normal value, using the Box-Muller transform (SplittableRandom has no nextGaussian)
+    static double gaussian(SplittableRandom rand) {
+        double u = 1.0 - rand.nextDouble(); // in (0, 1], so the log is finite
+        double v = rand.nextDouble();
+        return Math.sqrt(-2.0 * Math.log(u)) * Math.cos(2.0 * Math.PI * v);
+    }
+}
@@ -0,0 +1,328 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/*
+ * Reads telemetry files written by TelemetryWriter (e.g. one per kiosk) and prints, for every difficulty, the reaction time
+ * percentiles and the accuracy, and a heatmap of how far clicks land from the target's centre, depending on
+ * where the target was.
+ *
+ * Run with, for example:
+ *   java TelemetryAnalyzer kiosk1.rrt kiosk2.rrt difficulty=Hard from=2024-01-01 to=2024-02-01 threads=4
+ * from and to are dates (UTC) or epoch milliseconds, and to is exclusive. Every filter is optional.
+ *
+ * The block headers are read first. Blocks whose min/max show that no row can pass the filters are skipped
+ * without being read at all; the rest are mapped and decoded in parallel, one block per task. Every task works
+ * out a partial result for its block in scratch arrays kept per thread, and the partial results are added
+ * together at the end, so the threads never share anything while they work.
+ */
+public class TelemetryAnalyzer {
+    private static final int CELL = 50; // heatmap cells are CELL x CELL pixels of the game area
+    private static final int CELLS_X = (GameEngine.WIDTH + CELL - 1) / CELL;
+    private static final int CELLS_Y = (GameEngine.HEIGHT + CELL - 1) / CELL;
+    private static final int DIFFICULTIES = GameEngine.DIFFICULTY_NAMES.length;
+
+    // Where one block is, and the min and max of each of its columns
+    private static class Block {
+        final FileChannel channel; // of the file the block is in
+        final long offset; // of the block header
+        final int rows;
+        final int dataLength;
+        final long[] min = new long[TelemetryWriter.COLUMNS];
+        final long[] max = new long[TelemetryWriter.COLUMNS];
+        final int[] length = new int[TelemetryWriter.COLUMNS];
+
+        Block(FileChannel channel, long offset, int rows, int dataLength) {
+            this.channel = channel;
+            this.offset = offset;
+            this.rows = rows;
+            this.dataLength = dataLength;
+        }
+
+        long size() {
+            return TelemetryWriter.BLOCK_HEADER_SIZE + TelemetryWriter.COLUMNS * TelemetryWriter.COLUMN_ENTRY_SIZE
+                    + dataLength;
+        }
+    }
+
+    // What we found in some blocks. Partial results from different blocks are added together.
+    private static class Result {
+        long rows; // rows that passed the filters
+        final LatencyHistogram[] reactions = new LatencyHistogram[DIFFICULTIES]; // of HIT and LATE_HIT, in microseconds
+        final long[][] kinds = new long[DIFFICULTIES][5]; // attempts per difficulty and kind
+        final double[] errorSum = new double[CELLS_X * CELLS_Y]; // distance from click to target centre, by target cell
+        final long[] errorCount = new long[CELLS_X * CELLS_Y];
+
+        Result() {
+            for (int d = 0; d < DIFFICULTIES; d++) {
+                reactions[d] = new LatencyHistogram();
+            }
+        }
+
+        Result add(Result other) {
+            rows += other.rows;
+            for (int d = 0; d < DIFFICULTIES; d++) {
+                reactions[d].add(other.reactions[d]);
+                for (int k = 0; k < kinds[d].length; k++) {
+                    kinds[d][k] += other.kinds[d][k];
+                }
+            }
+            for (int i = 0; i < errorSum.length; i++) {
+                errorSum[i] += other.errorSum[i];
+                errorCount[i] += other.errorCount[i];
+            }
+            return this;
+        }
+    }
+
+    // The decoded columns of a block, one set per thread so a block can be decoded without allocating
+    private static final ThreadLocal<long[][]> SCRATCH = new ThreadLocal<long[][]>() {
+        protected long[][] initialValue() {
+            return new long[TelemetryWriter.COLUMNS][TelemetryWriter.ROWS_PER_BLOCK];
+        }
+    };
+
+    private final int difficulty; // -1 for every difficulty
+    private final long from; // inclusive, in epoch milliseconds
+    private final long to; // exclusive
+
+    public TelemetryAnalyzer(int difficulty, long from, long to) {
+        this.difficulty = difficulty;
+        this.from = from;
+        this.to = to;
+    }
+
+    /*
+     * Reads every complete block header. Reading stops at the first block that doesn't look right or runs past
+     * the end of the file, which is where the game was stopped while writing.
+     */
+    static List<Block> readBlocks(FileChannel channel, List<Block> blocks) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(TelemetryWriter.HEADER_SIZE);
+        channel.read(header, 0);
+        if (header.getInt(0) != TelemetryWriter.MAGIC || header.getInt(4) != TelemetryWriter.VERSION
+                || header.getInt(8) != TelemetryWriter.COLUMNS) {
+            throw new IOException("Not a telemetry file");
+        }
+
+        long size = channel.size();
+        long pos = TelemetryWriter.HEADER_SIZE;
+        int tableSize = TelemetryWriter.COLUMNS * TelemetryWriter.COLUMN_ENTRY_SIZE;
+        ByteBuffer blockHeader = ByteBuffer.allocate(TelemetryWriter.BLOCK_HEADER_SIZE + tableSize);
+        while (pos + blockHeader.capacity() <= size) {
+            blockHeader.clear();
+            channel.read(blockHeader, pos);
+            if (blockHeader.getInt(0) != TelemetryWriter.BLOCK_MAGIC) {
+                break;
+            }
+            Block block = new Block(channel, pos, blockHeader.getInt(4), blockHeader.getInt(8));
+            if (pos + block.size() > size) {
+                break;
+            }
+            for (int c = 0; c < TelemetryWriter.COLUMNS; c++) {
+                int entry = TelemetryWriter.BLOCK_HEADER_SIZE + c * TelemetryWriter.COLUMN_ENTRY_SIZE;
+                block.min[c] = blockHeader.getLong(entry);
+                block.max[c] = blockHeader.getLong(entry + 8);
+                block.length[c] = blockHeader.getInt(entry + 16);
+            }
+            blocks.add(block);
+            pos += block.size();
+        }
+        return blocks;
+    }
+
+    // Whether some row of the block could pass the filters, going by the block's min and max
+    boolean mayMatch(Block block) {
+        if (difficulty >= 0 && (block.min[TelemetryWriter.DIFFICULTY] > difficulty
+                || block.max[TelemetryWriter.DIFFICULTY] < difficulty)) {
+            return false;
+        }
+        return block.max[TelemetryWriter.TIME] >= from && block.min[TelemetryWriter.TIME] < to;
+    }
+
+    // Maps one block, decodes its columns and works out its partial result
+    Result analyze(Block block) {
+        MappedByteBuffer data;
+        try {
+            data = block.channel.map(FileChannel.MapMode.READ_ONLY, block.offset, block.size());
+        } catch (IOException e) {
+            throw new java.io.UncheckedIOException(e);
+        }
+
+        long[][] columns = SCRATCH.get();
+        int pos = TelemetryWriter.BLOCK_HEADER_SIZE + TelemetryWriter.COLUMNS * TelemetryWriter.COLUMN_ENTRY_SIZE;
+        for (int c = 0; c < TelemetryWriter.COLUMNS; c++) {
+            decode(data, pos, block.rows, columns[c], c == TelemetryWriter.TIME);
+            pos += block.length[c];
+        }
+
+        Result result = new Result();
+        long[] time = columns[TelemetryWriter.TIME];
+        long[] difficulties = columns[TelemetryWriter.DIFFICULTY];
+        long[] kinds = columns[TelemetryWriter.KIND];
+        long[] clickX = columns[TelemetryWriter.CLICK_X];
+        long[] clickY = columns[TelemetryWriter.CLICK_Y];
+        long[] targetX = columns[TelemetryWriter.TARGET_X];
+        long[] targetY = columns[TelemetryWriter.TARGET_Y];
+        long[] elapsed = columns[TelemetryWriter.ELAPSED];
+        for (int i = 0; i < block.rows; i++) {
+            int d = (int) difficulties[i];
+            int kind = (int) kinds[i];
+            if (time[i] < from || time[i] >= to || (difficulty >= 0 && d != difficulty)
+                    || d < 0 || d >= DIFFICULTIES || kind < 0 || kind >= result.kinds[d].length) {
+                continue;
+            }
+            result.rows++;
+            result.kinds[d][kind]++;
+            if (kind == GameEngine.HIT || kind == GameEngine.LATE_HIT) {
+                result.reactions[d].record(elapsed[i]);
+            }
+            if (kind != GameEngine.EXPIRED && targetX[i] >= 0) {
+                int cx = (int) Math.min(CELLS_X - 1, targetX[i] / CELL);
+                int cy = (int) Math.min(CELLS_Y - 1, targetY[i] / CELL);
+                double dx = clickX[i] - targetX[i];
+                double dy = clickY[i] - targetY[i];
+                result.errorSum[cy * CELLS_X + cx] += Math.sqrt(dx * dx + dy * dy);
+                result.errorCount[cy * CELLS_X + cx]++;
+            }
+        }
+        return result;
+    }
+
+    // Decodes count zigzag varints starting at pos. Deltas are added up again for the time column.
+    static void decode(ByteBuffer data, int pos, int count, long[] out, boolean deltas) {
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            long v = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data.get(pos++);
+                v |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            v = (v >>> 1) ^ -(v & 1);
+            if (deltas) {
+                v += previous;
+                previous = v;
+            }
+            out[i] = v;
+        }
+    }
+
+    static long parseTime(String value) {
+        if (value.matches("-?\\d+")) {
+            return Long.parseLong(value);
+        }
+        if (value.length() == 10) {
+            return LocalDate.parse(value).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+        }
+        return Instant.parse(value).toEpochMilli();
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: java TelemetryAnalyzer FILE... [difficulty=NAME] [from=TIME] [to=TIME] [threads=N]");
+            System.exit(1);
+        }
+        int difficulty = -1;
+        long from = Long.MIN_VALUE;
+        long to = Long.MAX_VALUE;
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        // options look like name=value, anything else is a file
+        List<String> files = new ArrayList<>();
+        for (String arg : args) {
+            String[] kv = arg.split("=", 2);
+            if (kv.length != 2) {
+                files.add(arg);
+            } else if (kv[0].equals("difficulty")) {
+                difficulty = GameEngine.difficultyIndex(kv[1]);
+            } else if (kv[0].equals("from")) {
+                from = parseTime(kv[1]);
+            } else if (kv[0].equals("to")) {
+                to = parseTime(kv[1]);
+            } else if (kv[0].equals("threads")) {
+                threads = Integer.parseInt(kv[1]);
+            } else {
+                throw new IllegalArgumentException("Unknown argument: " + kv[0]);
+            }
+        }
+
+        TelemetryAnalyzer analyzer = new TelemetryAnalyzer(difficulty, from, to);
+        long start = System.nanoTime();
+        List<FileChannel> channels = new ArrayList<>();
+        try {
+            List<Block> blocks = new ArrayList<>();
+            for (String file : files) {
+                FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ);
+                channels.add(channel);
+                readBlocks(channel, blocks);
+            }
+            List<Block> wanted = new ArrayList<>();
+            long totalRows = 0;
+            for (Block block : blocks) {
+                totalRows += block.rows;
+                if (analyzer.mayMatch(block)) {
+                    wanted.add(block);
+                }
+            }
+
+            // a pool of our own, so threads= decides how many threads decode blocks
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            Result result = pool.submit(() -> wanted.parallelStream()
+                    .map(analyzer::analyze)
+                    .reduce(Result::add)
+                    .orElseGet(Result::new)).get();
+            pool.shutdown();
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            System.out.printf("%d files, %d blocks (%d rows), %d skipped by their min/max, %d rows matched, %.3f s, %.1f M rows/s%n",
+                    files.size(), blocks.size(), totalRows, blocks.size() - wanted.size(), result.rows, seconds,
+                    totalRows / seconds / 1e6);
+            print(result);
+        } finally {
+            for (FileChannel channel : channels) {
+                channel.close();
+            }
+        }
+    }
+
+    private static void print(Result result) {
+        for (int d = 0; d < DIFFICULTIES; d++) {
+            long[] kinds = result.kinds[d];
+            long attempts = kinds[GameEngine.HIT] + kinds[GameEngine.MISS] + kinds[GameEngine.EXPIRED];
+            if (attempts == 0) {
+                continue;
+            }
+            // a late hit undoes the EXPIRED its round was counted as, the same way GameEngine counts it
+            long hits = kinds[GameEngine.HIT] + kinds[GameEngine.LATE_HIT];
+            LatencyHistogram h = result.reactions[d];
+            System.out.printf("%-6s accuracy %.1f%% (%d hits, %d late, %d misses, %d expired) | reaction p50 %.0f ms"
+                            + " | p90 %.0f ms | p99 %.0f ms | max %.0f ms%n",
+                    GameEngine.DIFFICULTY_NAMES[d], 100.0 * hits / attempts, kinds[GameEngine.HIT],
+                    kinds[GameEngine.LATE_HIT], kinds[GameEngine.MISS], kinds[GameEngine.EXPIRED] - kinds[GameEngine.LATE_HIT],
+                    h.getValueAtPercentile(50) / 1000.0, h.getValueAtPercentile(90) / 1000.0,
+                    h.getValueAtPercentile(99) / 1000.0, h.getMax() / 1000.0);
+        }
+
+        System.out.println("mean distance from click to target centre (px), by where the target was (" + CELL + " px cells):");
+        for (int y = 0; y < CELLS_Y; y++) {
+            StringBuilder line = new StringBuilder();
+            for (int x = 0; x < CELLS_X; x++) {
+                long count = result.errorCount[y * CELLS_X + x];
+                line.append(count == 0 ? String.format("%6s", "-")
+                        : String.format("%6.1f", result.errorSum[y * CELLS_X + x] / count));
+            }
+            System.out.println(line);
+        }
+    }
+}
@@ -0,0 +1,214 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/*
+ * Checks that a telemetry file comes back with exactly the rows it should after being closed, or after the game was
+ * killed while writing a block. Every case writes rows, cuts the file off somewhere, opens it again with a new
+ * TelemetryWriter, adds a few more rows, and compares every row in the file with the rows that should be there:
+ *
+ *   varints       values round trip through writeVarLong and TelemetryAnalyzer.decode, and take as many bytes as they should
+ *   reopen        closed normally, then opened again and added to
+ *   torn block    the last block cut off halfway through its columns
+ *   torn table    the last block cut off in its column table
+ *   torn header   the last block cut off in its first few bytes
+ *   torn file     cut off inside the file header, so the file starts again
+ *
+ * The last block of each torn file is a full one, so the block written after reopening is shorter than what was cut
+ * off; the file must still end exactly where that block does.
+ *
+ * Run with: java TelemetryCheck [rows] [directory]
+ * Prints one line per case, and exits with an AssertionError at the first difference.
+ */
+public class TelemetryCheck {
+    private static final int TABLE_SIZE = TelemetryWriter.COLUMNS * TelemetryWriter.COLUMN_ENTRY_SIZE;
+
+    public static void main(String[] args) throws IOException {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 2 * TelemetryWriter.ROWS_PER_BLOCK + 1000;
+        Path root = args.length > 1 ? Paths.get(args[1]) : Files.createTempDirectory("telemetry-check");
+        Files.createDirectories(root);
+        Random rand = new Random(17);
+
+        checkVarints(rand);
+
+        // reopen: whole blocks, then a short one from close()
+        Path file = root.resolve("reopen.rrt");
+        Files.deleteIfExists(file);
+        List<long[]> expected = new ArrayList<>();
+        write(file, rand, rows, expected);
+        write(file, rand, 500, expected);
+        verify("reopen", file, expected);
+
+        // torn files: one short block, then a full block that is cut off
+        Path original = root.resolve("full.rrt");
+        Files.deleteIfExists(original);
+        List<long[]> kept = new ArrayList<>();
+        write(original, rand, 700, kept);
+        long lastBlock = Files.size(original);
+        List<long[]> lost = new ArrayList<>();
+        write(original, rand, TelemetryWriter.ROWS_PER_BLOCK, lost);
+        int lastData = readInt(original, lastBlock + 8);
+
+        long middle = lastBlock + TelemetryWriter.BLOCK_HEADER_SIZE + TABLE_SIZE + lastData / 2;
+        tornCase("torn block", root, original, middle, lastBlock, kept, rand);
+        tornCase("torn table", root, original, lastBlock + TelemetryWriter.BLOCK_HEADER_SIZE + TABLE_SIZE / 3,
+                lastBlock, kept, rand);
+        tornCase("torn header", root, original, lastBlock + 5, lastBlock, kept, rand);
+        tornCase("torn file", root, original, TelemetryWriter.HEADER_SIZE / 2, TelemetryWriter.HEADER_SIZE,
+                new ArrayList<long[]>(), rand);
+        System.out.println("All checks passed (" + root + ")");
+    }
+
+    // Every edge of the zigzag encoding, and deltas that overflow, which have to wrap around and come back
+    private static void checkVarints(Random rand) {
+        long[] values = {
+            0, 1, -1, 63, -64, 64, -65, 8191, -8192, 8192, Integer.MAX_VALUE, Integer.MIN_VALUE,
+            (1L << 62) - 1, -(1L << 62), 1L << 62, Long.MAX_VALUE, Long.MIN_VALUE, Long.MIN_VALUE + 1
+        };
+        int[] sizes = { 1, 1, 1, 1, 1, 2, 2, 2, 2, 3, 5, 5, 9, 9, 10, 10, 10, 10 };
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * 10 + 2000 * 10);
+        for (int i = 0; i < values.length; i++) {
+            int start = buffer.position();
+            TelemetryWriter.writeVarLong(buffer, values[i]);
+            check(buffer.position() - start == sizes[i],
+                    "varints: " + values[i] + " took " + (buffer.position() - start) + " bytes, expected " + sizes[i]);
+        }
+        long[] decoded = new long[values.length];
+        TelemetryAnalyzer.decode(buffer, 0, values.length, decoded, false);
+        for (int i = 0; i < values.length; i++) {
+            check(decoded[i] == values[i], "varints: " + values[i] + " came back as " + decoded[i]);
+        }
+
+        // the same values as deltas (the way the time column is stored), then random ones
+        long[] times = new long[values.length + 2000];
+        System.arraycopy(values, 0, times, 0, values.length);
+        for (int i = values.length; i < times.length; i++) {
+            times[i] = rand.nextInt(4) == 0 ? rand.nextLong() : rand.nextInt(1 << 20) - (1 << 19);
+        }
+        buffer.clear();
+        long previous = 0;
+        for (long t : times) {
+            TelemetryWriter.writeVarLong(buffer, t - previous);
+            previous = t;
+        }
+        decoded = new long[times.length];
+        TelemetryAnalyzer.decode(buffer, 0, times.length, decoded, true);
+        for (int i = 0; i < times.length; i++) {
+            check(decoded[i] == times[i], "varints: delta " + i + " came back as " + decoded[i] + ", expected " + times[i]);
+        }
+        System.out.println("varints: ok (" + (values.length + times.length) + " values)");
+    }
+
+    // Copies the file, cuts the copy off at length, and checks it is cut back to valid and can be added to again
+    private static void tornCase(String name, Path root, Path original, long length, long valid, List<long[]> kept,
+            Random rand) throws IOException {
+        Path file = root.resolve(name.replace(' ', '-') + ".rrt");
+        Files.copy(original, file, StandardCopyOption.REPLACE_EXISTING);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(length);
+        }
+        if (length >= TelemetryWriter.HEADER_SIZE) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                long found = TelemetryWriter.validLength(channel);
+                check(found == valid, name + ": valid length " + found + ", expected " + valid);
+            }
+        }
+        List<long[]> expected = new ArrayList<>(kept);
+        write(file, rand, 300, expected);
+        verify(name, file, expected);
+    }
+
+    // Opens the file with a TelemetryWriter, adds count random rows to it and to expected, and closes it
+    private static void write(Path file, Random rand, int count, List<long[]> expected) throws IOException {
+        long time = expected.isEmpty() ? 1700000000000L : expected.get(expected.size() - 1)[TelemetryWriter.TIME];
+        try (TelemetryWriter writer = new TelemetryWriter(file)) {
+            for (int i = 0; i < count; i++) {
+                time += rand.nextInt(50) == 0 ? -rand.nextInt(1000) : rand.nextInt(2000); // clocks can go back
+                long[] row = {
+                    time, rand.nextInt(3), rand.nextInt(4), rand.nextInt(800) - 1, rand.nextInt(600) - 1,
+                    rand.nextInt(800), rand.nextInt(600), rand.nextInt(10) == 0 ? rand.nextLong() : rand.nextInt(3000000)
+                };
+                writer.record(row[0], (int) row[1], (int) row[2], (int) row[3], (int) row[4], (int) row[5],
+                        (int) row[6], row[7]);
+                expected.add(row);
+            }
+        }
+    }
+
+    /*
+     * Reads the file block by block, without trusting TelemetryWriter.validLength: every block must be complete, the
+     * file must end exactly after the last one, and each block's min, max and rows must match the expected rows.
+     */
+    private static void verify(String name, Path file, List<long[]> expected) throws IOException {
+        int row = 0;
+        int blocks = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(TelemetryWriter.HEADER_SIZE);
+            channel.read(header, 0);
+            check(header.getInt(0) == TelemetryWriter.MAGIC && header.getInt(4) == TelemetryWriter.VERSION
+                    && header.getInt(8) == TelemetryWriter.COLUMNS, name + ": bad file header");
+
+            long pos = TelemetryWriter.HEADER_SIZE;
+            long[] column = new long[TelemetryWriter.ROWS_PER_BLOCK];
+            while (pos < size) {
+                ByteBuffer table = ByteBuffer.allocate(TelemetryWriter.BLOCK_HEADER_SIZE + TABLE_SIZE);
+                channel.read(table, pos);
+                check(table.getInt(0) == TelemetryWriter.BLOCK_MAGIC, name + ": no block at " + pos);
+                int count = table.getInt(4);
+                int dataLength = table.getInt(8);
+                long end = pos + table.capacity() + dataLength;
+                check(end <= size, name + ": block at " + pos + " runs past the end of the file");
+                check(row + count <= expected.size(), name + ": more rows than expected");
+
+                ByteBuffer data = ByteBuffer.allocate(dataLength);
+                channel.read(data, pos + table.capacity());
+                int start = 0;
+                for (int c = 0; c < TelemetryWriter.COLUMNS; c++) {
+                    int entry = TelemetryWriter.BLOCK_HEADER_SIZE + c * TelemetryWriter.COLUMN_ENTRY_SIZE;
+                    TelemetryAnalyzer.decode(data, start, count, column, c == TelemetryWriter.TIME);
+                    long min = Long.MAX_VALUE;
+                    long max = Long.MIN_VALUE;
+                    for (int i = 0; i < count; i++) {
+                        long want = expected.get(row + i)[c];
+                        check(column[i] == want, name + ": row " + (row + i) + ", " + TelemetryWriter.COLUMN_NAMES[c]
+                                + " is " + column[i] + ", expected " + want);
+                        min = Math.min(min, want);
+                        max = Math.max(max, want);
+                    }
+                    check(table.getLong(entry) == min && table.getLong(entry + 8) == max,
+                            name + ": block at " + pos + " has the wrong min/max for " + TelemetryWriter.COLUMN_NAMES[c]);
+                    start += table.getInt(entry + 16);
+                }
+                check(start == dataLength, name + ": column lengths of the block at " + pos + " don't add up");
+                row += count;
+                blocks++;
+                pos = end;
+            }
+        }
+        check(row == expected.size(), name + ": " + row + " rows, expected " + expected.size());
+        System.out.println(name + ": ok (" + row + " rows in " + blocks + " blocks)");
+    }
+
+    private static int readInt(Path file, long offset) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer b = ByteBuffer.allocate(4);
+            channel.read(b, offset);
+            return b.getInt(0);
+        }
+    }
+
+    private static void check(boolean ok, String message) {
+        if (!ok) {
+            throw new AssertionError(message);
+        }
+    }
+}
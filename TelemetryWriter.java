@@ -0,0 +1,171 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * Writes every attempt (see GameEngine.Listener.attemptMade) to a columnar telemetry file, for TelemetryAnalyzer.
+ *
+ * The file is a 12-byte header (magic "RRTM", format version, number of columns) followed by blocks.
+ * Each block holds up to ROWS_PER_BLOCK rows, stored column by column:
+ *
+ *   int  BLOCK_MAGIC
+ *   int  rows
+ *   int  data length (bytes after the column table)
+ *   for each column:  long min, long max, int length      (the column table, COLUMN_ENTRY_SIZE bytes each)
+ *   the columns' bytes, one after the other
+ *
+ * Every value is zigzag varint encoded (small numbers, negative or not, take few bytes). The time column stores
+ * the difference from the row before instead, since times only go up a little from one row to the next.
+ * With min and max per column, a reader can skip whole blocks that can't match its filter without decoding them.
+ *
+ * Rows are kept in preallocated arrays until a block is full, then the block is appended to the file, so a crash
+ * only loses the rows of the unfinished block; a half-written block at the end of the file is ignored by readers.
+ * The block is also written by flush() and close(), so the last one in a file is usually short.
+ */
+public class TelemetryWriter implements Closeable {
+    public static final int MAGIC = 0x5252544D; // "RRTM"
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 12;
+    public static final int BLOCK_MAGIC = 0x5252544B; // "RRTK"
+    public static final int BLOCK_HEADER_SIZE = 12;
+    public static final int COLUMN_ENTRY_SIZE = 20;
+    public static final int ROWS_PER_BLOCK = 65536;
+
+    // The columns, in the order they are stored
+    public static final int TIME = 0; // wall clock time of the attempt, in milliseconds
+    public static final int DIFFICULTY = 1; // GameEngine.EASY, MEDIUM or HARD
+    public static final int KIND = 2; // GameEngine.HIT, MISS, EXPIRED or LATE_HIT
+    public static final int CLICK_X = 3; // where the click was, -1 for EXPIRED
+    public static final int CLICK_Y = 4;
+    public static final int TARGET_X = 5; // centre of the target
+    public static final int TARGET_Y = 6;
+    public static final int ELAPSED = 7; // microseconds from the round starting to the click (the reaction time for hits)
+    public static final int COLUMNS = 8;
+    public static final String[] COLUMN_NAMES = {
+        "time", "difficulty", "kind", "clickX", "clickY", "targetX", "targetY", "elapsed"
+    };
+
+    private final FileChannel channel;
+    private final long[][] rows = new long[COLUMNS][ROWS_PER_BLOCK];
+    private int rowCount = 0;
+    private final ByteBuffer block; // big enough for a full block even if every value takes 10 bytes
+
+    public TelemetryWriter(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        block = ByteBuffer.allocate(BLOCK_HEADER_SIZE + COLUMNS * COLUMN_ENTRY_SIZE + COLUMNS * ROWS_PER_BLOCK * 10);
+
+        if (channel.size() < HEADER_SIZE) {
+            // a new file, or the game was killed before the header was all written
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(COLUMNS).flip();
+            channel.truncate(0);
+            channel.write(header, 0);
+        } else {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            channel.read(header, 0);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION || header.getInt(8) != COLUMNS) {
+                channel.close();
+                throw new IOException(file + " is not a telemetry file");
+            }
+        }
+        // cut off a half-written block, so none of it is left behind if the next block is shorter
+        long valid = validLength(channel);
+        if (channel.size() > valid) {
+            channel.truncate(valid);
+        }
+        channel.position(valid);
+    }
+
+    // Adds one row. Not thread-safe on its own: callers from several threads synchronize on the writer.
+    public void record(long timeMillis, int difficulty, int kind, int clickX, int clickY, int targetX, int targetY,
+            long elapsedMicros) throws IOException {
+        rows[TIME][rowCount] = timeMillis;
+        rows[DIFFICULTY][rowCount] = difficulty;
+        rows[KIND][rowCount] = kind;
+        rows[CLICK_X][rowCount] = clickX;
+        rows[CLICK_Y][rowCount] = clickY;
+        rows[TARGET_X][rowCount] = targetX;
+        rows[TARGET_Y][rowCount] = targetY;
+        rows[ELAPSED][rowCount] = elapsedMicros;
+        rowCount++;
+        if (rowCount == ROWS_PER_BLOCK) {
+            flush();
+        }
+    }
+
+    // Writes the rows collected so far as a block
+    public void flush() throws IOException {
+        if (rowCount == 0) {
+            return;
+        }
+        block.clear();
+        int tableStart = BLOCK_HEADER_SIZE;
+        int dataStart = tableStart + COLUMNS * COLUMN_ENTRY_SIZE;
+        block.position(dataStart);
+        for (int c = 0; c < COLUMNS; c++) {
+            long[] values = rows[c];
+            long min = Long.MAX_VALUE;
+            long max = Long.MIN_VALUE;
+            long previous = 0;
+            int start = block.position();
+            for (int i = 0; i < rowCount; i++) {
+                long v = values[i];
+                min = Math.min(min, v);
+                max = Math.max(max, v);
+                writeVarLong(block, c == TIME ? v - previous : v);
+                previous = v;
+            }
+            int entry = tableStart + c * COLUMN_ENTRY_SIZE;
+            block.putLong(entry, min);
+            block.putLong(entry + 8, max);
+            block.putInt(entry + 16, block.position() - start);
+        }
+        block.putInt(0, BLOCK_MAGIC);
+        block.putInt(4, rowCount);
+        block.putInt(8, block.position() - dataStart);
+        block.flip();
+        while (block.hasRemaining()) {
+            channel.write(block);
+        }
+        rowCount = 0;
+    }
+
+    public void close() throws IOException {
+        flush();
+        channel.force(false);
+        channel.close();
+    }
+
+    // Zigzag varint: 7 bits per byte, lowest first, with the sign moved to the lowest bit
+    static void writeVarLong(ByteBuffer out, long value) {
+        long v = (value << 1) ^ (value >> 63);
+        while ((v & ~0x7FL) != 0) {
+            out.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.put((byte) v);
+    }
+
+    /*
+     * Returns the length of the file up to the end of its last complete block, so a block that was only partly
+     * written (the game was killed while writing it) can be cut off.
+     */
+    static long validLength(FileChannel channel) throws IOException {
+        long size = channel.size();
+        long pos = HEADER_SIZE;
+        ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_SIZE);
+        while (pos + BLOCK_HEADER_SIZE <= size) {
+            header.clear();
+            channel.read(header, pos);
+            long end = pos + BLOCK_HEADER_SIZE + COLUMNS * COLUMN_ENTRY_SIZE + header.getInt(8);
+            if (header.getInt(0) != BLOCK_MAGIC || end > size) {
+                break;
+            }
+            pos = end;
+        }
+        return pos;
+    }
+}
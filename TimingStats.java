@@ -0,0 +1,95 @@
+/*
+ * Timing statistics used to compare the Swing Timer mode with the game loop mode.
+ *  - drift: how late a scheduled event (a timer firing, or a game loop tick) ran compared to when it should have
+ *  - present latency: how long it took a new set of circles to be drawn after they were spawned
+ *  - frame time: the time between two frames being shown (game loop mode only)
+ *  - paint: how many pixels each frame painted, and how long painting them took
+ *  - input: how long the mouse button was down before a press became a click, and how many presses never did
+ * All times are kept in microseconds.
+ */
+public class TimingStats {
+    private final LatencyHistogram drift = new LatencyHistogram();
+    private final LatencyHistogram presentLatency = new LatencyHistogram();
+    private final LatencyHistogram frameTime = new LatencyHistogram();
+    private final LatencyHistogram paintPixels = new LatencyHistogram();
+    private final LatencyHistogram paintTime = new LatencyHistogram();
+    private final LatencyHistogram pressToClick = new LatencyHistogram();
+    private long presses = 0;
+    private long clicks = 0;
+    private long droppedFrames = 0; // logic ticks that had to run without being drawn, because the loop fell behind
+
+    public synchronized void recordDrift(long nanos) {
+        drift.record(nanos / 1000);
+    }
+
+    public synchronized void recordPresentLatency(long nanos) {
+        presentLatency.record(nanos / 1000);
+    }
+
+    public synchronized void recordFrameTime(long nanos) {
+        frameTime.record(nanos / 1000);
+    }
+
+    public synchronized void recordPaint(long pixels, long nanos) {
+        paintPixels.record(pixels);
+        paintTime.record(nanos / 1000);
+    }
+
+    public synchronized void recordPress() {
+        presses++;
+    }
+
+    // A press turned into a click this long after it happened
+    public synchronized void recordClick(long pressToClickNanos) {
+        clicks++;
+        pressToClick.record(pressToClickNanos / 1000);
+    }
+
+    public synchronized void recordDroppedFrames(long count) {
+        droppedFrames += count;
+    }
+
+    public synchronized void reset() {
+        drift.reset();
+        presentLatency.reset();
+        frameTime.reset();
+        paintPixels.reset();
+        paintTime.reset();
+        pressToClick.reset();
+        presses = 0;
+        clicks = 0;
+        droppedFrames = 0;
+    }
+
+    // Builds a few lines describing the stats, labelled with the name of the mode that produced them
+    public synchronized String summary(String mode) {
+        String text = "[" + mode + "] timer drift: " + describe(drift)
+                + "\n[" + mode + "] spawn to screen: " + describe(presentLatency);
+        if (frameTime.getTotalCount() > 0) {
+            text += "\n[" + mode + "] frame time: " + describe(frameTime) + ", dropped frames: " + droppedFrames;
+        }
+        if (presses > 0) {
+            text += "\n[" + mode + "] press to click: " + describe(pressToClick)
+                    + ", presses that never became clicks: " + (presses - clicks) + " of " + presses;
+        }
+        if (paintTime.getTotalCount() > 0) {
+            text += "\n[" + mode + "] painted per frame: " + describe(paintPixels, "px")
+                    + "\n[" + mode + "] paint time: " + describe(paintTime);
+        }
+        return text;
+    }
+
+    private static String describe(LatencyHistogram h) {
+        return describe(h, "us");
+    }
+
+    private static String describe(LatencyHistogram h, String unit) {
+        if (h.getTotalCount() == 0) {
+            return "no samples";
+        }
+        return "p50 " + h.getValueAtPercentile(50) + " " + unit
+                + " | p99 " + h.getValueAtPercentile(99) + " " + unit
+                + " | max " + h.getMax() + " " + unit
+                + " (" + h.getTotalCount() + " samples)";
+    }
+}
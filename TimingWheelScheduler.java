@@ -0,0 +1,288 @@
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * A GameScheduler built on a hashed hierarchical timing wheel, for running the timers of many sessions at once.
+ * One thread advances the wheel one tick (1 ms by default) at a time and runs every task that is due on it, so
+ * tasks should be quick. To use several threads, make several schedulers and give each session one of them;
+ * all of a session's tasks then run on the same thread, one after the other.
+ *
+ * The wheel has LEVELS levels of SLOTS slots. A task due within SLOTS ticks goes into a level 0 slot, one due
+ * within SLOTS^2 ticks into a level 1 slot, and so on; each slot is a doubly linked list. When level 0 comes round
+ * to slot 0, the next level 1 slot is emptied back into the wheel, which moves its tasks down into level 0 (and
+ * the same between the higher levels). So scheduling and cancelling are O(1), a tick only looks at the one slot
+ * that is due, and a task is never moved more than LEVELS - 1 times whatever its delay.
+ *
+ * Deadlines are kept in nanoseconds from when the scheduler started, and a tick runs everything due up to its
+ * end, so a task runs at most one tick after it is due (plus however long the tasks before it take). The thread
+ * sleeps until the next tick is due and catches up on every tick it missed, so the drift never grows.
+ *
+ * The wheel is only touched by its own thread. Tasks scheduled from other threads are put on a queue that the
+ * thread takes them from at the next tick; tasks cancelled from other threads are only marked, and taken out of
+ * their slot at the next tick. Tasks scheduled or cancelled by a task (e.g. a session's round timer ending its
+ * game) go straight into the wheel.
+ */
+public class TimingWheelScheduler implements GameScheduler, AutoCloseable {
+    private static final int SLOT_BITS = 8;
+    private static final int SLOTS = 1 << SLOT_BITS; // 256 slots per level
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 4; // 256^4 ticks, which is 49 days with 1 ms ticks
+    private static final long MAX_TICKS = 1L << (SLOT_BITS * LEVELS);
+
+    // What a WheelTask can be doing
+    private static final int WAITING = 0; // scheduled, not run yet
+    private static final int CANCELLED = 1;
+    private static final int DONE = 2; // a one-shot task that has run
+
+    private final long tickNanos;
+    private final long startNanos;
+    private long currentTick = 0; // every tick up to and including this one has been run
+
+    // The slots, level by level. Each one is the head of a list of tasks, or null.
+    private final WheelTask[] slots = new WheelTask[LEVELS * SLOTS];
+
+    private final ConcurrentLinkedQueue<WheelTask> added = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<WheelTask> cancelled = new ConcurrentLinkedQueue<>();
+    private final Thread thread;
+    private volatile boolean running = true;
+    private int taskCount = 0; // tasks in the wheel, only used by the wheel thread
+
+    public TimingWheelScheduler(String name) {
+        this(name, 1);
+    }
+
+    public TimingWheelScheduler(String name, long tickMillis) {
+        if (tickMillis < 1) {
+            throw new IllegalArgumentException("The tick has to be at least 1 ms, got " + tickMillis);
+        }
+        this.tickNanos = tickMillis * 1_000_000L;
+        this.startNanos = System.nanoTime();
+        this.thread = new Thread(new Runnable() {
+            public void run() {
+                runWheel();
+            }
+        }, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public Task schedule(Runnable task, long delayMillis) {
+        return add(new WheelTask(task, deadline(delayMillis), 0));
+    }
+
+    public Task scheduleAtFixedRate(Runnable task, long periodMillis) {
+        if (periodMillis < 1) {
+            throw new IllegalArgumentException("The period has to be at least 1 ms, got " + periodMillis);
+        }
+        return add(new WheelTask(task, deadline(periodMillis), periodMillis * 1_000_000L));
+    }
+
+    // Stops the wheel thread and waits for it to finish the tick it is on. Tasks that have not run yet never will.
+    public void close() {
+        running = false;
+        LockSupport.unpark(thread);
+        if (Thread.currentThread() != thread) {
+            boolean interrupted = false;
+            while (thread.isAlive()) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // How many tasks are waiting in the wheel. Only meant for tests and benchmarks, as it is read without locking.
+    public int size() {
+        return taskCount;
+    }
+
+    private long deadline(long delayMillis) {
+        if (delayMillis < 0 || delayMillis * 1_000_000L / tickNanos >= MAX_TICKS - SLOTS) {
+            throw new IllegalArgumentException("Delay out of range: " + delayMillis + " ms");
+        }
+        return System.nanoTime() - startNanos + delayMillis * 1_000_000L;
+    }
+
+    private WheelTask add(WheelTask task) {
+        if (Thread.currentThread() == thread) {
+            insert(task);
+        } else {
+            added.add(task);
+        }
+        return task;
+    }
+
+    /*
+     * Puts a task in the slot for its deadline. The tick a task runs on is the first one that ends at or after
+     * its deadline, but no earlier than firstTick: a task that is already due goes into the next tick's slot,
+     * except when moving down from a higher level, where it can still go into the slot that is about to run.
+     */
+    private void insert(WheelTask task) {
+        insert(task, currentTick + 1);
+    }
+
+    private void insert(WheelTask task, long firstTick) {
+        long tick = Math.max(firstTick, (task.deadlineNanos + tickNanos - 1) / tickNanos);
+        long delta = tick - currentTick;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        int slot = level * SLOTS + (int) ((tick >>> (SLOT_BITS * level)) & SLOT_MASK);
+
+        task.slot = slot;
+        task.previous = null;
+        task.next = slots[slot];
+        if (task.next != null) {
+            task.next.previous = task;
+        }
+        slots[slot] = task;
+        taskCount++;
+    }
+
+    private void unlink(WheelTask task) {
+        if (task.slot < 0) {
+            return;
+        }
+        if (task.previous != null) {
+            task.previous.next = task.next;
+        } else {
+            slots[task.slot] = task.next;
+        }
+        if (task.next != null) {
+            task.next.previous = task.previous;
+        }
+        task.previous = null;
+        task.next = null;
+        task.slot = -1;
+        taskCount--;
+    }
+
+    private void runWheel() {
+        while (running) {
+            long nextTickNanos = startNanos + (currentTick + 1) * tickNanos;
+            long wait = nextTickNanos - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(this, wait);
+                continue;
+            }
+            // run every tick that is due, in case we were late
+            long now = System.nanoTime() - startNanos;
+            while (running && (currentTick + 1) * tickNanos <= now) {
+                takeQueued();
+                tick();
+            }
+        }
+    }
+
+    private void takeQueued() {
+        WheelTask task;
+        while ((task = cancelled.poll()) != null) {
+            unlink(task);
+        }
+        while ((task = added.poll()) != null) {
+            if (task.state == WAITING) {
+                insert(task);
+            }
+        }
+    }
+
+    // Moves on to the next tick, moving tasks down a level where one comes round, and runs the tasks that are due
+    private void tick() {
+        currentTick++;
+        for (int level = 1; level < LEVELS; level++) {
+            if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) != 0) {
+                break;
+            }
+            int slot = level * SLOTS + (int) ((currentTick >>> (SLOT_BITS * level)) & SLOT_MASK);
+            WheelTask task = slots[slot];
+            slots[slot] = null;
+            while (task != null) {
+                WheelTask next = task.next;
+                taskCount--;
+                insert(task, currentTick);
+                task = next;
+            }
+        }
+
+        int slot = (int) (currentTick & SLOT_MASK);
+        WheelTask task = slots[slot];
+        slots[slot] = null;
+        while (task != null) {
+            WheelTask next = task.next;
+            task.previous = null;
+            task.next = null;
+            task.slot = -1;
+            taskCount--;
+            run(task);
+            task = next;
+        }
+    }
+
+    private void run(WheelTask task) {
+        if (task.state != WAITING) {
+            return;
+        }
+        if (task.periodNanos == 0 && !STATE.compareAndSet(task, WAITING, DONE)) {
+            return; // cancelled since we looked at it above
+        }
+        try {
+            task.runnable.run();
+        } catch (Throwable t) {
+            // one broken session should not stop every other session's timers
+            Thread.UncaughtExceptionHandler handler = Thread.getDefaultUncaughtExceptionHandler();
+            if (handler != null) {
+                handler.uncaughtException(thread, t);
+            } else {
+                t.printStackTrace();
+            }
+        }
+        if (task.periodNanos != 0 && task.state == WAITING) {
+            // the next run is due a period after this one was due; runs that were missed altogether are skipped
+            long now = System.nanoTime() - startNanos;
+            task.deadlineNanos += task.periodNanos;
+            if (task.deadlineNanos < now) {
+                task.deadlineNanos += (now - task.deadlineNanos) / task.periodNanos * task.periodNanos + task.periodNanos;
+            }
+            insert(task);
+        }
+    }
+
+    private static final AtomicIntegerFieldUpdater<WheelTask> STATE =
+            AtomicIntegerFieldUpdater.newUpdater(WheelTask.class, "state");
+
+    private class WheelTask implements Task {
+        final Runnable runnable;
+        final long periodNanos; // 0 for a one-shot task
+        long deadlineNanos; // since startNanos
+        volatile int state = WAITING;
+
+        // where the task is in the wheel, only used by the wheel thread
+        int slot = -1;
+        WheelTask previous;
+        WheelTask next;
+
+        WheelTask(Runnable runnable, long deadlineNanos, long periodNanos) {
+            this.runnable = runnable;
+            this.deadlineNanos = deadlineNanos;
+            this.periodNanos = periodNanos;
+        }
+
+        public void cancel() {
+            if (!STATE.compareAndSet(this, WAITING, CANCELLED)) {
+                return;
+            }
+            if (Thread.currentThread() == thread) {
+                unlink(this);
+            } else {
+                cancelled.add(this);
+            }
+        }
+    }
+}
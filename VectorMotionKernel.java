@@ -0,0 +1,73 @@
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/*
+ * CircleMotion.Kernel using the Vector API: each loop works on as many circles at once as fit in the widest
+ * vector register the CPU has (16 floats with AVX-512, 8 with AVX2), and the circles left over at the end are
+ * done one at a time by ScalarKernel's loops. The results are exactly the same as ScalarKernel's.
+ *
+ * The Vector API is still an incubator module in Java 17, so this class needs --add-modules jdk.incubator.vector
+ * both to compile and to run. CircleMotion.kernel() only creates it when the module is there.
+ */
+public class VectorMotionKernel implements CircleMotion.Kernel {
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    public void step(float[] x, float[] y, float[] vx, float[] vy, float[] maxX, float[] maxY, int count, float dt) {
+        int upper = SPECIES.loopBound(count);
+        for (int i = 0; i < upper; i += SPECIES.length()) {
+            FloatVector px = FloatVector.fromArray(SPECIES, x, i);
+            FloatVector v = FloatVector.fromArray(SPECIES, vx, i);
+            FloatVector max = FloatVector.fromArray(SPECIES, maxX, i);
+            px = v.mul(dt).add(px); // not fma(), which rounds differently from the scalar loop
+            // past the left edge: reflect around 0; past the right edge: reflect around max
+            VectorMask<Float> under = px.compare(VectorOperators.LT, 0f);
+            VectorMask<Float> over = px.compare(VectorOperators.GT, max);
+            px = px.blend(px.neg(), under).blend(max.mul(2f).sub(px), over);
+            v = v.blend(v.neg(), under.or(over));
+            px.intoArray(x, i);
+            v.intoArray(vx, i);
+
+            FloatVector py = FloatVector.fromArray(SPECIES, y, i);
+            v = FloatVector.fromArray(SPECIES, vy, i);
+            max = FloatVector.fromArray(SPECIES, maxY, i);
+            py = v.mul(dt).add(py);
+            under = py.compare(VectorOperators.LT, 0f);
+            over = py.compare(VectorOperators.GT, max);
+            py = py.blend(py.neg(), under).blend(max.mul(2f).sub(py), over);
+            v = v.blend(v.neg(), under.or(over));
+            py.intoArray(y, i);
+            v.intoArray(vy, i);
+        }
+        if (upper < count) {
+            CircleMotion.ScalarKernel.step(x, y, vx, vy, maxX, maxY, upper, count, dt);
+        }
+    }
+
+    /*
+     * The circles after the last whole vector are the top-most ones, so they are checked first; then the vectors
+     * are checked from the last one back, and in the first one with any hit, the last lane that hit is the answer.
+     */
+    public int findTopmost(float[] x, float[] y, float[] half, int count, float px, float py) {
+        int upper = SPECIES.loopBound(count);
+        int hit = CircleMotion.ScalarKernel.findTopmost(x, y, half, upper, count, px, py);
+        if (hit >= 0) {
+            return hit;
+        }
+        for (int i = upper - SPECIES.length(); i >= 0; i -= SPECIES.length()) {
+            FloatVector h = FloatVector.fromArray(SPECIES, half, i);
+            FloatVector dx = FloatVector.fromArray(SPECIES, x, i).add(h).neg().add(px);
+            FloatVector dy = FloatVector.fromArray(SPECIES, y, i).add(h).neg().add(py);
+            VectorMask<Float> inside = dx.mul(dx).add(dy.mul(dy)).compare(VectorOperators.LE, h.mul(h));
+            if (inside.anyTrue()) {
+                return i + inside.lastTrue();
+            }
+        }
+        return -1;
+    }
+
+    public String name() {
+        return "vector " + SPECIES.length() + "x float";
+    }
+}
@@ -54,4 +54,13 @@ public class WelcomePanel extends JPanel {
         this.add(instructions, BorderLayout.CENTER);
         this.add(letsPlayBtn, BorderLayout.SOUTH);
     }
+
+    // Paints the panel as usual, telling StartupProbe the first time if it is measuring startup
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        if (GameConfig.STARTUP_PROBE) {
+            StartupProbe.welcomePainted();
+        }
+    }
 }
\ No newline at end of file